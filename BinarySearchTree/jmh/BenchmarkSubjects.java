@@ -0,0 +1,504 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PrimitiveIterator;
+import java.util.function.ToLongFunction;
+
+import benchmarks.DeleteBenchmark;
+import benchmarks.Subject;
+
+/**
+ * The trees measured by the benchmarks of the package {@code benchmarks},
+ * which cannot name the classes of the default package themselves. The
+ * key types {@code Integer}, {@code Double}, {@code String} and
+ * {@code Prefixed} measure {@link BinarySearchTree}, or a
+ * {@link BPlusTree} with a fanout, {@code int} and {@code double} the
+ * primitive trees that the driver uses. Key {@code k} of a distribution
+ * becomes the int {@code k}, the double {@code k + 0.5} or a string of 8
+ * lower case letters, so the orders agree; {@code Prefixed} is a string in
+ * a tree that normalizes its keys with {@link BinarySearchTree#stringPrefix}.
+ * @author Chihyuan Tung
+ *
+ */
+public class BenchmarkSubjects implements Subject.Factory {
+
+	/** 26^8, the number of strings of 8 letters */
+	private static final long LETTERS = 208827064576L;
+
+	static double toDouble(int key) {
+		return key + 0.5;
+	}
+
+	/**
+	 * Returns the string of {@code key} for a case of {@code n} keys. The
+	 * keys of a distribution are below 16n and are spread over all strings
+	 * of 8 letters, so that like words they differ early.
+	 */
+	static String toText(int key, int n) {
+		long value = key * (LETTERS / (16L * n));
+		char[] text = new char[8];
+		for (int i = text.length - 1; i >= 0; --i) {
+			text[i] = (char) ('a' + value % 26);
+			value /= 26;
+		}
+		return new String(text);
+	}
+
+	@Override
+	public Subject create(String type, String mode, int fanout, boolean metrics, double filter, int[] order) {
+		BinarySearchTree.Mode shape = BinarySearchTree.Mode.valueOf(mode.toUpperCase(Locale.ROOT));
+		switch (type) {
+		case "Integer":
+			List<Integer> ints = new ArrayList<>(order.length);
+			for (int key : order) {
+				ints.add(key);
+			}
+			return boxed(shape, fanout, metrics, filter, order, ints, null);
+		case "Double":
+			List<Double> doubles = new ArrayList<>(order.length);
+			for (int key : order) {
+				doubles.add(toDouble(key));
+			}
+			return boxed(shape, fanout, metrics, filter, order, doubles, null);
+		case "String":
+		case "Prefixed":
+			List<String> strings = new ArrayList<>(order.length);
+			for (int key : order) {
+				strings.add(toText(key, order.length));
+			}
+			return boxed(shape, fanout, metrics, filter, order, strings,
+					type.equals("Prefixed") ? BinarySearchTree::stringPrefix : null);
+		case "int":
+			return new IntSubject(shape, order);
+		case "double":
+			return new DoubleSubject(shape, order);
+		default:
+			throw new IllegalArgumentException("unknown key type " + type);
+		}
+	}
+
+	private static <T extends Comparable<T>> Subject boxed(BinarySearchTree.Mode mode, int fanout, boolean metrics,
+			double filter, int[] order, List<T> keys, ToLongFunction<? super T> normalizer) {
+		if (fanout > 0) {
+			return new BPlusSubject<T>(fanout, order, keys);
+		}
+		return new ObjectSubject<T>(mode, metrics, filter, order, keys, normalizer);
+	}
+
+	/**
+	 * The keys of a case in the order of the distribution.
+	 */
+	abstract static class Keys implements Subject {
+		final int[] order;
+
+		Keys(int[] order) {
+			this.order = order;
+		}
+
+		@Override
+		public int count() {
+			return this.order.length;
+		}
+	}
+
+	/**
+	 * A {@link BinarySearchTree} of boxed keys.
+	 */
+	static class ObjectSubject<T extends Comparable<T>> extends Keys {
+		private final BinarySearchTree.Mode mode;
+		private final boolean metrics;
+		private final double filter;
+		private final List<T> keys;
+		private final ToLongFunction<? super T> normalizer;
+		private BinarySearchTree<T> tree;
+		private Iterator<T> scan;
+
+		ObjectSubject(BinarySearchTree.Mode mode, boolean metrics, double filter, int[] order, List<T> keys,
+				ToLongFunction<? super T> normalizer) {
+			super(order);
+			this.mode = mode;
+			this.metrics = metrics;
+			this.filter = filter;
+			this.keys = keys;
+			this.normalizer = normalizer;
+			clear();
+		}
+
+		@Override
+		public void clear() {
+			this.tree = new BinarySearchTree<T>(this.mode, null, this.normalizer);
+			if (this.metrics) {
+				this.tree.enableMetrics();
+			}
+			if (this.filter > 0) {
+				this.tree.enableFilter(this.filter);
+			}
+			this.scan = null;
+		}
+
+		@Override
+		public int size() {
+			return this.tree.size();
+		}
+
+		@Override
+		public void insert(int i) {
+			this.tree.insert(this.keys.get(i));
+		}
+
+		@Override
+		public void delete(int i) {
+			this.tree.delete(this.keys.get(i));
+		}
+
+		@Override
+		public boolean retrieve(int i) {
+			return this.tree.retrieve(this.keys.get(i));
+		}
+
+		@Override
+		public long scan(int keys) {
+			long sum = 0;
+			for (int i = 0; i < keys; ++i) {
+				if (this.scan == null || !this.scan.hasNext()) {
+					this.scan = this.tree.iterator();
+				}
+				sum += this.scan.next().hashCode();
+			}
+			return sum;
+		}
+
+		@Override
+		public int leaves() {
+			return this.tree.getNumLeafNodes();
+		}
+
+		@Override
+		public int cousins(int i) {
+			return this.tree.getCousins(this.keys.get(i)).size();
+		}
+
+		@Override
+		public boolean[] batch(int from, int to) {
+			List<BinarySearchTree.BatchOperation<T>> operations = new ArrayList<>(to - from);
+			for (int i = from; i < to; ++i) {
+				T key = this.keys.get(i);
+				operations.add(DeleteBenchmark.isDelete(i) ? BinarySearchTree.BatchOperation.delete(key)
+						: BinarySearchTree.BatchOperation.retrieve(key));
+			}
+			return this.tree.applyBatch(operations);
+		}
+
+		@Override
+		public int widths() {
+			return this.tree.parallelLevelWidths().length;
+		}
+
+		@Override
+		public String text(int i) {
+			return this.keys.get(i).toString();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void load(Path file) throws IOException {
+			T first = this.keys.get(0);
+			if (first instanceof String) {
+				BinarySearchTreeDriver.insertFromFileString((BinarySearchTree<String>) this.tree, file);
+				return;
+			}
+			List<T> loaded = new ArrayList<>();
+			try (KeyFileReader reader = new KeyFileReader(file)) {
+				if (first instanceof Integer) {
+					reader.forEachInt(key -> loaded.add((T) Integer.valueOf(key)));
+				} else {
+					reader.forEachDouble(key -> loaded.add((T) Double.valueOf(key)));
+				}
+			}
+			this.tree.insertAll(loaded);
+		}
+
+		@Override
+		public void save(Path file) throws IOException {
+			this.tree.save(file);
+		}
+
+		@Override
+		public void restore(Path file) throws IOException {
+			this.tree.load(file);
+		}
+
+		@Override
+		public String report() {
+			TreeMetrics metrics = this.tree.getMetrics();
+			return metrics == null ? null : String.format(Locale.ROOT, "%.2f comparisons per search",
+					metrics.getComparisonsPerSearch());
+		}
+	}
+
+	/**
+	 * A {@link BPlusTree} of boxed keys.
+	 */
+	static class BPlusSubject<T extends Comparable<T>> extends Keys {
+		private final int fanout;
+		private final List<T> keys;
+		private BPlusTree<T> tree;
+		private Iterator<T> scan;
+
+		BPlusSubject(int fanout, int[] order, List<T> keys) {
+			super(order);
+			this.fanout = fanout;
+			this.keys = keys;
+			clear();
+		}
+
+		@Override
+		public void clear() {
+			this.tree = new BPlusTree<T>(this.fanout);
+			this.scan = null;
+		}
+
+		@Override
+		public int size() {
+			return this.tree.size();
+		}
+
+		@Override
+		public void insert(int i) {
+			this.tree.insert(this.keys.get(i));
+		}
+
+		@Override
+		public void delete(int i) {
+			this.tree.delete(this.keys.get(i));
+		}
+
+		@Override
+		public boolean retrieve(int i) {
+			return this.tree.retrieve(this.keys.get(i));
+		}
+
+		@Override
+		public long scan(int keys) {
+			long sum = 0;
+			for (int i = 0; i < keys; ++i) {
+				if (this.scan == null || !this.scan.hasNext()) {
+					this.scan = this.tree.iterator();
+				}
+				sum += this.scan.next().hashCode();
+			}
+			return sum;
+		}
+
+		@Override
+		public int leaves() {
+			return this.tree.getNumLeafNodes();
+		}
+
+		@Override
+		public int cousins(int i) {
+			throw new UnsupportedOperationException("a B+-tree has no cousins");
+		}
+
+		@Override
+		public String text(int i) {
+			return this.keys.get(i).toString();
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public void load(Path file) throws IOException {
+			T first = this.keys.get(0);
+			List<T> loaded = new ArrayList<>();
+			try (KeyFileReader reader = new KeyFileReader(file)) {
+				if (first instanceof String) {
+					reader.forEachString(key -> loaded.add((T) key));
+				} else if (first instanceof Integer) {
+					reader.forEachInt(key -> loaded.add((T) Integer.valueOf(key)));
+				} else {
+					reader.forEachDouble(key -> loaded.add((T) Double.valueOf(key)));
+				}
+			}
+			this.tree.insertAll(loaded);
+		}
+
+		@Override
+		public void save(Path file) {
+			throw new UnsupportedOperationException("a B+-tree cannot be saved");
+		}
+
+		@Override
+		public void restore(Path file) {
+			throw new UnsupportedOperationException("a B+-tree cannot be saved");
+		}
+	}
+
+	/**
+	 * An {@link IntBinarySearchTree}.
+	 */
+	static class IntSubject extends Keys {
+		private final BinarySearchTree.Mode mode;
+		private IntBinarySearchTree tree;
+		private PrimitiveIterator.OfInt scan;
+
+		IntSubject(BinarySearchTree.Mode mode, int[] order) {
+			super(order);
+			this.mode = mode;
+			clear();
+		}
+
+		@Override
+		public void clear() {
+			this.tree = new IntBinarySearchTree(this.mode);
+			this.scan = null;
+		}
+
+		@Override
+		public int size() {
+			return this.tree.size();
+		}
+
+		@Override
+		public void insert(int i) {
+			this.tree.insert(this.order[i]);
+		}
+
+		@Override
+		public void delete(int i) {
+			this.tree.delete(this.order[i]);
+		}
+
+		@Override
+		public boolean retrieve(int i) {
+			return this.tree.retrieve(this.order[i]);
+		}
+
+		@Override
+		public long scan(int keys) {
+			long sum = 0;
+			for (int i = 0; i < keys; ++i) {
+				if (this.scan == null || !this.scan.hasNext()) {
+					this.scan = this.tree.iterator();
+				}
+				sum += this.scan.nextInt();
+			}
+			return sum;
+		}
+
+		@Override
+		public int leaves() {
+			return this.tree.getNumLeafNodes();
+		}
+
+		@Override
+		public int cousins(int i) {
+			return this.tree.getCousins(this.order[i]).length;
+		}
+
+		@Override
+		public String text(int i) {
+			return Integer.toString(this.order[i]);
+		}
+
+		@Override
+		public void load(Path file) throws IOException {
+			BinarySearchTreeDriver.insertFromFileInt(this.tree, file);
+		}
+
+		@Override
+		public void save(Path file) throws IOException {
+			this.tree.save(file);
+		}
+
+		@Override
+		public void restore(Path file) throws IOException {
+			this.tree.load(file);
+		}
+	}
+
+	/**
+	 * A {@link DoubleBinarySearchTree}.
+	 */
+	static class DoubleSubject extends Keys {
+		private final BinarySearchTree.Mode mode;
+		private DoubleBinarySearchTree tree;
+		private PrimitiveIterator.OfDouble scan;
+
+		DoubleSubject(BinarySearchTree.Mode mode, int[] order) {
+			super(order);
+			this.mode = mode;
+			clear();
+		}
+
+		@Override
+		public void clear() {
+			this.tree = new DoubleBinarySearchTree(this.mode);
+			this.scan = null;
+		}
+
+		@Override
+		public int size() {
+			return this.tree.size();
+		}
+
+		@Override
+		public void insert(int i) {
+			this.tree.insert(toDouble(this.order[i]));
+		}
+
+		@Override
+		public void delete(int i) {
+			this.tree.delete(toDouble(this.order[i]));
+		}
+
+		@Override
+		public boolean retrieve(int i) {
+			return this.tree.retrieve(toDouble(this.order[i]));
+		}
+
+		@Override
+		public long scan(int keys) {
+			long sum = 0;
+			for (int i = 0; i < keys; ++i) {
+				if (this.scan == null || !this.scan.hasNext()) {
+					this.scan = this.tree.iterator();
+				}
+				sum += (long) this.scan.nextDouble();
+			}
+			return sum;
+		}
+
+		@Override
+		public int leaves() {
+			return this.tree.getNumLeafNodes();
+		}
+
+		@Override
+		public int cousins(int i) {
+			return this.tree.getCousins(toDouble(this.order[i])).length;
+		}
+
+		@Override
+		public String text(int i) {
+			return Double.toString(toDouble(this.order[i]));
+		}
+
+		@Override
+		public void load(Path file) throws IOException {
+			BinarySearchTreeDriver.insertFromFileDouble(this.tree, file);
+		}
+
+		@Override
+		public void save(Path file) throws IOException {
+			this.tree.save(file);
+		}
+
+		@Override
+		public void restore(Path file) throws IOException {
+			this.tree.load(file);
+		}
+	}
+}
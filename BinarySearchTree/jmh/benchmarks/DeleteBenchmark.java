@@ -0,0 +1,65 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Deletes keys from a full tree, alone or mixed with lookups. The keys
+ * deleted by a pass are inserted again before the call that starts the
+ * next one; the trees reuse the slots they freed, so that allocates
+ * nothing that {@code -prof gc} would count against the deletes.
+ * @author Chihyuan Tung
+ *
+ */
+public class DeleteBenchmark extends TreeBenchmark {
+
+	@Setup(Level.Invocation)
+	public void refill() {
+		if (this.cursor == 0 && this.subject.size() != this.size) {
+			this.subject.fill();
+		}
+	}
+
+	/**
+	 * Tells whether {@link #mixed} and {@link #batch} delete key {@code i}
+	 * rather than look it up.
+	 */
+	public static boolean isDelete(int i) {
+		return (i & 3) == 0;
+	}
+
+	/** delete every key of a full tree */
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public void delete() {
+		int from = next();
+		for (int i = from; i < from + CHUNK; ++i) {
+			this.subject.delete(i);
+		}
+	}
+
+	/** delete every fourth key and look up the others, one call per key */
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public void mixed(Blackhole blackhole) {
+		int from = next();
+		for (int i = from; i < from + CHUNK; ++i) {
+			if (isDelete(i)) {
+				this.subject.delete(i);
+			} else {
+				blackhole.consume(this.subject.retrieve(i));
+			}
+		}
+	}
+
+	/** the operations of {@link #mixed} as one {@code applyBatch} per call */
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public boolean[] batch() {
+		int from = next();
+		return this.subject.batch(from, from + CHUNK);
+	}
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The orders in which the keys are handed to the tree.
+ * @author Chihyuan Tung
+ *
+ */
+public enum Distribution {
+	/** the keys 0 .. n-1 shuffled */
+	RANDOM,
+	/** the keys 0 .. n-1 ascending */
+	SORTED,
+	/** the keys 0 .. n-1 descending */
+	REVERSE,
+	/**
+	 * distinct keys drawn from [0, 16n) with a power law, dense near 0
+	 * and sparse towards the end, in the order they were drawn
+	 */
+	SKEWED;
+
+	/**
+	 * Returns the {@code n} keys in this order.
+	 * @param n the number of keys
+	 * @param random the source of the shuffle and of the skewed keys
+	 * @return the keys
+	 */
+	public int[] keys(int n, Random random) {
+		int[] keys = new int[n];
+		switch (this) {
+		case RANDOM:
+			for (int i = 0; i < n; ++i) {
+				keys[i] = i;
+			}
+			for (int i = n - 1; i > 0; --i) {
+				int j = random.nextInt(i + 1);
+				int temp = keys[i];
+				keys[i] = keys[j];
+				keys[j] = temp;
+			}
+			break;
+		case SORTED:
+			for (int i = 0; i < n; ++i) {
+				keys[i] = i;
+			}
+			break;
+		case REVERSE:
+			for (int i = 0; i < n; ++i) {
+				keys[i] = n - 1 - i;
+			}
+			break;
+		case SKEWED:
+			Set<Integer> seen = new HashSet<>(n * 2);
+			long range = 16L * n;
+			int count = 0;
+			while (count < n) {
+				double u = random.nextDouble();
+				int key = (int) (range * u * u * u);
+				if (seen.add(key)) {
+					keys[count++] = key;
+				}
+			}
+			break;
+		}
+		return keys;
+	}
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Setup;
+
+/**
+ * Inserts every key into an empty tree. The tree is replaced by an empty
+ * one before the call that starts a new pass over the keys.
+ * @author Chihyuan Tung
+ *
+ */
+public class InsertBenchmark extends TreeBenchmark {
+
+	@Override
+	protected void prepare() {
+		this.subject.clear();
+	}
+
+	@Setup(Level.Invocation)
+	public void empty() {
+		if (this.cursor == 0) {
+			this.subject.clear();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public void insert() {
+		int from = next();
+		for (int i = from; i < from + CHUNK; ++i) {
+			this.subject.insert(i);
+		}
+	}
+}
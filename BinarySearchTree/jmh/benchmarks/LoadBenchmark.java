@@ -0,0 +1,82 @@
+package benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Builds a tree of all the keys from a file, once per call, so the
+ * scores are per file rather than per key.
+ * @author Chihyuan Tung
+ *
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LoadBenchmark extends TreeBenchmark {
+
+	/** the keys as text, one per line */
+	private Path keys;
+	/** the tree in the binary format, {@code null} if it cannot be saved */
+	private Path saved;
+
+	/**
+	 * Writes the key file and the saved tree and leaves the tree empty.
+	 */
+	@Override
+	protected void prepare() throws IOException {
+		this.keys = Files.createTempFile("bst-bench", ".txt");
+		try (BufferedWriter out = Files.newBufferedWriter(this.keys)) {
+			for (int i = 0; i < this.size; ++i) {
+				out.write(this.subject.text(i));
+				out.newLine();
+			}
+		}
+		this.subject.fill();
+		Path saved = Files.createTempFile("bst-bench", ".bin");
+		try {
+			this.subject.save(saved);
+			this.saved = saved;
+		} catch (UnsupportedOperationException e) {
+			//a B+-tree, restore will fail
+			Files.delete(saved);
+		}
+		this.subject.clear();
+	}
+
+	@Setup(Level.Invocation)
+	public void empty() {
+		this.subject.clear();
+	}
+
+	/** load the keys from a file the way the driver does */
+	@Benchmark
+	public int load() throws IOException {
+		this.subject.load(this.keys);
+		return this.subject.size();
+	}
+
+	/** load a tree saved in the binary format */
+	@Benchmark
+	public int restore() throws IOException {
+		if (this.saved == null) {
+			throw new UnsupportedOperationException("the tree cannot be saved");
+		}
+		this.subject.restore(this.saved);
+		return this.subject.size();
+	}
+
+	@TearDown(Level.Trial)
+	public void deleteFiles() throws IOException {
+		Files.deleteIfExists(this.keys);
+		if (this.saved != null) {
+			Files.deleteIfExists(this.saved);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The queries on a full tree, which leave it as it is.
+ * @author Chihyuan Tung
+ *
+ */
+public class LookupBenchmark extends TreeBenchmark {
+
+	/** the key of the next {@link #cousins} call */
+	private int cousin;
+
+	/** look up every key */
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public void retrieve(Blackhole blackhole) {
+		int from = next();
+		for (int i = from; i < from + CHUNK; ++i) {
+			blackhole.consume(this.subject.retrieve(i));
+		}
+	}
+
+	/** iterate over the keys in in-order, the time is per key */
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public long scan() {
+		return this.subject.scan(CHUNK);
+	}
+
+	/** count the leaf nodes */
+	@Benchmark
+	public int leaves() {
+		return this.subject.leaves();
+	}
+
+	/**
+	 * find the cousins of a key; one search costs up to O(n), so the keys
+	 * are sampled at 1000 points
+	 */
+	@Benchmark
+	public int cousins() {
+		int key = this.cousin;
+		this.cousin = (key + this.size / 1000) % this.size;
+		return this.subject.cousins(key);
+	}
+
+	/**
+	 * count the nodes on every level with a parallel walk; the common pool
+	 * parallelism sets the threads
+	 */
+	@Benchmark
+	public int widths() {
+		return this.subject.widths();
+	}
+}
@@ -0,0 +1,32 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Looks up every key in a tree that holds only the keys of even index, so
+ * that half of the lookups miss. With {@code -p filter=0.01} most misses
+ * end in the {@code CountingBloomFilter}.
+ * @author Chihyuan Tung
+ *
+ */
+public class MissBenchmark extends TreeBenchmark {
+
+	@Override
+	protected void prepare() {
+		this.subject.fill();
+		for (int i = 1; i < this.size; i += 2) {
+			this.subject.delete(i);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public void misses(Blackhole blackhole) {
+		int from = next();
+		for (int i = from; i < from + CHUNK; ++i) {
+			blackhole.consume(this.subject.retrieve(i));
+		}
+	}
+}
@@ -0,0 +1,127 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * One tree of a benchmark case together with its keys. Key {@code i} is
+ * the i-th key in the order of the {@link Distribution}. The trees live
+ * in the default package, which JMH does not accept for benchmarks and
+ * which a named package cannot import, so the implementations are in the
+ * class {@code BenchmarkSubjects} of the default package and are created
+ * through {@link #factory()}.
+ * @author Chihyuan Tung
+ *
+ */
+public interface Subject {
+
+	/**
+	 * Creates the subject of a case.
+	 */
+	interface Factory {
+		/**
+		 * @param type the key type, {@code Integer}, {@code Double},
+		 * {@code String}, {@code Prefixed}, {@code int} or {@code double}
+		 * @param mode the {@code BinarySearchTree.Mode}
+		 * @param fanout the fanout of a {@code BPlusTree} for the boxed
+		 * types, 0 for a {@code BinarySearchTree}
+		 * @param metrics whether the tree records {@code TreeMetrics}
+		 * @param filter the false positive rate of a
+		 * {@code CountingBloomFilter}, 0 for none
+		 * @param order the keys in the order of the distribution
+		 * @return an empty tree
+		 */
+		Subject create(String type, String mode, int fanout, boolean metrics, double filter, int[] order);
+	}
+
+	/**
+	 * Returns the factory of the default package. It is looked up once
+	 * per trial, outside of the measurement.
+	 * @return the factory
+	 * @throws ReflectiveOperationException if it is missing
+	 */
+	static Factory factory() throws ReflectiveOperationException {
+		return (Factory) Class.forName("BenchmarkSubjects").getDeclaredConstructor().newInstance();
+	}
+
+	/** returns the number of keys of the case */
+	int count();
+
+	/** replaces the tree by an empty one */
+	void clear();
+
+	/**
+	 * Inserts every key that is not in the tree. It looks the keys up
+	 * first, since some trees print a message for a duplicate.
+	 */
+	default void fill() {
+		for (int i = 0; i < count(); ++i) {
+			if (!retrieve(i)) {
+				insert(i);
+			}
+		}
+	}
+
+	int size();
+
+	void insert(int i);
+
+	void delete(int i);
+
+	boolean retrieve(int i);
+
+	/**
+	 * Iterates over the next {@code keys} keys in in-order, from where the
+	 * last call stopped and from the start after the end.
+	 * @return a checksum of the keys
+	 */
+	long scan(int keys);
+
+	int leaves();
+
+	int cousins(int i);
+
+	/**
+	 * Applies the operations of {@link DeleteBenchmark#mixed} on the keys
+	 * {@code [from, to)} as one batch. Only {@code BinarySearchTree} has a
+	 * batch API.
+	 * @return the results
+	 */
+	default boolean[] batch(int from, int to) {
+		throw new UnsupportedOperationException("no batch API");
+	}
+
+	/**
+	 * Returns the number of levels counted by
+	 * {@code BinarySearchTree.parallelLevelWidths()}, which only
+	 * {@code BinarySearchTree} has.
+	 * @return the height
+	 */
+	default int widths() {
+		throw new UnsupportedOperationException("no parallel walk");
+	}
+
+	/**
+	 * Returns key {@code i} the way it is written in a key file.
+	 * @return the text
+	 */
+	String text(int i);
+
+	/** loads a key file the way the driver does */
+	void load(Path file) throws IOException;
+
+	/** saves the tree in the binary format */
+	void save(Path file) throws IOException;
+
+	/** replaces the tree by one saved in the binary format */
+	void restore(Path file) throws IOException;
+
+	/**
+	 * Returns what the {@code TreeMetrics} of the tree counted, if it
+	 * records any.
+	 * @return a line of text, {@code null} without metrics
+	 */
+	default String report() {
+		return null;
+	}
+}
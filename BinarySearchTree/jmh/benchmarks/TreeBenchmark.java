@@ -0,0 +1,116 @@
+package benchmarks;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The parameters and the tree shared by the benchmarks. Every case is a
+ * key type, a number of keys and a distribution, and by default the
+ * benchmarks run the whole matrix of them, each in its own JVM, and
+ * report the throughput and the average time per operation. The other
+ * parameters keep one value unless they are given with {@code -p}. Most
+ * benchmarks work on {@link #CHUNK} keys per call, taken in the order of
+ * the distribution from where the last call stopped, and JMH divides by
+ * that, so the scores are per key. Run them with {@code -prof gc} for the
+ * bytes allocated per operation and the time in GC.
+ * @author Chihyuan Tung
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode({ Mode.Throughput, Mode.AverageTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms6g", "-Xmx6g" })
+public abstract class TreeBenchmark {
+
+	/** the keys of one call; every size must be a multiple of it */
+	public static final int CHUNK = 1000;
+	/** the seed of the distributions */
+	private static final long SEED = 42;
+
+	/** {@code Integer}, {@code Double}, {@code String}, {@code Prefixed}, {@code int} or {@code double} */
+	@Param({ "Integer", "Double", "String" })
+	public String type;
+
+	/** the number of keys */
+	@Param({ "1000", "10000", "100000", "1000000", "10000000" })
+	public int size;
+
+	/** a {@link Distribution} */
+	@Param({ "random", "sorted", "reverse", "skewed" })
+	public String dist;
+
+	/** the {@code BinarySearchTree.Mode} */
+	@Param({ "AVL" })
+	public String mode;
+
+	/** a positive fanout measures a {@code BPlusTree} for the boxed types */
+	@Param({ "0" })
+	public int fanout;
+
+	/** whether the tree records {@code TreeMetrics} */
+	@Param({ "false" })
+	public boolean metrics;
+
+	/** the false positive rate of a {@code CountingBloomFilter}, 0 for none */
+	@Param({ "0" })
+	public double filter;
+
+	/** the tree of the case */
+	protected Subject subject;
+	/** the first key of the next call */
+	protected int cursor;
+
+	@Setup(Level.Trial)
+	public void createTree() throws Exception {
+		if (this.size % CHUNK != 0) {
+			throw new IllegalArgumentException("the size must be a multiple of " + CHUNK);
+		}
+		int[] order = Distribution.valueOf(this.dist.toUpperCase(Locale.ROOT)).keys(this.size, new Random(SEED));
+		this.subject = Subject.factory().create(this.type, this.mode, this.fanout, this.metrics, this.filter, order);
+		prepare();
+	}
+
+	/**
+	 * Brings the new tree into the state the benchmarks start from. The
+	 * default is a tree that holds every key.
+	 * @throws Exception if a file cannot be written
+	 */
+	protected void prepare() throws Exception {
+		this.subject.fill();
+	}
+
+	/**
+	 * Returns the first key of the next call and moves the cursor on by
+	 * {@link #CHUNK}, back to 0 after the last key.
+	 * @return the first key
+	 */
+	protected int next() {
+		int from = this.cursor;
+		this.cursor = from + CHUNK == this.size ? 0 : from + CHUNK;
+		return from;
+	}
+
+	@TearDown(Level.Trial)
+	public void report() throws Exception {
+		String report = this.subject.report();
+		if (report != null) {
+			System.out.println(report);
+		}
+	}
+}
@@ -0,0 +1,54 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Looks up keys of a full tree drawn from a Zipf distribution with
+ * exponent 1, so a few hot keys take most of the lookups. It compares
+ * {@code -p mode=SPLAY} with {@code AVL}.
+ * @author Chihyuan Tung
+ *
+ */
+public class ZipfBenchmark extends TreeBenchmark {
+
+	/** the keys looked up, in the order they are looked up */
+	private int[] trace;
+
+	/**
+	 * Fills the tree and draws {@code size} keys with probability
+	 * proportional to 1 / rank, where the ranks are given to the keys at
+	 * random.
+	 */
+	@Override
+	protected void prepare() {
+		this.subject.fill();
+		int n = this.size;
+		double[] cumulative = new double[n];
+		double sum = 0;
+		for (int i = 0; i < n; ++i) {
+			sum += 1.0 / (i + 1);
+			cumulative[i] = sum;
+		}
+		int[] ranked = Distribution.RANDOM.keys(n, new Random(n));
+		Random random = new Random(~n);
+		this.trace = new int[n];
+		for (int i = 0; i < n; ++i) {
+			int rank = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+			this.trace[i] = ranked[Math.min(n - 1, rank < 0 ? -rank - 1 : rank)];
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(CHUNK)
+	public void zipf(Blackhole blackhole) {
+		int from = next();
+		for (int i = from; i < from + CHUNK; ++i) {
+			blackhole.consume(this.subject.retrieve(this.trace[i]));
+		}
+	}
+}
@@ -0,0 +1,981 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class represent a B+-tree with the ordered set operations of
+ * {@link BinarySearchTree}. A node holds up to {@code fanout} keys in one
+ * array, so a search reads a few wide nodes that are each searched with a
+ * binary search instead of following one pointer per comparison, and the
+ * height is about log(n) / log(fanout / 2). The keys live only in the
+ * leaves, which are chained from left to right, so an in-order scan walks
+ * the leaf arrays one after the other. The inner nodes keep separators:
+ * every key of {@code children[i]} is less than {@code keys[i]} and every
+ * key of {@code children[i + 1]} is greater than or equal to it. Every
+ * node also knows how many keys its subtree holds, which gives rank and
+ * select in O(log n).
+ * <p>
+ * The shape queries of a binary tree have no counterpart here: there are
+ * no single parents, siblings or cousins. {@link #getNumLeafNodes()}
+ * counts the leaf pages and {@link #getNodeLevel} returns the level of the
+ * leaf, which is the same for every key.
+ * @author Chihyuan Tung
+ *
+ * @param <T> type parameter
+ */
+public class BPlusTree<T extends Comparable<T>> implements Iterable<T> {
+
+	/** default maximum number of keys of a leaf and of children of an inner node */
+	public static final int DEFAULT_FANOUT = 64;
+
+	/**
+	 * A page of the tree, {@code keys[0, count)} are in use.
+	 */
+	private abstract static class Node {
+		final Object[] keys;
+		int count;
+		/** number of keys in the subtree */
+		int size;
+
+		Node(int capacity) {
+			this.keys = new Object[capacity];
+		}
+	}
+
+	/**
+	 * A leaf, its keys are the keys of the tree.
+	 */
+	private static final class Leaf extends Node {
+		Leaf prev;
+		Leaf next;
+
+		Leaf(int fanout) {
+			//one more slot holds the key that makes a full leaf split
+			super(fanout + 1);
+		}
+	}
+
+	/**
+	 * An inner node with {@code count} separators and {@code count + 1}
+	 * children.
+	 */
+	private static final class Inner extends Node {
+		final Node[] children;
+
+		Inner(int fanout) {
+			//one more slot holds the child that makes a full node split
+			super(fanout);
+			this.children = new Node[fanout + 1];
+		}
+	}
+
+	private final int fanout;
+	/** fewest keys of a leaf other than the root */
+	private final int minKeys;
+	/** fewest children of an inner node other than the root */
+	private final int minChildren;
+	/** orders the keys, {@code null} for their natural order */
+	private final Comparator<? super T> comparator;
+	private Node root;
+	private Leaf head;
+	private int leafCount;
+	private int innerCount;
+	/** scratch buffers for the search path of insert and delete */
+	private Inner[] path;
+	private int[] slots;
+
+	public BPlusTree() {
+		this(DEFAULT_FANOUT);
+	}
+
+	/**
+	 * Constructor of the class.
+	 * @param fanout the maximum number of keys of a leaf and of children of
+	 * an inner node, at least 4
+	 */
+	public BPlusTree(int fanout) {
+		this(fanout, null);
+	}
+
+	/**
+	 * Constructor of a tree ordered by {@code comparator}.
+	 * @param fanout the maximum number of keys of a leaf and of children of
+	 * an inner node, at least 4
+	 * @param comparator orders the keys, {@code null} for their natural
+	 * order
+	 */
+	public BPlusTree(int fanout, Comparator<? super T> comparator) {
+		if (fanout < 4) {
+			throw new IllegalArgumentException("fanout must be at least 4");
+		}
+		this.fanout = fanout;
+		this.minKeys = fanout / 2;
+		this.minChildren = (fanout + 1) / 2;
+		this.comparator = comparator;
+		this.path = new Inner[16];
+		this.slots = new int[16];
+	}
+
+	/**
+	 * Returns fanout
+	 * @return the maximum number of keys of a leaf
+	 */
+	public int getFanout() {
+		return this.fanout;
+	}
+
+	/**
+	 * Returns the comparator of the tree.
+	 * @return the comparator, {@code null} for the natural order
+	 */
+	public Comparator<? super T> comparator() {
+		return this.comparator;
+	}
+
+	/**
+	 * Returns the number of bytes the pages use for every key, counting
+	 * unused slots and, with compressed references, the object headers,
+	 * but not the keys themselves.
+	 * @return bytes per key, 0 for an empty tree
+	 */
+	public double bytesPerKey() {
+		if (size() == 0) {
+			return 0;
+		}
+		long leafBytes = 32 + align(16 + 4L * (this.fanout + 1));
+		long innerBytes = 24 + align(16 + 4L * this.fanout) + align(16 + 4L * (this.fanout + 1));
+		return (double) (this.leafCount * leafBytes + this.innerCount * innerBytes) / size();
+	}
+
+	private static long align(long bytes) {
+		return (bytes + 7) & ~7L;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int compare(Object a, Object b) {
+		return this.comparator == null ? ((T) a).compareTo((T) b) : this.comparator.compare((T) a, (T) b);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T key(Object key) {
+		return (T) key;
+	}
+
+	/**
+	 * Returns the index of the first key of {@code node} greater than
+	 * {@code key}, which is the child of an inner node to descend into.
+	 */
+	private int upper(Node node, T key) {
+		int lo = 0;
+		int hi = node.count;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (compare(key, node.keys[mid]) < 0) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * Returns the index of {@code key} in {@code leaf}, or
+	 * {@code -(insertion point) - 1} if it is not presented.
+	 */
+	private int search(Leaf leaf, T key) {
+		int lo = 0;
+		int hi = leaf.count - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int cmp = compare(key, leaf.keys[mid]);
+			if (cmp == 0) {
+				return mid;
+			} else if (cmp < 0) {
+				hi = mid - 1;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		return -lo - 1;
+	}
+
+	/**
+	 * Returns the leaf that holds {@code key} if it is presented.
+	 */
+	private Leaf findLeaf(T key) {
+		Node node = this.root;
+		while (node instanceof Inner) {
+			node = ((Inner) node).children[upper(node, key)];
+		}
+		return (Leaf) node;
+	}
+
+	/**
+	 * Appends an inner node and the index of the child taken to the search
+	 * path.
+	 */
+	private void push(int depth, Inner node, int slot) {
+		if (depth == this.path.length) {
+			this.path = Arrays.copyOf(this.path, depth * 2);
+			this.slots = Arrays.copyOf(this.slots, depth * 2);
+		}
+		this.path[depth] = node;
+		this.slots[depth] = slot;
+	}
+
+	private static void insertAt(Object[] array, int length, int index, Object value) {
+		System.arraycopy(array, index, array, index + 1, length - index);
+		array[index] = value;
+	}
+
+	private static void removeAt(Object[] array, int length, int index) {
+		System.arraycopy(array, index + 1, array, index, length - index - 1);
+		array[length - 1] = null;
+	}
+
+	/**
+	 * Given the {@code item} and check if it is presented in the tree.
+	 * @param item the item to be searched
+	 * @return {@code true} if found, {@code false} otherwise
+	 */
+	public boolean retrieve(T item) {
+		return this.root != null && search(findLeaf(item), item) >= 0;
+	}
+
+	/**
+	 * Insert {@code key} into the tree. A leaf that overflows is split in
+	 * two halves and the first key of the right half goes up to the parent
+	 * as a separator, which may split the parent in turn.
+	 * @param key the key to be inserted.
+	 */
+	public void insert(T key) {
+		if (!add(key)) {
+			System.out.println("The item already exsits in the tree.");
+		}
+	}
+
+	/**
+	 * Insert {@code key} into the tree without printing anything.
+	 * @param key the key to be inserted
+	 * @return {@code true} if the key was not presented before
+	 */
+	private boolean add(T key) {
+		if (this.root == null) {
+			Leaf leaf = new Leaf(this.fanout);
+			leaf.keys[0] = key;
+			leaf.count = 1;
+			leaf.size = 1;
+			this.root = leaf;
+			this.head = leaf;
+			this.leafCount = 1;
+			return true;
+		}
+		int depth = 0;
+		Node node = this.root;
+		while (node instanceof Inner) {
+			int slot = upper(node, key);
+			push(depth++, (Inner) node, slot);
+			node = ((Inner) node).children[slot];
+		}
+		Leaf leaf = (Leaf) node;
+		int at = search(leaf, key);
+		if (at >= 0) {
+			Arrays.fill(this.path, 0, depth, null);
+			return false;
+		}
+		insertAt(leaf.keys, leaf.count, -at - 1, key);
+		leaf.count += 1;
+		leaf.size += 1;
+		for (int i = 0; i < depth; ++i) {
+			this.path[i].size += 1;
+		}
+		if (leaf.count > this.fanout) {
+			split(leaf, depth);
+		}
+		Arrays.fill(this.path, 0, depth, null);
+		return true;
+	}
+
+	/**
+	 * Splits the overflowing {@code leaf} and every overflowing node above
+	 * it on the search path {@code path[0, depth)}.
+	 */
+	private void split(Leaf leaf, int depth) {
+		Leaf right = new Leaf(this.fanout);
+		int mid = leaf.count / 2;
+		right.count = leaf.count - mid;
+		System.arraycopy(leaf.keys, mid, right.keys, 0, right.count);
+		Arrays.fill(leaf.keys, mid, leaf.count, null);
+		leaf.count = mid;
+		leaf.size = mid;
+		right.size = right.count;
+		right.next = leaf.next;
+		right.prev = leaf;
+		if (leaf.next != null) {
+			leaf.next.prev = right;
+		}
+		leaf.next = right;
+		this.leafCount += 1;
+
+		Object separator = right.keys[0];
+		Node left = leaf;
+		Node added = right;
+		for (int i = depth - 1; i >= 0; --i) {
+			Inner parent = this.path[i];
+			int slot = this.slots[i];
+			insertAt(parent.keys, parent.count, slot, separator);
+			insertAt(parent.children, parent.count + 1, slot + 1, added);
+			parent.count += 1;
+			if (parent.count < this.fanout) {
+				return;
+			}
+			//fanout + 1 children: the middle separator moves up
+			Inner sibling = new Inner(this.fanout);
+			int half = parent.count / 2;
+			separator = parent.keys[half];
+			sibling.count = parent.count - half - 1;
+			System.arraycopy(parent.keys, half + 1, sibling.keys, 0, sibling.count);
+			System.arraycopy(parent.children, half + 1, sibling.children, 0, sibling.count + 1);
+			Arrays.fill(parent.keys, half, parent.count, null);
+			Arrays.fill(parent.children, half + 1, parent.count + 1, null);
+			parent.count = half;
+			for (int j = 0; j <= sibling.count; ++j) {
+				sibling.size += sibling.children[j].size;
+			}
+			parent.size -= sibling.size;
+			this.innerCount += 1;
+			left = parent;
+			added = sibling;
+		}
+		Inner top = new Inner(this.fanout);
+		top.keys[0] = separator;
+		top.children[0] = left;
+		top.children[1] = added;
+		top.count = 1;
+		top.size = left.size + added.size;
+		this.root = top;
+		this.innerCount += 1;
+	}
+
+	/**
+	 * Given the key and delete it from the tree. A leaf that falls below
+	 * half full borrows a key from a sibling or, if both siblings are half
+	 * full too, is merged with one of them, which removes a separator from
+	 * the parent and may make the parent borrow or merge in turn.
+	 * @param key the key to be deleted
+	 */
+	public void delete(T key) {
+		if (this.root == null) {
+			System.out.println("You cannot delete from an empty tree");
+			return;
+		}
+		if (!remove(key)) {
+			System.out.println("The item is not present in the tree");
+		}
+	}
+
+	/**
+	 * Delete {@code key} from the tree without printing anything.
+	 * @param key the key to be deleted
+	 * @return {@code true} if the key was presented
+	 */
+	private boolean remove(T key) {
+		if (this.root == null) {
+			return false;
+		}
+		int depth = 0;
+		Node node = this.root;
+		while (node instanceof Inner) {
+			int slot = upper(node, key);
+			push(depth++, (Inner) node, slot);
+			node = ((Inner) node).children[slot];
+		}
+		Leaf leaf = (Leaf) node;
+		int at = search(leaf, key);
+		if (at < 0) {
+			Arrays.fill(this.path, 0, depth, null);
+			return false;
+		}
+		removeAt(leaf.keys, leaf.count, at);
+		leaf.count -= 1;
+		leaf.size -= 1;
+		for (int i = 0; i < depth; ++i) {
+			this.path[i].size -= 1;
+		}
+		if (depth == 0) {
+			if (leaf.count == 0) {
+				this.root = null;
+				this.head = null;
+				this.leafCount = 0;
+			}
+			return true;
+		}
+		//fix the underflows bottom-up, a node that is full enough stops it
+		boolean underflow = leaf.count < this.minKeys;
+		for (int i = depth - 1; i >= 0 && underflow; --i) {
+			Inner parent = this.path[i];
+			if (i == depth - 1) {
+				fixLeaf(parent, this.slots[i]);
+			} else {
+				fixInner(parent, this.slots[i]);
+			}
+			underflow = parent.count + 1 < this.minChildren;
+		}
+		if (this.root instanceof Inner && this.root.count == 0) {
+			this.root = ((Inner) this.root).children[0];
+			this.innerCount -= 1;
+		}
+		Arrays.fill(this.path, 0, depth, null);
+		return true;
+	}
+
+	/**
+	 * Refills the leaf {@code parent.children[slot]} from a sibling or
+	 * merges it with one.
+	 */
+	private void fixLeaf(Inner parent, int slot) {
+		Leaf leaf = (Leaf) parent.children[slot];
+		Leaf left = slot > 0 ? (Leaf) parent.children[slot - 1] : null;
+		Leaf right = slot < parent.count ? (Leaf) parent.children[slot + 1] : null;
+		if (left != null && left.count > this.minKeys) {
+			insertAt(leaf.keys, leaf.count, 0, left.keys[left.count - 1]);
+			left.keys[--left.count] = null;
+			leaf.count += 1;
+			left.size -= 1;
+			leaf.size += 1;
+			parent.keys[slot - 1] = leaf.keys[0];
+		} else if (right != null && right.count > this.minKeys) {
+			leaf.keys[leaf.count++] = right.keys[0];
+			removeAt(right.keys, right.count, 0);
+			right.count -= 1;
+			right.size -= 1;
+			leaf.size += 1;
+			parent.keys[slot] = right.keys[0];
+		} else {
+			mergeLeaves(parent, left != null ? slot - 1 : slot);
+		}
+	}
+
+	/**
+	 * Moves the keys of {@code parent.children[index + 1]} to the end of
+	 * {@code parent.children[index]} and unlinks the emptied leaf.
+	 */
+	private void mergeLeaves(Inner parent, int index) {
+		Leaf left = (Leaf) parent.children[index];
+		Leaf right = (Leaf) parent.children[index + 1];
+		System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+		left.count += right.count;
+		left.size += right.size;
+		left.next = right.next;
+		if (right.next != null) {
+			right.next.prev = left;
+		}
+		this.leafCount -= 1;
+		removeAt(parent.keys, parent.count, index);
+		removeAt(parent.children, parent.count + 1, index + 1);
+		parent.count -= 1;
+	}
+
+	/**
+	 * Refills the inner node {@code parent.children[slot]} from a sibling,
+	 * rotating a separator through the parent, or merges it with one.
+	 */
+	private void fixInner(Inner parent, int slot) {
+		Inner node = (Inner) parent.children[slot];
+		Inner left = slot > 0 ? (Inner) parent.children[slot - 1] : null;
+		Inner right = slot < parent.count ? (Inner) parent.children[slot + 1] : null;
+		if (left != null && left.count + 1 > this.minChildren) {
+			Node moved = left.children[left.count];
+			insertAt(node.keys, node.count, 0, parent.keys[slot - 1]);
+			insertAt(node.children, node.count + 1, 0, moved);
+			node.count += 1;
+			parent.keys[slot - 1] = left.keys[left.count - 1];
+			left.keys[left.count - 1] = null;
+			left.children[left.count] = null;
+			left.count -= 1;
+			left.size -= moved.size;
+			node.size += moved.size;
+		} else if (right != null && right.count + 1 > this.minChildren) {
+			Node moved = right.children[0];
+			node.keys[node.count] = parent.keys[slot];
+			node.children[node.count + 1] = moved;
+			node.count += 1;
+			parent.keys[slot] = right.keys[0];
+			removeAt(right.keys, right.count, 0);
+			removeAt(right.children, right.count + 1, 0);
+			right.count -= 1;
+			right.size -= moved.size;
+			node.size += moved.size;
+		} else {
+			int index = left != null ? slot - 1 : slot;
+			Inner into = (Inner) parent.children[index];
+			Inner from = (Inner) parent.children[index + 1];
+			into.keys[into.count] = parent.keys[index];
+			System.arraycopy(from.keys, 0, into.keys, into.count + 1, from.count);
+			System.arraycopy(from.children, 0, into.children, into.count + 1, from.count + 1);
+			into.count += from.count + 1;
+			into.size += from.size;
+			this.innerCount -= 1;
+			removeAt(parent.keys, parent.count, index);
+			removeAt(parent.children, parent.count + 1, index + 1);
+			parent.count -= 1;
+		}
+	}
+
+	/**
+	 * Replace the content of the tree by {@code keys}, which must be
+	 * sorted in strictly ascending order. The keys are cut into leaves of
+	 * equal size and the levels above are built the same way, in O(n).
+	 * @param keys the keys in ascending order
+	 * @throws IllegalArgumentException if the keys are not strictly
+	 * ascending
+	 */
+	public void buildFromSorted(List<? extends T> keys) {
+		Object[] sorted = keys.toArray();
+		for (int i = 1; i < sorted.length; ++i) {
+			if (compare(sorted[i - 1], sorted[i]) >= 0) {
+				throw new IllegalArgumentException("keys are not strictly ascending at index " + i);
+			}
+		}
+		build(sorted, sorted.length);
+	}
+
+	/**
+	 * Insert every key of {@code keys} into the tree, duplicates are
+	 * ignored, see {@link BinarySearchTree#insertAll}. A large batch is
+	 * merged with the leaf chain and the tree is rebuilt in O(n + m).
+	 * @param keys the keys to be inserted
+	 */
+	@SuppressWarnings("unchecked")
+	public void insertAll(Collection<? extends T> keys) {
+		Object[] batch = keys.toArray();
+		//a null comparator sorts by the natural order
+		Arrays.sort(batch, (Comparator<Object>) this.comparator);
+		int m = 0;
+		for (int i = 0; i < batch.length; ++i) {
+			if (m == 0 || compare(batch[m - 1], batch[i]) != 0) {
+				batch[m++] = batch[i];
+			}
+		}
+		int n = size();
+		//m inserts cost about m log n, a rebuild costs n + m
+		if ((long) m * (32 - Integer.numberOfLeadingZeros(n)) < n) {
+			for (int i = 0; i < m; ++i) {
+				add(BPlusTree.<T>key(batch[i]));
+			}
+			return;
+		}
+		Object[] merged = new Object[n + m];
+		int count = 0;
+		int i = 0;
+		for (Leaf leaf = this.head; leaf != null; leaf = leaf.next) {
+			for (int j = 0; j < leaf.count; ++j) {
+				Object next = leaf.keys[j];
+				while (i < m && compare(batch[i], next) < 0) {
+					merged[count++] = batch[i++];
+				}
+				if (i < m && compare(batch[i], next) == 0) {
+					i += 1;
+				}
+				merged[count++] = next;
+			}
+		}
+		while (i < m) {
+			merged[count++] = batch[i++];
+		}
+		build(merged, count);
+	}
+
+	/**
+	 * Builds the tree from the ascending keys {@code keys[0, n)}.
+	 */
+	private void build(Object[] keys, int n) {
+		this.root = null;
+		this.head = null;
+		this.leafCount = 0;
+		this.innerCount = 0;
+		if (n == 0) {
+			return;
+		}
+		int leaves = (n + this.fanout - 1) / this.fanout;
+		Node[] level = new Node[leaves];
+		//the smallest key of every subtree of the level, its separator
+		Object[] first = new Object[leaves];
+		Leaf prev = null;
+		int from = 0;
+		for (int i = 0; i < leaves; ++i) {
+			int to = (int) ((long) n * (i + 1) / leaves);
+			Leaf leaf = new Leaf(this.fanout);
+			System.arraycopy(keys, from, leaf.keys, 0, to - from);
+			leaf.count = to - from;
+			leaf.size = leaf.count;
+			leaf.prev = prev;
+			if (prev == null) {
+				this.head = leaf;
+			} else {
+				prev.next = leaf;
+			}
+			prev = leaf;
+			level[i] = leaf;
+			first[i] = leaf.keys[0];
+			from = to;
+		}
+		this.leafCount = leaves;
+		int width = leaves;
+		while (width > 1) {
+			int parents = (width + this.fanout - 1) / this.fanout;
+			from = 0;
+			for (int i = 0; i < parents; ++i) {
+				int to = (int) ((long) width * (i + 1) / parents);
+				Inner inner = new Inner(this.fanout);
+				inner.count = to - from - 1;
+				for (int j = from; j < to; ++j) {
+					inner.children[j - from] = level[j];
+					inner.size += level[j].size;
+					if (j > from) {
+						inner.keys[j - from - 1] = first[j];
+					}
+				}
+				//the parents are written in front of the children still to be read
+				Object smallest = first[from];
+				level[i] = inner;
+				first[i] = smallest;
+				from = to;
+			}
+			this.innerCount += parents;
+			width = parents;
+		}
+		this.root = level[0];
+	}
+
+	/**
+	 * Returns the leaf that holds the key of rank {@code index} and the
+	 * position of that key in the leaf.
+	 */
+	private Object[] locate(int index) {
+		Node node = this.root;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			int slot = 0;
+			while (index >= inner.children[slot].size) {
+				index -= inner.children[slot].size;
+				slot += 1;
+			}
+			node = inner.children[slot];
+		}
+		return new Object[] { node, index };
+	}
+
+	/**
+	 * Returns the number of keys that are less than {@code key}, or less
+	 * than or equal to {@code key} if {@code inclusive}.
+	 */
+	private int rank(T key, boolean inclusive) {
+		if (this.root == null) {
+			return 0;
+		}
+		int rank = 0;
+		Node node = this.root;
+		while (node instanceof Inner) {
+			Inner inner = (Inner) node;
+			int slot = upper(inner, key);
+			for (int i = 0; i < slot; ++i) {
+				rank += inner.children[i].size;
+			}
+			node = inner.children[slot];
+		}
+		int at = search((Leaf) node, key);
+		return rank + (at >= 0 ? at + (inclusive ? 1 : 0) : -at - 1);
+	}
+
+	/**
+	 * Returns the number of keys in the tree that are less than
+	 * {@code key}. {@code key} does not have to be presented.
+	 * @param key the key
+	 * @return the rank of the key
+	 */
+	public int rank(T key) {
+		return rank(key, false);
+	}
+
+	/**
+	 * Returns the key with the given rank, {@code select(0)} is the
+	 * smallest key.
+	 * @param index the rank of the key
+	 * @return the key with rank {@code index}
+	 * @throws IndexOutOfBoundsException if {@code index} is not in
+	 * [0, size())
+	 */
+	public T select(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		Object[] at = locate(index);
+		return key(((Leaf) at[0]).keys[(Integer) at[1]]);
+	}
+
+	/**
+	 * Returns the number of keys {@code k} with {@code lo <= k <= hi}, 0
+	 * if {@code lo > hi}.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, inclusive
+	 * @return the number of keys in the range
+	 */
+	public int countInRange(T lo, T hi) {
+		if (compare(lo, hi) > 0) {
+			return 0;
+		}
+		return rank(hi, true) - rank(lo, false);
+	}
+
+	/**
+	 * Returns the number of keys in the tree.
+	 * @return size
+	 */
+	public int size() {
+		return this.root == null ? 0 : this.root.size;
+	}
+
+	/**
+	 * Returns the number of levels of the tree, 0 for an empty tree and 1
+	 * for a single leaf.
+	 * @return height
+	 */
+	public int height() {
+		int height = 0;
+		for (Node node = this.root; node != null; node = node instanceof Inner ? ((Inner) node).children[0] : null) {
+			height += 1;
+		}
+		return height;
+	}
+
+	/**
+	 * Returns the number of leaf pages.
+	 * @return the number of leaves
+	 */
+	public int getNumLeafNodes() {
+		return this.leafCount;
+	}
+
+	/**
+	 * Given a key then returns the level of the leaf that holds it. All
+	 * the leaves are on the same level.
+	 * @param key the key
+	 * @return the level belonging, -1 if the key is not presented
+	 */
+	public int getNodeLevel(T key) {
+		return retrieve(key) ? height() - 1 : -1;
+	}
+
+	/**
+	 * Print the keys in in-order by walking the leaf chain.
+	 */
+	public void inOrder() {
+		for (Leaf leaf = this.head; leaf != null; leaf = leaf.next) {
+			for (int i = 0; i < leaf.count; ++i) {
+				System.out.print(leaf.keys[i] + " ");
+			}
+		}
+	}
+
+	/**
+	 * Returns an iterator over the keys in in-order along the leaf chain.
+	 * The tree must not be modified while the iterator is in use.
+	 * @return an in-order iterator
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new LeafSpliterator<T>(this, this.head, 0, 0, size());
+	}
+
+	/**
+	 * Returns a spliterator over the keys in in-order. It splits at the
+	 * middle rank, found in O(log n) through the subtree sizes, so the
+	 * halves are exact and each half is scanned along the leaf chain.
+	 * @return an in-order spliterator
+	 */
+	@Override
+	public Spliterator<T> spliterator() {
+		return new LeafSpliterator<T>(this, this.head, 0, 0, size());
+	}
+
+	/**
+	 * Returns a sequential stream of the keys in in-order.
+	 * @return a stream of the keys
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * Returns an iterator over the keys {@code k} with
+	 * {@code lo <= k < hi} in in-order, a {@code null} bound is unbounded.
+	 * The start is found in O(log n), then the leaf chain is scanned.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return an iterator over the range
+	 */
+	public Iterator<T> rangeIterator(T lo, T hi) {
+		return range(lo, hi);
+	}
+
+	/**
+	 * Returns a sequential stream of the keys {@code k} with
+	 * {@code lo <= k < hi} in in-order, a {@code null} bound is unbounded.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return a stream of the keys in the range
+	 */
+	public Stream<T> rangeStream(T lo, T hi) {
+		return StreamSupport.stream(range(lo, hi), false);
+	}
+
+	private LeafSpliterator<T> range(T lo, T hi) {
+		int from = lo == null ? 0 : rank(lo, false);
+		int to = Math.max(from, hi == null ? size() : rank(hi, false));
+		if (from == to) {
+			return new LeafSpliterator<T>(this, null, 0, from, to);
+		}
+		Object[] at = locate(from);
+		return new LeafSpliterator<T>(this, (Leaf) at[0], (Integer) at[1], from, to);
+	}
+
+	/**
+	 * Returns the keys {@code k} with {@code lo <= k < hi} in in-order, a
+	 * {@code null} bound is unbounded.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return the keys in the range
+	 */
+	public List<T> subSet(T lo, T hi) {
+		LeafSpliterator<T> keys = range(lo, hi);
+		List<T> result = new ArrayList<>((int) keys.estimateSize());
+		keys.forEachRemaining(result::add);
+		return result;
+	}
+
+	/**
+	 * Returns the keys less than {@code hi} in in-order.
+	 * @param hi the upper bound, exclusive
+	 * @return the keys in the range
+	 */
+	public List<T> headSet(T hi) {
+		return subSet(null, hi);
+	}
+
+	/**
+	 * Returns the keys greater than or equal to {@code lo} in in-order.
+	 * @param lo the lower bound, inclusive
+	 * @return the keys in the range
+	 */
+	public List<T> tailSet(T lo) {
+		return subSet(lo, null);
+	}
+
+	/**
+	 * Iterator and spliterator over the ranks {@code [from, to)}, the key
+	 * of rank {@code from} is {@code leaf.keys[offset]}.
+	 */
+	private static final class LeafSpliterator<T extends Comparable<T>> implements Iterator<T>, Spliterator<T> {
+		private final BPlusTree<T> tree;
+		private Leaf leaf;
+		private int offset;
+		private int from;
+		private final int to;
+
+		LeafSpliterator(BPlusTree<T> tree, Leaf leaf, int offset, int from, int to) {
+			this.tree = tree;
+			this.leaf = leaf;
+			this.offset = offset;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.from < this.to;
+		}
+
+		@Override
+		public T next() {
+			if (this.from >= this.to) {
+				throw new NoSuchElementException();
+			}
+			if (this.offset == this.leaf.count) {
+				this.leaf = this.leaf.next;
+				this.offset = 0;
+			}
+			this.from += 1;
+			return key(this.leaf.keys[this.offset++]);
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			if (this.from >= this.to) {
+				return false;
+			}
+			action.accept(next());
+			return true;
+		}
+
+		@Override
+		public void forEachRemaining(Consumer<? super T> action) {
+			Leaf current = this.leaf;
+			int at = this.offset;
+			int left = this.to - this.from;
+			while (left > 0) {
+				if (at == current.count) {
+					current = current.next;
+					at = 0;
+				}
+				int end = Math.min(current.count, at + left);
+				for (int i = at; i < end; ++i) {
+					action.accept(key(current.keys[i]));
+				}
+				left -= end - at;
+				at = end;
+			}
+			this.leaf = current;
+			this.offset = at;
+			this.from = this.to;
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			if (this.to - this.from < 2) {
+				return null;
+			}
+			int mid = (this.from + this.to) >>> 1;
+			LeafSpliterator<T> prefix = new LeafSpliterator<T>(this.tree, this.leaf, this.offset, this.from, mid);
+			Object[] at = this.tree.locate(mid);
+			this.leaf = (Leaf) at[0];
+			this.offset = (Integer) at[1];
+			this.from = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return this.to - this.from;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | SORTED | NONNULL | SIZED | SUBSIZED;
+		}
+
+		@Override
+		public Comparator<? super T> getComparator() {
+			return this.tree.comparator;
+		}
+	}
+}
@@ -1,390 +1,2520 @@
-
-/**
- * This class represent a binary search tree object which the internal structure is nodes
- * @author Chihyuan Tung
- *
- * @param <T> type parameter
- */
-public class BinarySearchTree<T extends Comparable<T>>{
-	
-	private NodeType<T> root;
-	private int currentNumLeafNodes;
-	
-	public BinarySearchTree() {
-		root = null;
-	}
-	
-	/**
-	 * Given the key and the root of the tree, returns the node that 
-	 * contains the same key in the tree if presented, otherwise, return 
-	 * null.
-	 * @param node the root of the tree
-	 * @param key the key
-	 * @return the node that contains the same key in {@code node}
-	 */
-	private NodeType<T> findNode(NodeType<T> node, T key) {
-		while (node != null) {
-			if (node.getKey().compareTo(key) > 0) {
-				node = node.getLeft();
-			} else if (node.getKey().compareTo(key) < 0) {
-				node = node.getRight();
-			} else {
-				return node;
-			}
-		}
-		return null;
-	}
-	
-	/**
-	 * Given the key, search the sibling of the given key if presented, 
-	 * otherwise, return null. Sibling is the node that share the same 
-	 * parent node.
-	 * @param key the key of the node to be searched for sibling
-	 * @return the key if its sibling node
-	 */
-	public T findSibling(T key) {
-		if (key.compareTo(this.root.getKey()) == 0) {
-			return null;
-		}
-		NodeType<T> temp = findUpperNode(this.root, key);
-		if (temp.getLeft() == null || temp.getRight() == null) {
-			return null;
-		} else if (temp.getLeft().getKey().compareTo(key) == 0) {
-			return temp.getRight().getKey();
-		} else {
-			return temp.getLeft().getKey();
-		}
-	}
-	
-	/**
-	 * Given the root of the tree and the key, search for the parent 
-	 * node of the node that contains {@code key} in the given tree. 
-	 * Returns its parent node if presented, otherwise, returns null.
-	 * @param node the root of the tree to be searched
-	 * @param key the key of the the child node
-	 * @return reference of the parent node if presented
-	 */
-	private NodeType<T> findUpperNode(NodeType<T> node, T key) {
-		while (node != null) {
-			if (node.getKey().compareTo(key) > 0) {
-				if (node.getLeft().getKey().compareTo(key) == 0) {
-					return node;
-				} else {
-					node = node.getLeft();
-				}
-			} else if (node.getKey().compareTo(key) < 0) {
-				if (node.getRight().getKey().compareTo(key) == 0) {
-					return node;
-				} else {
-					node = node.getRight();
-				}
-			} else {
-				return null;
-			}
-		}
-		return null;
-	}
-	
-	/**
-	 * Given the node and returns the predecessor of that node in 
-	 * the in-order traversal.
-	 * @param node the node whose predecessor to be searched
-	 * @return reference to the predecessor node
-	 */
-	private NodeType<T> findPredecessor(NodeType<T> node) {
-		NodeType<T> temp = node.getLeft();	
-		while (temp.getRight() != null) {
-			temp = temp.getRight();
-		}
-		return temp;
-	}
- 	
-	/**
-	 * The helper method of insert. Recursively search for the appropriate 
-	 * position for the key to be inserted, once the position is found, insert 
-	 * the key into the tree. 
-	 * @param node the root of the tree to be inserted
-	 * @param key the key to be inserted
-	 */
-	private void insertHelper(NodeType<T> node, T key) {
-		if (node.getLeft() == null && key.compareTo(node.getKey()) < 0) {
-			node.setLeft(new NodeType<T>(key));
-			return;
-		} else if (node.getRight() == null && key.compareTo(node.getKey()) > 0) {
-			node.setRight(new NodeType<T>(key));
-			return;
-		} else if (key.compareTo(node.getKey()) < 0) {
-			insertHelper(node.getLeft(), key);
-		} else if (key.compareTo(node.getKey()) > 0) {
-			insertHelper(node.getRight(), key);
-		} else {
-			System.out.println("The item already exsits in the tree.");
-		}
-	}
-	/**
-	 * Call insertHelper to insert {@code key}.
-	 * @param key the key to be inserted.
-	 */
-	public void insert(T key) {
-		if (this.root == null) {
-			this.root = new NodeType<T>(key);
-			return;
-		} 
-		
-		NodeType<T> temp = this.root;
-		insertHelper(temp, key);
-	}
-	
-	/**
-	 * Given the key and delete it from the tree, and handle all the 
-	 * possible deletion scenarios. If the root is null, print message 
-	 * then return. If the tree only contains the root and the key 
-	 * of the root equals to {@code key}, set root to {@code null}. 
-	 * If the root only have one child and {@code key} equals to the 
-	 * key of the root, make root reference to its child node. If the 
-	 * node is a leaf node, set its parent to null. If the node only has 
-	 * one child, find its parent node and set its parent node's child 
-	 * to the child of the node node to be deleted. Finally, if the node 
-	 * has two children, then find its predecessor in-order then delete
-	 *  its predecessor, then set the key of the node to its predecessor's 
-	 *  key.
-	 * @param key
-	 */
-	public void delete(T key) {
-		//if the root is empty
-		if (this.root == null) {
-			System.out.println("You cannot delete from an empty tree");
-			return;
-		//if key == the key of the root and the root has no child
-		} else if (this.root.getKey().compareTo(key) == 0 && this.root.getLeft() == null 
-				&& this.root.getRight() == null) {
-			this.root = null;
-			return;
-		//if key == the key of the root and the root only has one child
-		} else if (this.root.getKey().compareTo(key) == 0 
-				&& (this.root.getLeft() == null || this.root.getRight() == null)) {
-			if (this.root.getRight() == null) {
-				this.root = this.root.getLeft();
-			} else {
-				this.root = this.root.getRight();
-			}
-			return;
-		}
-		
-		//find the node to be deleted
-		NodeType<T> target = findNode(this.root, key); 
-		//if the key is not presented in the tree
-		if (target == null) {
-			System.out.println("The item is not present in the tree");
-			return;
-		}
-		//find the parent node
-		NodeType<T> upper = findUpperNode(this.root, key);
-		//if the node is a leaf node
-		if (target.getLeft() == null && target.getRight() == null) {
-			if (target.getKey().compareTo(upper.getKey()) > 0) {
-				upper.setRight(null);
-			} else {
-				upper.setLeft(null);
-			}
-			return;
-		//if it only has one child
-		} else if (target.getLeft() == null) {
-			if (target.getKey().compareTo(upper.getKey()) > 0) {
-				upper.setRight(target.getRight());
-			} else {
-				upper.setLeft(target.getRight());
-			}
-			return;
-		//if it only has one child
-		} else if (target.getRight() == null) {
-			if (target.getKey().compareTo(upper.getKey()) > 0) {
-				upper.setRight(target.getLeft());
-			} else {
-				upper.setLeft(target.getLeft());
-			}
-			return;
-		//if it has two children
-		} else {
-			//find its predecessor
-			NodeType<T> predecessor = findPredecessor(target);
-			//store the key of the predecessor
-			T preKey = predecessor.getKey();
-			//self call to delete the predecessor
-			delete(preKey);
-			//replace the key to be deleted to it predecessor's key
-			target.setKey(preKey);
-		}
-	}
-	
-	/**
-	 * Given the {@code item} and check if it is presented in the tree. 
-	 * If yes, return true, else return false. Utilizing the property of 
-	 * a binary search tree, if the key if greater, go right, else go left, 
-	 * until finding the key or reaching the end.
-	 * @param item the item to be searched
-	 * @return {@code true} if found, {@code false} otherwise
-	 */
-	public boolean retrieve(T item) {
-		NodeType<T> temp = this.root;
-		while (temp != null) {
-			if (temp.getKey().compareTo(item) > 0) {
-				temp = temp.getLeft();
-			} else if (temp.getKey().compareTo(item) < 0) {
-				temp = temp.getRight();
-			} else {
-				return true;
-			}
-		}
-		return false;
-	}
-	
-	/**
-	 * Helper method of inOrder. Conduct a in-order traversal to the tree 
-	 * and print the keys. Visiting the left first, then the root, then the right.
-	 * @param node the root of the node to be traversed
-	 */
-	private void inOrderHelper(NodeType<T> node) {
-		if (node == null) {
-			return;
-		}
-		
-		inOrderHelper(node.getLeft());
-		System.out.print(node.getKey() + " ");
-		inOrderHelper(node.getRight());
-	}
-	/**
-	 * Call inOrderHelper
-	 */
-	public void inOrder() {
-		NodeType<T> temp = this.root;
-		inOrderHelper(temp);
-	}
-	
-	/**
-	 * Helper method of the getSingleParent. Conduct an in-order traversal and 
-	 * print out all the node that only has one of the children.
-	 * @param node the root of the tree
-	 */
-	private void getSingleParentHelper(NodeType<T> node) {
-		if (node == null) {
-			return;
-		}
-
-		getSingleParentHelper(node.getLeft());
-		if ((node.getLeft() == null && node.getRight() != null) 
-				|| (node.getLeft() != null && node.getRight() == null)) {
-			System.out.print(node.getKey() + " ");
-		}
-		getSingleParentHelper(node.getRight());
-	}
-	/**
-	 * Call getSingleParentHelper
-	 */
-	public void getSingleParent() {
-		NodeType<T> temp = this.root; 
-		this.getSingleParentHelper(temp);
-	}
-	
-	/**
-	 * Returns {@code currentNumLeafNodes}
-	 * @return the number of leaf nodes
-	 */
-	public int getCurrentNumLeafNodes() {
-		return this.currentNumLeafNodes;
-	}
-	/**
-	 * Conduct a in-order traversal, if the node has no child, {@code numLeafNode} ++. 
-	 * @param node the root of the tree
-	 */
-	private void getNumLeafNodesHelper(NodeType<T> node) {
-		if (node == null) {
-			return;
-		}
-
-		getNumLeafNodesHelper(node.getLeft());
-		if (node.getLeft() == null && node.getRight() == null) {
-			this.currentNumLeafNodes += 1;
-		}
-		getNumLeafNodesHelper(node.getRight());
-	}
-	/**
-	 * Set {@code numLeafNodes} to 0 then start counting.
-	 */
-	public void getNumLeafNodes() {
-		NodeType<T> temp = this.root;
-		this.currentNumLeafNodes = 0;
-		this.getNumLeafNodesHelper(temp);
-	}
-	
-	/**
-	 * Given a key then returns the level which the key belonging in the tree.
-	 * @param key the key
-	 * @return the level belonging
-	 */
-	public int getNodeLevel(T key) {
-		int level = 0;
-		NodeType<T> temp = this.root;
-		while (temp != null) {
-			if (temp.getKey().compareTo(key) > 0) {
-				temp = temp.getLeft();
-				level += 1;
-			} else if (temp.getKey().compareTo(key) < 0) {
-				temp = temp.getRight();
-				level += 1;
-			} else {
-				return level;
-			}
-		}
-		return -1;
-	}
-	/**
-	 * This method try all possible paths of getting the cousins.
-	 * @param arr contains the binary string output
-	 * @return the key of possible cousin nodes
-	 */
-	private T findCousinsHelper(Integer[] arr) {
-		NodeType<T> temp = this.root;
-		for (int i = 0; i < arr.length && temp != null; ++i) {
-			if (arr[i] == 0) {
-				temp = temp.getLeft();
-			} else {
-				temp = temp.getRight();
-			}
-		}
-		if (temp != null) {
-			return temp.getKey();
-		} else {
-			return null;
-		}
-	}
-	/**
-	 * Find all the cousins of the targeting node, the algorithm details are 
-	 * going to be written in the README.md.
-	 * @param n the length of the binary string
-	 * @param arr the array to store the output
-	 * @param i starting from 0
-	 * @param self the key of the targeting node
-	 * @param sibling the key of the sibling of targeting node  
-	 */
-	public void findCousins(int n, Integer[] arr, int i, T self, T sibling) {
-		if (i == n) {
-			T cousin = findCousinsHelper(arr);
-			if (sibling == null) {
-				if (cousin != null && cousin.compareTo(self) != 0) {
-					System.out.print(cousin + " ");
-				}
-			} else {
-				if (cousin != null && cousin.compareTo(self) != 0 && cousin.compareTo(sibling) != 0) {
-					System.out.print(cousin + " ");
-				}
-			}
-			return;
-		}
-		
-		arr[i] = 0;
-		findCousins(n, arr, i+1, self, sibling);
-		arr[i] = 1;
-		findCousins(n, arr, i+1, self, sibling);
-	}
- }
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * This class represent a binary search tree object which the internal structure is nodes
+ * @author Chihyuan Tung
+ *
+ * @param <T> type parameter
+ */
+public class BinarySearchTree<T extends Comparable<T>> implements Iterable<T>{
+	
+	/**
+	 * How the tree keeps its shape while keys are inserted and deleted.
+	 * {@code PLAIN} never rebalances, so sorted input degenerates into a 
+	 * list. {@code AVL} rotates after every update so that the height of 
+	 * the tree stays O(log n). {@code PERSISTENT} is balanced like 
+	 * {@code AVL} and in addition never changes a node that a 
+	 * {@link #snapshot()} can see: an update copies the O(log n) nodes on 
+	 * its path instead. {@code SPLAY} moves every node that insert, 
+	 * retrieve or delete reaches to the root with splay rotations, so 
+	 * keys that are looked up often stay near the top and a sequence of 
+	 * operations costs O(log n) amortized each. A retrieve changes a 
+	 * {@code SPLAY} tree, so it must not be read by several threads.
+	 */
+	public enum Mode {
+		PLAIN, AVL, PERSISTENT, SPLAY
+	}
+	
+	/**
+	 * One insert, delete or retrieve of a batch, see 
+	 * {@link BinarySearchTree#applyBatch(List)}.
+	 * @param <T> type parameter
+	 */
+	public static final class BatchOperation<T> {
+		
+		/**
+		 * The kinds of operation.
+		 */
+		public enum Kind {
+			INSERT, DELETE, RETRIEVE
+		}
+		
+		private final Kind kind;
+		private final T key;
+		
+		private BatchOperation(Kind kind, T key) {
+			this.kind = kind;
+			this.key = key;
+		}
+		
+		/**
+		 * Returns an insert of {@code key}.
+		 * @param <T> type parameter
+		 * @param key the key to be inserted
+		 * @return the operation
+		 */
+		public static <T> BatchOperation<T> insert(T key) {
+			return new BatchOperation<T>(Kind.INSERT, key);
+		}
+		
+		/**
+		 * Returns a delete of {@code key}.
+		 * @param <T> type parameter
+		 * @param key the key to be deleted
+		 * @return the operation
+		 */
+		public static <T> BatchOperation<T> delete(T key) {
+			return new BatchOperation<T>(Kind.DELETE, key);
+		}
+		
+		/**
+		 * Returns a retrieve of {@code key}.
+		 * @param <T> type parameter
+		 * @param key the key to be searched
+		 * @return the operation
+		 */
+		public static <T> BatchOperation<T> retrieve(T key) {
+			return new BatchOperation<T>(Kind.RETRIEVE, key);
+		}
+		
+		/**
+		 * Returns kind
+		 * @return the kind of operation
+		 */
+		public Kind getKind() {
+			return this.kind;
+		}
+		
+		/**
+		 * Returns key
+		 * @return the key of the operation
+		 */
+		public T getKey() {
+			return this.key;
+		}
+		
+		@Override
+		public String toString() {
+			return this.kind + " " + this.key;
+		}
+	}
+	
+	/** the smallest capacity of a filter */
+	private static final int MIN_FILTER = 1024;
+	
+	private static final int NIL = NodePool.NIL;
+	
+	/** the slot of the root in {@link #pool}, {@link NodePool#NIL} if empty */
+	private int root;
+	private final Mode mode;
+	/** 
+	 * the nodes and their keys, shared with the trees split off this one 
+	 * and, through a read-only view, with its snapshots
+	 */
+	private KeyPool<T> pool;
+	/** 
+	 * In {@code PERSISTENT} mode, the nodes created since the last 
+	 * snapshot carry this version and may be changed in place, every other 
+	 * node is shared with a snapshot and is copied before it is changed.
+	 */
+	private int version;
+	/** a snapshot cannot be modified */
+	private final boolean frozen;
+	/** orders the keys, {@code null} for their natural order */
+	private final Comparator<? super T> comparator;
+	/** maps a key to its normalized key, {@code null} if not used */
+	private final ToLongFunction<? super T> normalizer;
+	/** the metrics of the tree, {@code null} unless enabled */
+	private TreeMetrics metrics;
+	/** rules out absent keys before a search, {@code null} unless enabled */
+	private CountingBloomFilter<T> filter;
+	/** the number of nodes the last search compared the key with, kept while measuring */
+	private int compared;
+	
+	public BinarySearchTree() {
+		this(Mode.PLAIN);
+	}
+	
+	/**
+	 * Constructor of the class.
+	 * @param mode the balancing mode of the tree
+	 */
+	public BinarySearchTree(Mode mode) {
+		this(mode, null, null);
+	}
+	
+	/**
+	 * Constructor of a tree ordered by {@code comparator}.
+	 * @param comparator orders the keys, {@code null} for their natural 
+	 * order
+	 */
+	public BinarySearchTree(Comparator<? super T> comparator) {
+		this(Mode.PLAIN, comparator, null);
+	}
+	
+	/**
+	 * Constructor of a tree ordered by {@code comparator}.
+	 * @param mode the balancing mode of the tree
+	 * @param comparator orders the keys, {@code null} for their natural 
+	 * order
+	 */
+	public BinarySearchTree(Mode mode, Comparator<? super T> comparator) {
+		this(mode, comparator, null);
+	}
+	
+	/**
+	 * Constructor of a tree with normalized keys. Every node caches 
+	 * {@code normalizer} applied to its key, and a search compares these 
+	 * longs, as unsigned numbers, before it compares the keys themselves, 
+	 * which it only does when they are equal. The normalizer must agree 
+	 * with the order: if the normalized key of {@code a} is less than the 
+	 * one of {@code b}, then {@code a} must be less than {@code b}. 
+	 * {@link #stringPrefix(String)} is such a normalizer for strings in 
+	 * their natural order.
+	 * @param mode the balancing mode of the tree
+	 * @param comparator orders the keys, {@code null} for their natural 
+	 * order
+	 * @param normalizer maps a key to its normalized key, {@code null} 
+	 * for none
+	 */
+	public BinarySearchTree(Mode mode, Comparator<? super T> comparator, ToLongFunction<? super T> normalizer) {
+		if (mode == null) {
+			throw new IllegalArgumentException("mode must not be null");
+		}
+		this.root = NIL;
+		this.mode = mode;
+		this.pool = new KeyPool<T>(mode == Mode.PERSISTENT, normalizer != null);
+		this.version = mode == Mode.PERSISTENT ? this.pool.newVersion() : 0;
+		this.frozen = false;
+		this.comparator = comparator;
+		this.normalizer = normalizer;
+		this.pool.register(this);
+	}
+	
+	/**
+	 * Constructor of a snapshot of {@code tree} that shares its root and 
+	 * reads its nodes through a view of its pool.
+	 * @param tree the tree to be frozen
+	 */
+	private BinarySearchTree(BinarySearchTree<T> tree) {
+		this.root = tree.root;
+		this.mode = tree.mode;
+		this.pool = tree.pool.view();
+		this.version = 0;
+		this.frozen = true;
+		this.comparator = tree.comparator;
+		this.normalizer = tree.normalizer;
+		tree.pool.register(this);
+	}
+	
+	/**
+	 * Constructor of a tree of the subtree {@code root} that was cut off 
+	 * {@code tree}, see {@link #split(Comparable)}. Both trees keep using 
+	 * the same pool.
+	 * @param tree the tree that was split
+	 * @param root the root of the new tree
+	 */
+	private BinarySearchTree(BinarySearchTree<T> tree, int root) {
+		this.root = root;
+		this.mode = tree.mode;
+		this.pool = tree.pool;
+		//the nodes it takes keep the version of tree and are copied before they change
+		this.version = this.mode == Mode.PERSISTENT ? this.pool.newVersion() : 0;
+		this.frozen = false;
+		this.comparator = tree.comparator;
+		this.normalizer = tree.normalizer;
+		this.pool.register(this);
+	}
+	
+	/**
+	 * Returns the first four characters of {@code key} packed into a 
+	 * long, 16 bits each with the first one in the highest bits and 0 for 
+	 * missing characters. Comparing two of them as unsigned numbers gives 
+	 * the same order as {@link String#compareTo} unless they are equal, 
+	 * so it can be used as the normalizer of a tree of strings.
+	 * @param key the string
+	 * @return the normalized key
+	 */
+	public static long stringPrefix(String key) {
+		long prefix = 0;
+		int length = Math.min(key.length(), 4);
+		for (int i = 0; i < length; ++i) {
+			prefix |= (long) key.charAt(i) << (48 - 16 * i);
+		}
+		return prefix;
+	}
+	
+	/**
+	 * Returns the comparator of the tree.
+	 * @return the comparator, {@code null} for the natural order
+	 */
+	public Comparator<? super T> comparator() {
+		return this.comparator;
+	}
+	
+	/**
+	 * Compares two keys with {@code comparator}, or with their natural 
+	 * order if it is {@code null}.
+	 */
+	private static <T extends Comparable<T>> int compare(Comparator<? super T> comparator, T a, T b) {
+		return comparator == null ? a.compareTo(b) : comparator.compare(a, b);
+	}
+	
+	/**
+	 * Compares two keys in the order of the tree.
+	 * @param a the first key
+	 * @param b the second key
+	 * @return negative, zero or positive as {@code a} is less than, equal 
+	 * to or greater than {@code b}
+	 */
+	private int compare(T a, T b) {
+		return compare(this.comparator, a, b);
+	}
+	
+	/**
+	 * Returns the normalized key of {@code key}, 0 if the tree has no 
+	 * normalizer.
+	 * @param key the key
+	 * @return the normalized key
+	 */
+	private long normalize(T key) {
+		return this.normalizer == null ? 0 : this.normalizer.applyAsLong(key);
+	}
+	
+	/**
+	 * Compares {@code key}, whose normalized key is {@code normalized}, 
+	 * with the key of {@code node}. The keys themselves are only compared 
+	 * if the normalized keys are equal.
+	 * @param key the key
+	 * @param normalized the normalized key of {@code key}
+	 * @param node the node
+	 * @return negative, zero or positive as {@code key} is less than, 
+	 * equal to or greater than the key of {@code node}
+	 */
+	private int compare(T key, long normalized, int node) {
+		if (this.normalizer != null) {
+			int cmp = Long.compareUnsigned(normalized, this.pool.normalized(node));
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return compare(key, this.pool.key(node));
+	}
+	
+	/**
+	 * Returns the key of {@code node}.
+	 * @param node the node
+	 * @return the key
+	 */
+	private T key(int node) {
+		return this.pool.key(node);
+	}
+	
+	/**
+	 * Returns a read-only view of the tree as it is now, in O(1). The 
+	 * view shares all its nodes with this tree. Afterwards this tree 
+	 * copies every shared node before changing it, so later inserts and 
+	 * deletes copy only their O(log n) path and never show up in the 
+	 * view. The slots of a version are reused once no snapshot refers to 
+	 * it.
+	 * @return a frozen view of the tree
+	 * @throws IllegalStateException if the tree is not in 
+	 * {@code PERSISTENT} mode
+	 */
+	public BinarySearchTree<T> snapshot() {
+		if (this.mode != Mode.PERSISTENT) {
+			throw new IllegalStateException("snapshots need Mode.PERSISTENT");
+		}
+		if (this.frozen) {
+			return this;
+		}
+		BinarySearchTree<T> snapshot = new BinarySearchTree<T>(this);
+		this.version = this.pool.newVersion();
+		return snapshot;
+	}
+	
+	/**
+	 * Returns whether the tree is a read-only snapshot.
+	 * @return {@code true} for a snapshot
+	 */
+	public boolean isFrozen() {
+		return this.frozen;
+	}
+	
+	/**
+	 * Starts recording the metrics of the tree: the calls, comparisons and 
+	 * latencies of insert, delete, retrieve and getCousins and the calls 
+	 * of the traversals. Register the result with 
+	 * {@link TreeMetrics#register(String)} to read it over JMX. A tree 
+	 * without metrics only checks a null field per operation.
+	 * @return the metrics, the same object if they are already enabled
+	 */
+	public TreeMetrics enableMetrics() {
+		if (this.metrics == null) {
+			this.metrics = new TreeMetrics(this);
+		}
+		return this.metrics;
+	}
+	
+	/**
+	 * Stops recording metrics. An MBean that was registered keeps its 
+	 * last values until it is unregistered.
+	 */
+	public void disableMetrics() {
+		this.metrics = null;
+	}
+	
+	/**
+	 * Returns the metrics of the tree.
+	 * @return the metrics, {@code null} unless enabled
+	 */
+	public TreeMetrics getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * Puts a {@link CountingBloomFilter} of the keys, hashed with 
+	 * {@link Object#hashCode()}, in front of retrieve and delete, see 
+	 * {@link #enableFilter(double, ToIntFunction)}.
+	 * @param falsePositiveRate the rate of absent keys that still search
+	 * @return the filter
+	 */
+	public CountingBloomFilter<T> enableFilter(double falsePositiveRate) {
+		return enableFilter(falsePositiveRate, Object::hashCode);
+	}
+	
+	/**
+	 * Puts a {@link CountingBloomFilter} of the keys in front of retrieve 
+	 * and delete, so that most absent keys are turned away in O(1) 
+	 * without a single comparison. Inserts add to the filter and deletes 
+	 * remove from it; the filter is rebuilt from the keys when the tree 
+	 * outgrows it or shrinks to an eighth of it and after bulk 
+	 * operations such as {@link #insertAll} or {@link #union}. Keys that 
+	 * the tree orders as equal must have the same hash, so with a 
+	 * comparator that is not consistent with {@code equals} a matching 
+	 * {@code hash} has to be given. A snapshot starts without a filter.
+	 * @param falsePositiveRate the rate of absent keys that still search, 
+	 * between 0 and 1
+	 * @param hash the hash of a key
+	 * @return the filter
+	 */
+	public CountingBloomFilter<T> enableFilter(double falsePositiveRate, ToIntFunction<? super T> hash) {
+		this.filter = new CountingBloomFilter<T>(MIN_FILTER, falsePositiveRate, hash);
+		refilter();
+		return this.filter;
+	}
+	
+	/**
+	 * Removes the filter.
+	 */
+	public void disableFilter() {
+		this.filter = null;
+	}
+	
+	/**
+	 * Returns the filter of the tree.
+	 * @return the filter, {@code null} unless enabled
+	 */
+	public CountingBloomFilter<T> getFilter() {
+		return this.filter;
+	}
+	
+	/**
+	 * Returns {@code true} if the filter rules {@code key} out.
+	 */
+	private boolean filtered(T key) {
+		CountingBloomFilter<T> filter = this.filter;
+		return filter != null && !filter.mightContain(key);
+	}
+	
+	/**
+	 * Adds a key that was inserted to the filter, doubling the filter once 
+	 * it holds more keys than it was sized for.
+	 */
+	private void filterAdd(T key) {
+		CountingBloomFilter<T> filter = this.filter;
+		if (filter != null) {
+			filter.add(key);
+			if (filter.count() > filter.capacity()) {
+				refilter();
+			}
+		}
+	}
+	
+	/**
+	 * Removes a key that was deleted from the filter, shrinking the filter 
+	 * once it is mostly empty so that it does not keep counters that hit 
+	 * the maximum.
+	 */
+	private void filterRemove(T key) {
+		CountingBloomFilter<T> filter = this.filter;
+		if (filter != null) {
+			filter.remove(key);
+			if (filter.capacity() > MIN_FILTER && filter.count() < filter.capacity() / 8) {
+				refilter();
+			}
+		}
+	}
+	
+	/**
+	 * Replaces the filter by one for twice the current keys, or 
+	 * {@link #MIN_FILTER}, that holds every key of the tree. O(n).
+	 */
+	private void refilter() {
+		CountingBloomFilter<T> filter = this.filter;
+		if (filter != null) {
+			CountingBloomFilter<T> rebuilt = new CountingBloomFilter<T>(Math.max(MIN_FILTER, 2 * size()), 
+					filter.falsePositiveRate(), filter.hash());
+			for (T key : this) {
+				rebuilt.add(key);
+			}
+			this.filter = rebuilt;
+		}
+	}
+	
+	/**
+	 * Throws if the tree is a snapshot.
+	 */
+	private void checkWritable() {
+		if (this.frozen) {
+			throw new UnsupportedOperationException("a snapshot cannot be modified");
+		}
+	}
+	
+	/**
+	 * Starts an update of the tree that creates about {@code count} 
+	 * nodes, see {@link KeyPool#begin}. The root must be complete.
+	 * @param count the number of nodes
+	 */
+	private void begin(int count) {
+		this.pool.begin(this.version, count);
+	}
+	
+	/**
+	 * Returns the root, for {@link KeyPool#collect()}.
+	 * @return the root of the tree
+	 */
+	int root() {
+		return this.root;
+	}
+	
+	/**
+	 * Returns the pool of the tree, for {@link KeyPool}.
+	 * @return the pool
+	 */
+	KeyPool<T> pool() {
+		return this.pool;
+	}
+	
+	/**
+	 * Sets the version of the tree, for {@link KeyPool#newVersion()}.
+	 * @param version the version
+	 */
+	void setVersion(int version) {
+		this.version = version;
+	}
+	
+	/**
+	 * Creates a node for {@code key} that this tree may change in place.
+	 * @param key the key of the node
+	 * @return the new node
+	 */
+	private int newNode(T key) {
+		int node = this.pool.allocate();
+		this.pool.setKey(node, key, normalize(key));
+		return node;
+	}
+	
+	/**
+	 * Returns whether inserts and deletes rebalance the tree.
+	 * @return {@code true} in {@code AVL} and {@code PERSISTENT} mode
+	 */
+	private boolean balancing() {
+		return this.mode == Mode.AVL || this.mode == Mode.PERSISTENT;
+	}
+	
+	/**
+	 * Returns mode
+	 * @return the balancing mode of the tree
+	 */
+	public Mode getMode() {
+		return this.mode;
+	}
+	
+	/**
+	 * Returns the number of bytes the tree uses for every key: the slots 
+	 * of its {@link KeyPool} with the unused capacity, a slot being the 
+	 * arrays of {@link NodePool} plus the key reference, the version in 
+	 * {@code PERSISTENT} mode and the normalized key with a normalizer, 
+	 * and the filter spread over the keys. The key 
+	 * object itself is not counted, a boxed Integer or Double adds 
+	 * another 16 bytes. The trees split off this one and its snapshots 
+	 * share the pool, each of them counts all of it.
+	 * @return bytes per key, 0 for an empty tree
+	 */
+	public double bytesPerKey() {
+		int size = size();
+		if (size == 0) {
+			return 0;
+		}
+		long bytes = this.pool.bytes(this.pool.keyBytes());
+		if (this.filter != null) {
+			bytes += ObjectLayout.instanceBytes(CountingBloomFilter.class)
+					+ ObjectLayout.arrayBytes(this.filter.counters() / 16, Long.BYTES);
+		}
+		return (double) bytes / size;
+	}
+	
+	/**
+	 * Given the key and the root of the tree, returns the node that 
+	 * contains the same key in the tree if presented, otherwise, return 
+	 * {@code NIL}.
+	 * @param node the root of the tree
+	 * @param key the key
+	 * @return the node that contains the same key in {@code node}
+	 */
+	private int findNode(int node, T key) {
+		if (filtered(key)) {
+			if (this.metrics != null) {
+				this.compared = 0;
+			}
+			return NIL;
+		}
+		long normalized = normalize(key);
+		int count = 0;
+		while (node != NIL) {
+			int cmp = compare(key, normalized, node);
+			count += 1;
+			if (cmp == 0) {
+				break;
+			}
+			node = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+		}
+		if (this.metrics != null) {
+			//readers of a snapshot share it, so only write when measuring
+			this.compared = count;
+		}
+		return node;
+	}
+	
+	/**
+	 * Given the key, search the sibling of the given key if presented, 
+	 * otherwise, return null. Sibling is the node that share the same 
+	 * parent node.
+	 * @param key the key of the node to be searched for sibling
+	 * @return the key if its sibling node
+	 */
+	public T findSibling(T key) {
+		int temp = findUpperNode(this.root, key);
+		if (temp == NIL || this.pool.left(temp) == NIL || this.pool.right(temp) == NIL) {
+			return null;
+		} else if (compare(key, key(temp)) < 0) {
+			return key(this.pool.right(temp));
+		} else {
+			return key(this.pool.left(temp));
+		}
+	}
+	
+	/**
+	 * Given the root of the tree and the key, search for the parent 
+	 * node of the node that contains {@code key} in the given tree. 
+	 * Returns its parent node if presented, otherwise, returns 
+	 * {@code NIL}.
+	 * @param node the root of the tree to be searched
+	 * @param key the key of the the child node
+	 * @return the parent node if presented
+	 */
+	private int findUpperNode(int node, T key) {
+		long normalized = normalize(key);
+		int upper = NIL;
+		while (node != NIL) {
+			int cmp = compare(key, normalized, node);
+			if (cmp == 0) {
+				return upper;
+			}
+			upper = node;
+			node = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+		}
+		return NIL;
+	}
+ 	
+	/**
+	 * Insert {@code key} into the tree. The counters of every node on the 
+	 * search path are updated on the way back up and, in {@code AVL} 
+	 * mode, the nodes are rebalanced.
+	 * @param key the key to be inserted.
+	 */
+	public void insert(T key) {
+		if (!add(key)) {
+			System.out.println("The item already exsits in the tree.");
+		}
+	}
+	
+	/**
+	 * Insert {@code key} into the tree without printing anything, see 
+	 * {@link #insert}.
+	 * @param key the key to be inserted
+	 * @return {@code true} if the key was not presented before
+	 * @throws UnsupportedOperationException if the tree is a snapshot
+	 */
+	public boolean add(T key) {
+		checkWritable();
+		TreeMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : System.nanoTime();
+		begin(1);
+		boolean added = addKey(key);
+		if (metrics != null) {
+			metrics.record(TreeMetrics.Operation.INSERT, start, this.compared);
+		}
+		return added;
+	}
+	
+	/**
+	 * Insert {@code key} into the tree. The search path is kept by the 
+	 * pool and walked back up by {@link NodePool#attach}, so the depth of 
+	 * the tree is not limited by the call stack. Every node on the way 
+	 * down is compared once.
+	 * @param key the key to be inserted
+	 * @return {@code true} if the key was not presented before
+	 */
+	private boolean addKey(T key) {
+		if (this.root == NIL) {
+			this.root = newNode(key);
+			this.compared = 0;
+			filterAdd(key);
+			return true;
+		}
+		KeyPool<T> pool = this.pool;
+		long normalized = normalize(key);
+		pool.clearPath();
+		int cmp;
+		int node = this.root;
+		while (true) {
+			pool.push(node);
+			cmp = compare(key, normalized, node);
+			if (cmp == 0) {
+				this.compared = pool.depth();
+				if (this.mode == Mode.SPLAY) {
+					splay();
+				}
+				return false;
+			}
+			int child = cmp < 0 ? pool.left(node) : pool.right(node);
+			if (child == NIL) {
+				break;
+			}
+			node = child;
+		}
+		this.compared = pool.depth();
+		int added = newNode(key);
+		if (this.mode == Mode.SPLAY) {
+			if (cmp < 0) {
+				pool.setLeft(node, added);
+			} else {
+				pool.setRight(node, added);
+			}
+			pool.push(added);
+			splay();
+		} else {
+			this.root = pool.attach(added, cmp < 0, balancing());
+		}
+		filterAdd(key);
+		return true;
+	}
+	
+	/**
+	 * Given the key and delete it from the tree. If the root is null, 
+	 * print message then return. If the node is a leaf node it is 
+	 * unlinked from its parent. If the node only has one child, its 
+	 * parent takes that child instead. Finally, if the node has two 
+	 * children, the key of the node is replaced by its in-order 
+	 * predecessor's key and the predecessor is deleted from the left 
+	 * subtree. The counters of every node on the search path are updated 
+	 * on the way back up.
+	 * @param key
+	 */
+	public void delete(T key) {
+		//if the root is empty
+		boolean empty = this.root == NIL;
+		if (!remove(key)) {
+			System.out.println(empty ? "You cannot delete from an empty tree" : "The item is not present in the tree");
+		}
+	}
+	
+	/**
+	 * Delete {@code key} from the tree without printing anything, see 
+	 * {@link #delete}.
+	 * @param key the key to be deleted
+	 * @return {@code true} if the key was presented
+	 * @throws UnsupportedOperationException if the tree is a snapshot
+	 */
+	public boolean remove(T key) {
+		checkWritable();
+		TreeMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : System.nanoTime();
+		begin(1);
+		boolean removed = removeKey(key);
+		if (metrics != null) {
+			metrics.record(TreeMetrics.Operation.DELETE, start, this.compared);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Delete {@code key} from the tree. One descent finds the node and its 
+	 * ancestors, {@link NodePool#unlink} finds the in-order predecessor of 
+	 * a node with two children, which is the node that is actually 
+	 * unlinked after its key has been moved up.
+	 * @param key the key to be deleted
+	 * @return {@code true} if the key was presented
+	 */
+	private boolean removeKey(T key) {
+		if (filtered(key)) {
+			this.compared = 0;
+			return false;
+		}
+		KeyPool<T> pool = this.pool;
+		long normalized = normalize(key);
+		pool.clearPath();
+		int cmp;
+		boolean left = false;
+		int target = this.root;
+		while (target != NIL && (cmp = compare(key, normalized, target)) != 0) {
+			pool.push(target);
+			left = cmp < 0;
+			target = left ? pool.left(target) : pool.right(target);
+		}
+		this.compared = target == NIL ? pool.depth() : pool.depth() + 1;
+		if (target == NIL) {
+			return false;
+		}
+		if (this.mode != Mode.SPLAY) {
+			this.root = pool.unlink(target, balancing());
+			//only once the key is gone, a shrinking filter is rebuilt from the tree
+			filterRemove(key);
+			return true;
+		}
+		int victim = target;
+		if (pool.left(target) != NIL && pool.right(target) != NIL) {
+			pool.push(target);
+			left = true;
+			victim = pool.left(target);
+			while (pool.right(victim) != NIL) {
+				pool.push(victim);
+				victim = pool.right(victim);
+				left = false;
+			}
+			pool.copyKey(victim, target);
+		}
+		int child = pool.left(victim) != NIL ? pool.left(victim) : pool.right(victim);
+		if (pool.depth() == 0) {
+			this.root = child;
+		} else {
+			//unlink the victim and splay its parent, the last node reached
+			int parent = pool.pathAt(pool.depth() - 1);
+			if (left) {
+				pool.setLeft(parent, child);
+			} else {
+				pool.setRight(parent, child);
+			}
+			splay();
+		}
+		pool.drop(victim);
+		filterRemove(key);
+		return true;
+	}
+	
+	/**
+	 * Moves the last node of the search path to the root with splay 
+	 * rotations, the nodes before it are its ancestors from the root 
+	 * down. A node whose parent is the root is rotated up once (zig). 
+	 * Otherwise, if the node and its parent are children on the same 
+	 * side, the grandparent is rotated first and then the parent 
+	 * (zig-zig), else the node is rotated up twice (zig-zag). Each step 
+	 * roughly halves the depth of every node on the path, which gives the 
+	 * O(log n) amortized bound. The counters of the ancestors may be out 
+	 * of date, every one of them is rotated and recomputed on the way. 
+	 * A {@code SPLAY} tree shares no nodes, so every node is changed in 
+	 * place.
+	 */
+	private void splay() {
+		KeyPool<T> pool = this.pool;
+		int at = pool.depth() - 1;
+		int node = pool.pathAt(at);
+		pool.update(node);
+		while (at > 0) {
+			int parent = pool.pathAt(at - 1);
+			boolean left = pool.left(parent) == node;
+			if (at == 1) {
+				this.root = left ? pool.rotateRight(parent) : pool.rotateLeft(parent);
+				break;
+			}
+			int grand = pool.pathAt(at - 2);
+			boolean parentLeft = pool.left(grand) == parent;
+			int sub;
+			if (left == parentLeft) {
+				sub = left ? pool.rotateRight(pool.rotateRight(grand)) : pool.rotateLeft(pool.rotateLeft(grand));
+			} else if (parentLeft) {
+				pool.setLeft(grand, pool.rotateLeft(parent));
+				sub = pool.rotateRight(grand);
+			} else {
+				pool.setRight(grand, pool.rotateRight(parent));
+				sub = pool.rotateLeft(grand);
+			}
+			at -= 2;
+			if (at == 0) {
+				this.root = sub;
+			} else {
+				pool.replaceChild(pool.pathAt(at - 1), grand, sub);
+			}
+		}
+	}
+	
+	/**
+	 * Searches {@code key} in a {@code SPLAY} tree and splays the node of 
+	 * the key or, if it is not presented, the last node reached.
+	 * @param key the key
+	 * @return {@code true} if the key is presented
+	 */
+	private boolean access(T key) {
+		if (this.root == NIL || filtered(key)) {
+			this.compared = 0;
+			return false;
+		}
+		KeyPool<T> pool = this.pool;
+		long normalized = normalize(key);
+		pool.clearPath();
+		int node = this.root;
+		int cmp;
+		do {
+			pool.push(node);
+			cmp = compare(key, normalized, node);
+			node = cmp < 0 ? pool.left(node) : pool.right(node);
+		} while (cmp != 0 && node != NIL);
+		this.compared = pool.depth();
+		splay();
+		return cmp == 0;
+	}
+	
+	/**
+	 * Replace the content of the tree by {@code keys}, which must be 
+	 * sorted in strictly ascending order. The middle key becomes the root 
+	 * and both halves are built the same way, so the tree is perfectly 
+	 * balanced and is built in O(n) without searching for any position.
+	 * @param keys the keys in ascending order
+	 * @throws IllegalArgumentException if the keys are not strictly 
+	 * ascending
+	 */
+	public void buildFromSorted(List<? extends T> keys) {
+		checkWritable();
+		Object[] sorted = keys.toArray();
+		for (int i = 1; i < sorted.length; ++i) {
+			if (compare(key(sorted, i - 1), key(sorted, i)) >= 0) {
+				throw new IllegalArgumentException("keys are not strictly ascending at index " + i);
+			}
+		}
+		rebuild(sorted, sorted.length);
+		refilter();
+	}
+	
+	/**
+	 * Insert every key of {@code keys} into the tree, duplicates are 
+	 * ignored. The batch is sorted first. A batch that is small compared 
+	 * to the tree is inserted key by key, otherwise the batch is merged 
+	 * with the in-order sequence of the tree and the tree is rebuilt from 
+	 * the merged keys in linear time.
+	 * @param keys the keys to be inserted
+	 */
+	public void insertAll(Collection<? extends T> keys) {
+		checkWritable();
+		Object[] batch = keys.toArray();
+		sort(batch);
+		int m = unique(batch, batch.length);
+		if (NodePool.insertOneByOne(size(), m)) {
+			begin(m);
+			for (int i = 0; i < m; ++i) {
+				addKey(key(batch, i));
+			}
+			return;
+		}
+		int[] order = this.pool.merge(this.root, m, (node, i) -> compare(key(node), key(batch, i)));
+		Object[] merged = new Object[order.length];
+		for (int i = 0; i < order.length; ++i) {
+			merged[i] = order[i] >= 0 ? key(order[i]) : batch[~order[i]];
+		}
+		rebuild(merged, merged.length);
+		refilter();
+	}
+	
+	/**
+	 * Applies a batch of inserts, deletes and retrieves and returns one 
+	 * result per operation, in the order of {@code operations}: whether an 
+	 * insert added its key, whether a delete removed its key and whether a 
+	 * retrieve found its key. The results are the same as those of calling 
+	 * the operations one after the other, but the batch is sorted by key 
+	 * first and the operations on one key are resolved together in 
+	 * submission order. All the keys are looked up in one walk down the 
+	 * tree that splits the sorted keys at every node and visits every 
+	 * shared node of their paths only once. The keys whose final state 
+	 * differs from the tree are then inserted and deleted together in a 
+	 * second such walk that rebalances every changed subtree once on the 
+	 * way back up, and a batch that changes many keys compared to the 
+	 * tree (m log n &gt;= n) is merged with the in-order sequence and 
+	 * rebuilt in linear time like {@link #insertAll}. Nothing is printed.
+	 * @param operations the operations in submission order
+	 * @return the result of every operation
+	 * @throws UnsupportedOperationException if the tree is a snapshot and 
+	 * the batch has an insert or a delete
+	 */
+	public boolean[] applyBatch(List<BatchOperation<T>> operations) {
+		int n = operations.size();
+		boolean[] results = new boolean[n];
+		if (n == 0) {
+			return results;
+		}
+		int[] order = new int[n];
+		Object[] batch = new Object[n];
+		long[] batchNormalized = new long[n];
+		BatchOperation.Kind[] batchKinds = new BatchOperation.Kind[n];
+		boolean writes = false;
+		for (int i = 0; i < n; ++i) {
+			BatchOperation<T> operation = operations.get(i);
+			order[i] = i;
+			batch[i] = operation.getKey();
+			batchNormalized[i] = normalize(operation.getKey());
+			batchKinds[i] = operation.getKind();
+			writes |= operation.getKind() != BatchOperation.Kind.RETRIEVE;
+		}
+		if (writes) {
+			checkWritable();
+		}
+		order = sort(order, batch, batchNormalized);
+		BatchOperation.Kind[] kinds = new BatchOperation.Kind[n];
+		Object[] keys = new Object[n];
+		long[] normalized = new long[n];
+		int[] firsts = new int[n + 1];
+		int distinct = 0;
+		for (int i = 0; i < n; ++i) {
+			kinds[i] = batchKinds[order[i]];
+			if (distinct == 0 || compare(batch, batchNormalized, order[firsts[distinct - 1]], order[i]) != 0) {
+				firsts[distinct] = i;
+				keys[distinct] = batch[order[i]];
+				normalized[distinct++] = batchNormalized[order[i]];
+			}
+		}
+		firsts[distinct] = n;
+		
+		//every key is looked up once, the keys whose last write disagrees 
+		//with the tree are then changed together
+		boolean[] present = findAll(keys, normalized, distinct);
+		Object[] changes = new Object[distinct];
+		long[] changeNormalized = new long[distinct];
+		boolean[] wanted = new boolean[distinct];
+		int changeCount = 0;
+		for (int k = 0; k < distinct; ++k) {
+			boolean here = present[k];
+			for (int i = firsts[k]; i < firsts[k + 1]; ++i) {
+				if (kinds[i] != BatchOperation.Kind.RETRIEVE) {
+					here = kinds[i] == BatchOperation.Kind.INSERT;
+				}
+			}
+			if (here != present[k]) {
+				changes[changeCount] = keys[k];
+				changeNormalized[changeCount] = normalized[k];
+				wanted[changeCount++] = here;
+			}
+		}
+		applyChanges(changes, changeNormalized, wanted, changeCount);
+		
+		for (int k = 0; k < distinct; ++k) {
+			boolean here = present[k];
+			for (int i = firsts[k]; i < firsts[k + 1]; ++i) {
+				switch (kinds[i]) {
+				case INSERT:
+					results[order[i]] = !here;
+					here = true;
+					break;
+				case DELETE:
+					results[order[i]] = here;
+					here = false;
+					break;
+				default:
+					results[order[i]] = here;
+					break;
+				}
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Sorts the operations {@code order} by their keys {@code keys[i]}, 
+	 * with the normalized keys {@code normalized[i]}, and returns them. 
+	 * The sort is stable, so the operations on one key stay in submission 
+	 * order: runs of 16 are sorted by insertion and then merged bottom up, 
+	 * skipping the merge of two runs that are already in order, as in a 
+	 * sorted batch.
+	 */
+	private int[] sort(int[] order, Object[] keys, long[] normalized) {
+		int n = order.length;
+		for (int lo = 0; lo < n; lo += 16) {
+			int hi = Math.min(n, lo + 16);
+			for (int i = lo + 1; i < hi; ++i) {
+				int operation = order[i];
+				int j = i;
+				while (j > lo && compare(keys, normalized, order[j - 1], operation) > 0) {
+					order[j] = order[j - 1];
+					j -= 1;
+				}
+				order[j] = operation;
+			}
+		}
+		int[] from = order;
+		int[] to = new int[n];
+		for (int width = 16; width < n; width *= 2) {
+			for (int lo = 0; lo < n; lo += 2 * width) {
+				int mid = Math.min(n, lo + width);
+				int hi = Math.min(n, lo + 2 * width);
+				int i = lo;
+				int j = mid;
+				int k = lo;
+				if (mid < hi && compare(keys, normalized, from[mid - 1], from[mid]) > 0) {
+					while (i < mid && j < hi) {
+						to[k++] = compare(keys, normalized, from[j], from[i]) < 0 ? from[j++] : from[i++];
+					}
+				}
+				System.arraycopy(from, i, to, k, mid - i);
+				System.arraycopy(from, j, to, k + mid - i, hi - j);
+			}
+			int[] swap = from;
+			from = to;
+			to = swap;
+		}
+		return from;
+	}
+	
+	/**
+	 * Compares {@code keys[a]} and {@code keys[b]}, whose normalized keys 
+	 * are {@code normalized[a]} and {@code normalized[b]}.
+	 */
+	private int compare(Object[] keys, long[] normalized, int a, int b) {
+		if (this.normalizer != null) {
+			int cmp = Long.compareUnsigned(normalized[a], normalized[b]);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return compare(key(keys, a), key(keys, b));
+	}
+	
+	/**
+	 * Tells for each of the sorted distinct {@code keys[0, count)}, with 
+	 * the normalized keys {@code normalized}, whether it is presented. The 
+	 * keys are walked down the tree together, one level at a time: at 
+	 * every node a binary search splits the range of keys that reached it 
+	 * into the keys of the left subtree, the key of the node and the keys 
+	 * of the right subtree, so a node on the path of many keys is read 
+	 * once and compared O(log k) times instead of k times. The nodes of 
+	 * one level do not depend on each other, so the processor overlaps 
+	 * their cache misses, which a walk of one path after the other cannot.
+	 */
+	private boolean[] findAll(Object[] keys, long[] normalized, int count) {
+		boolean[] found = new boolean[count];
+		if (count == 0 || this.root == NIL) {
+			return found;
+		}
+		KeyPool<T> pool = this.pool;
+		//the ranges of one level are disjoint and not empty
+		int[] nodes = new int[count];
+		int[] los = new int[count];
+		int[] his = new int[count];
+		int[] nextNodes = new int[count];
+		int[] nextLos = new int[count];
+		int[] nextHis = new int[count];
+		nodes[0] = this.root;
+		his[0] = count;
+		int width = 1;
+		while (width > 0) {
+			int next = 0;
+			for (int e = 0; e < width; ++e) {
+				int node = nodes[e];
+				int lo = los[e];
+				int hi = his[e];
+				int left = lo;
+				int right = hi;
+				int match = -1;
+				while (left < right) {
+					int mid = (left + right) >>> 1;
+					int c = compare(key(keys, mid), normalized[mid], node);
+					if (c < 0) {
+						left = mid + 1;
+					} else if (c > 0) {
+						right = mid;
+					} else {
+						found[mid] = true;
+						match = mid;
+						left = mid;
+						break;
+					}
+				}
+				if (lo < left && pool.left(node) != NIL) {
+					nextNodes[next] = pool.left(node);
+					nextLos[next] = lo;
+					nextHis[next++] = left;
+				}
+				int upper = match < 0 ? left : match + 1;
+				if (upper < hi && pool.right(node) != NIL) {
+					nextNodes[next] = pool.right(node);
+					nextLos[next] = upper;
+					nextHis[next++] = hi;
+				}
+			}
+			int[] swap = nodes;
+			nodes = nextNodes;
+			nextNodes = swap;
+			swap = los;
+			los = nextLos;
+			nextLos = swap;
+			swap = his;
+			his = nextHis;
+			nextHis = swap;
+			width = next;
+		}
+		return found;
+	}
+	
+	/**
+	 * Inserts each of the sorted distinct {@code keys[0, count)} that is 
+	 * {@code wanted} and deletes every other one; the keys to insert are 
+	 * absent and the keys to delete presented. A batch that is small 
+	 * compared to the tree is applied in a single walk down an 
+	 * {@code AVL} or {@code PERSISTENT} tree, see {@link #apply}, and key 
+	 * by key in the other modes; a batch that changes many keys (m log n 
+	 * &gt;= n) is merged with the in-order sequence and rebuilt in linear 
+	 * time like {@link #insertAll}.
+	 */
+	private void applyChanges(Object[] keys, long[] normalized, boolean[] wanted, int count) {
+		if (count == 0) {
+			return;
+		}
+		if (NodePool.insertOneByOne(size(), count)) {
+			if (!balancing()) {
+				begin(count);
+				for (int i = 0; i < count; ++i) {
+					if (wanted[i]) {
+						addKey(key(keys, i));
+					} else {
+						removeKey(key(keys, i));
+					}
+				}
+				return;
+			}
+			begin(count);
+			this.root = apply(this.root, keys, normalized, 0, count);
+			CountingBloomFilter<T> filter = this.filter;
+			if (filter != null) {
+				for (int i = 0; i < count; ++i) {
+					if (wanted[i]) {
+						filter.add(key(keys, i));
+					} else {
+						filter.remove(key(keys, i));
+					}
+				}
+				if (filter.count() > filter.capacity() 
+						|| filter.capacity() > MIN_FILTER && filter.count() < filter.capacity() / 8) {
+					refilter();
+				}
+			}
+			return;
+		}
+		Object[] merged = new Object[size() + count];
+		Iterator<T> it = iterator();
+		int size = 0;
+		int i = 0;
+		T next = it.hasNext() ? it.next() : null;
+		while (next != null || i < count) {
+			int cmp = next == null ? 1 : i == count ? -1 : compare(next, key(keys, i));
+			if (cmp < 0) {
+				merged[size++] = next;
+			} else if (cmp > 0) {
+				//absent, so an insert
+				merged[size++] = keys[i++];
+				continue;
+			} else {
+				//presented, so a delete
+				i += 1;
+			}
+			next = it.hasNext() ? it.next() : null;
+		}
+		rebuild(merged, size);
+		refilter();
+	}
+	
+	/**
+	 * Applies the sorted distinct changes {@code keys[lo, hi)} to the 
+	 * subtree of {@code node} and returns its new root. Like 
+	 * {@link #findAll}, a binary search splits the keys at the node into 
+	 * those of the left subtree, the key of the node and those of the 
+	 * right subtree, so the shared part of their search paths is walked 
+	 * once. On the way back up every node is joined once with its new 
+	 * children, a deleted node is replaced by {@link #join2} of them, and 
+	 * the keys that reach an empty subtree, which are all inserts, become 
+	 * a balanced subtree there. The result is an AVL tree for 
+	 * O(m log(n/m + 1)) work, and the subtrees without changes are 
+	 * neither copied nor touched.
+	 */
+	private int apply(int node, Object[] keys, long[] normalized, int lo, int hi) {
+		if (lo >= hi) {
+			return node;
+		}
+		if (node == NIL) {
+			return build(keys, lo, hi);
+		}
+		int left = lo;
+		int right = hi;
+		int match = -1;
+		while (left < right) {
+			int mid = (left + right) >>> 1;
+			int c = compare(key(keys, mid), normalized[mid], node);
+			if (c < 0) {
+				left = mid + 1;
+			} else if (c > 0) {
+				right = mid;
+			} else {
+				match = mid;
+				left = mid;
+				break;
+			}
+		}
+		KeyPool<T> pool = this.pool;
+		int upper = match < 0 ? left : match + 1;
+		int newLeft = apply(pool.left(node), keys, normalized, lo, left);
+		int newRight = apply(pool.right(node), keys, normalized, upper, hi);
+		if (match >= 0) {
+			pool.drop(node);
+			return join2(newLeft, newRight);
+		}
+		return join(newLeft, node, newRight);
+	}
+	
+	/**
+	 * Removes the keys that are greater than or equal to {@code key} from 
+	 * this tree and returns them as a new tree with the same mode, 
+	 * comparator and normalizer. The nodes are moved, not copied: the 
+	 * search path of {@code key} is cut and the pieces on either side are 
+	 * joined back up, so the cost is O(log n) in {@code AVL} and 
+	 * {@code PERSISTENT} mode. Like every join-based operation, the 
+	 * joins rotate in any mode, so the result is as balanced as the 
+	 * input; a {@code PLAIN} or {@code SPLAY} tree far taller than an AVL 
+	 * tree is rebuilt first.
+	 * @param key the smallest key of the returned tree, need not be presented
+	 * @return the tree of the keys not less than {@code key}
+	 * @throws UnsupportedOperationException if the tree is a snapshot
+	 */
+	public BinarySearchTree<T> split(T key) {
+		checkWritable();
+		begin(height());
+		this.root = balanced(this.root);
+		int[] parts = new int[2];
+		int found = split(this.root, key, normalize(key), parts);
+		this.root = parts[0];
+		BinarySearchTree<T> upper = new BinarySearchTree<T>(this, found == NIL ? parts[1] : join(NIL, found, parts[1]));
+		refilter();
+		return upper;
+	}
+	
+	/**
+	 * Appends the keys of {@code other}, which must all be greater than 
+	 * the keys of this tree, in O(log n) by linking the shorter tree in 
+	 * at the matching height of the taller one. {@code other} is left 
+	 * empty unless it is a snapshot, whose nodes are shared and copied 
+	 * before they are changed.
+	 * @param other the tree of the greater keys
+	 * @throws IllegalArgumentException if the keys overlap
+	 * @throws UnsupportedOperationException if this tree is a snapshot
+	 */
+	public void join(BinarySearchTree<T> other) {
+		checkWritable();
+		//checked before other is emptied, so a rejected join loses no keys
+		if (this.root != NIL && other.root != NIL && compare(key(last(this.root)), smallest(other)) >= 0) {
+			throw new IllegalArgumentException("the keys of other must be greater than the keys of this tree");
+		}
+		begin(0);
+		int right = take(other);
+		if (this.root == NIL || right == NIL) {
+			this.root = this.root == NIL ? right : this.root;
+			refilter();
+			return;
+		}
+		this.root = join2(balanced(this.root), balanced(right));
+		refilter();
+	}
+	
+	/**
+	 * Returns the smallest key of the non-empty tree {@code other} in the 
+	 * order of this tree, which is its first key if both trees have the 
+	 * same comparator. O(log n), or O(n) for another comparator.
+	 */
+	private T smallest(BinarySearchTree<T> other) {
+		if (Objects.equals(this.comparator, other.comparator)) {
+			return other.key(other.first(other.root));
+		}
+		T smallest = null;
+		for (T key : other) {
+			if (smallest == null || compare(key, smallest) < 0) {
+				smallest = key;
+			}
+		}
+		return smallest;
+	}
+	
+	/**
+	 * Adds every key of {@code other} to this tree. The trees are merged 
+	 * recursively: the root key of one tree splits the other, the two 
+	 * halves are merged independently, on different threads of the 
+	 * common {@link ForkJoinPool} once they are large, and the results 
+	 * are joined by the root. With {@code m} keys in the smaller tree 
+	 * and {@code n} in the larger one the work is 
+	 * O(m log(n / m + 1)), so merging a small batch costs about as much 
+	 * as inserting it and two trees of the same size merge in linear 
+	 * work. The nodes of {@code other} are moved into this tree, which 
+	 * leaves it empty unless it is a snapshot, see {@link #join}.
+	 * @param other the keys to be added
+	 * @throws UnsupportedOperationException if this tree is a snapshot
+	 */
+	public void union(BinarySearchTree<T> other) {
+		if (other == this) {
+			return;
+		}
+		checkWritable();
+		begin(other.size());
+		int b = balanced(take(other));
+		int a = balanced(this.root);
+		this.root = merge(() -> union(a, b), a, b);
+		refilter();
+	}
+	
+	/**
+	 * Keeps only the keys of this tree that {@code other} also has, with 
+	 * the same recursion and work bound as {@link #union}.
+	 * @param other the keys to be kept
+	 * @throws UnsupportedOperationException if this tree is a snapshot
+	 */
+	public void intersection(BinarySearchTree<T> other) {
+		if (other == this) {
+			return;
+		}
+		checkWritable();
+		begin(0);
+		int b = balanced(take(other));
+		int a = balanced(this.root);
+		this.root = merge(() -> intersection(a, b), a, b);
+		refilter();
+	}
+	
+	/**
+	 * Removes every key of {@code other} from this tree, with the same 
+	 * recursion and work bound as {@link #union}.
+	 * @param other the keys to be removed
+	 * @throws UnsupportedOperationException if this tree is a snapshot
+	 */
+	public void difference(BinarySearchTree<T> other) {
+		checkWritable();
+		begin(0);
+		if (other == this) {
+			int root = this.root;
+			this.root = NIL;
+			discard(root);
+			refilter();
+			return;
+		}
+		int b = balanced(take(other));
+		int a = balanced(this.root);
+		this.root = merge(() -> difference(a, b), a, b);
+		refilter();
+	}
+	
+	/**
+	 * Runs a merge of the subtrees {@code a} and {@code b} on the common 
+	 * {@link ForkJoinPool}. The tasks share the pool, so it is grown first 
+	 * for the copies a {@code PERSISTENT} merge makes, at most one per 
+	 * node, and locked while they allocate and release.
+	 * @param merge the merge
+	 * @param a the root of this tree
+	 * @param b the root of the other tree
+	 * @return the root of the merged tree
+	 */
+	private int merge(IntSupplier merge, int a, int b) {
+		this.pool.reserve(this.mode == Mode.PERSISTENT ? size(a) + size(b) : 0);
+		this.pool.setConcurrent(true);
+		try {
+			return ForkJoinPool.commonPool().invoke(ForkJoinTask.adapt(merge::getAsInt));
+		} finally {
+			this.pool.setConcurrent(false);
+		}
+	}
+	
+	/**
+	 * Returns the root of {@code other} to be merged into this tree and 
+	 * empties {@code other}, unless it is a snapshot. The nodes of a tree 
+	 * of the same pool are taken as they are. Otherwise the keys of the 
+	 * smaller tree are copied into the pool of the larger one: if that is 
+	 * this tree, into new nodes, sorted again if the comparators differ; 
+	 * if it is {@code other}, this tree moves into its pool and takes over 
+	 * its version, so the nodes of {@code other} are owned at once. Nodes 
+	 * ordered by another comparator or caching other normalized keys, 
+	 * e.g. two separate lambdas, are always copied.
+	 */
+	private int take(BinarySearchTree<T> other) {
+		checkWritable();
+		int root = other.root;
+		boolean sameOrder = Objects.equals(this.comparator, other.comparator);
+		boolean sameKeys = sameOrder && Objects.equals(this.normalizer, other.normalizer);
+		if (sameKeys && other.pool.source() == this.pool) {
+			if (!other.frozen) {
+				other.root = NIL;
+				other.refilter();
+			}
+			return root;
+		}
+		if (sameKeys && !other.frozen && (this.mode == Mode.PERSISTENT) == (other.mode == Mode.PERSISTENT) 
+				&& size() < other.size()) {
+			Object[] keys = keys(this.root);
+			int mine = this.root;
+			this.root = NIL;
+			discard(mine);
+			this.pool = other.pool;
+			this.version = other.version;
+			other.version = other.mode == Mode.PERSISTENT ? other.pool.newVersion() : 0;
+			other.root = NIL;
+			other.refilter();
+			this.pool.register(this);
+			//no collection now, the nodes of other are in no registered tree
+			this.pool.begin(this.version, 0);
+			this.root = build(keys, 0, keys.length);
+			return root;
+		}
+		Object[] keys = other.keys(root);
+		if (!other.frozen) {
+			other.root = NIL;
+			other.refilter();
+			other.discard(root);
+			this.pool.begin(this.version, 0);
+		}
+		int count = keys.length;
+		if (!sameOrder) {
+			sort(keys);
+			count = unique(keys, count);
+		}
+		return build(keys, 0, count);
+	}
+	
+	/**
+	 * Gives back every node of {@code node}, the former root of this 
+	 * tree, which is empty now. A pool that no other tree uses is just 
+	 * cleared.
+	 */
+	private void discard(int node) {
+		this.pool.begin(this.version, 0);
+		if (this.pool.exclusive(this, size(node))) {
+			this.pool.clear();
+		} else {
+			this.pool.dropAll(node);
+		}
+	}
+	
+	/**
+	 * Returns the keys of {@code node} in in-order.
+	 */
+	private Object[] keys(int node) {
+		Object[] keys = new Object[size(node)];
+		NodePool.InOrder it = this.pool.new InOrder(node);
+		for (int i = 0; i < keys.length; ++i) {
+			keys[i] = key(it.next());
+		}
+		return keys;
+	}
+	
+	/**
+	 * Replaces the nodes of the tree by a perfectly balanced tree of the 
+	 * sorted {@code keys[0, count)}. A pool that no other tree uses is 
+	 * cleared first, so the new nodes lie in in-order in the arrays.
+	 */
+	private void rebuild(Object[] keys, int count) {
+		begin(count);
+		if (this.pool.exclusive(this, size())) {
+			this.pool.clear();
+			this.pool.ensureCapacity(count);
+		} else {
+			this.pool.dropAll(this.root);
+		}
+		this.root = build(keys, 0, count);
+	}
+	
+	/**
+	 * Returns {@code node}, or a balanced copy of it if it is much taller 
+	 * than an AVL tree of its size could be, which only a {@code PLAIN} 
+	 * or {@code SPLAY} tree gets. The join-based operations recurse along 
+	 * the height.
+	 */
+	private int balanced(int node) {
+		int n = size(node);
+		if (height(node) <= 4 * (32 - Integer.numberOfLeadingZeros(n))) {
+			return node;
+		}
+		Object[] keys = keys(node);
+		this.pool.dropAll(node);
+		return build(keys, 0, n);
+	}
+	
+	private int first(int node) {
+		while (this.pool.left(node) != NIL) {
+			node = this.pool.left(node);
+		}
+		return node;
+	}
+	
+	private int last(int node) {
+		while (this.pool.right(node) != NIL) {
+			node = this.pool.right(node);
+		}
+		return node;
+	}
+	
+	/**
+	 * Returns an AVL tree of the keys of {@code left}, the key of 
+	 * {@code mid} and the keys of {@code right}, in that order. The 
+	 * shorter tree is linked in as a child of {@code mid} at the point 
+	 * of the spine of the taller tree where the heights differ by at most 
+	 * one, and the spine is rebalanced on the way back up, so the cost is 
+	 * O(|height(left) - height(right)| + 1). {@code left} and 
+	 * {@code right} must be AVL trees; the children of {@code mid} are 
+	 * ignored.
+	 */
+	private int join(int left, int mid, int right) {
+		KeyPool<T> pool = this.pool;
+		if (height(left) > height(right) + 1) {
+			int node = pool.own(left);
+			int sub = join(pool.right(node), mid, right);
+			pool.setRight(node, sub);
+			return pool.rebalance(node);
+		}
+		if (height(right) > height(left) + 1) {
+			int node = pool.own(right);
+			int sub = join(left, mid, pool.left(node));
+			pool.setLeft(node, sub);
+			return pool.rebalance(node);
+		}
+		int node = pool.own(mid);
+		pool.link(node, left, right);
+		return node;
+	}
+	
+	/**
+	 * Joins two AVL trees whose keys are in order without a middle key: 
+	 * the greatest node of {@code left} is cut off and used as the middle.
+	 */
+	private int join2(int left, int right) {
+		if (left == NIL) {
+			return right;
+		}
+		int[] mid = new int[1];
+		int rest = splitLast(left, mid);
+		return join(rest, mid[0], right);
+	}
+	
+	/**
+	 * Removes the greatest node of {@code node}, stores it in 
+	 * {@code last[0]} and returns the rest as an AVL tree.
+	 */
+	private int splitLast(int node, int[] last) {
+		if (this.pool.right(node) == NIL) {
+			last[0] = node;
+			return this.pool.left(node);
+		}
+		int rest = splitLast(this.pool.right(node), last);
+		return join(this.pool.left(node), node, rest);
+	}
+	
+	/**
+	 * Splits {@code node} into the AVL trees of the keys less than and 
+	 * greater than {@code key}, stored in {@code parts[0]} and 
+	 * {@code parts[1]}. Every node on the search path becomes the middle 
+	 * of a join with the pieces already split off below it.
+	 * @return the node of {@code key}, {@code NIL} if it is not presented
+	 */
+	private int split(int node, T key, long normalized, int[] parts) {
+		if (node == NIL) {
+			parts[0] = NIL;
+			parts[1] = NIL;
+			return NIL;
+		}
+		int cmp = compare(key, normalized, node);
+		if (cmp == 0) {
+			parts[0] = this.pool.left(node);
+			parts[1] = this.pool.right(node);
+			return node;
+		}
+		int found;
+		if (cmp < 0) {
+			found = split(this.pool.left(node), key, normalized, parts);
+			parts[1] = join(parts[1], node, this.pool.right(node));
+		} else {
+			found = split(this.pool.right(node), key, normalized, parts);
+			parts[0] = join(this.pool.left(node), node, parts[0]);
+		}
+		return found;
+	}
+	
+	/**
+	 * Returns {@code true} if the merge of {@code a} and {@code b} is worth 
+	 * running its two halves as separate tasks.
+	 */
+	private boolean fork(int a, int b) {
+		return size(a) + size(b) >= SubtreeTask.THRESHOLD;
+	}
+	
+	/**
+	 * The node of {@code b} with the key of {@code a} is given back, 
+	 * {@code a} takes its place.
+	 */
+	private int union(int a, int b) {
+		if (a == NIL || b == NIL) {
+			return a == NIL ? b : a;
+		}
+		//decided before a node is given back and its slot reused
+		boolean fork = fork(a, b);
+		int[] parts = new int[2];
+		int found = split(b, key(a), this.pool.normalized(a), parts);
+		if (found != NIL) {
+			this.pool.drop(found);
+		}
+		int lower = parts[0];
+		int upper = parts[1];
+		int aLeft = this.pool.left(a);
+		int aRight = this.pool.right(a);
+		int left;
+		int right;
+		if (fork) {
+			ForkJoinTask<Integer> task = ForkJoinTask.adapt(() -> union(aRight, upper)).fork();
+			left = union(aLeft, lower);
+			right = task.join();
+		} else {
+			left = union(aLeft, lower);
+			right = union(aRight, upper);
+		}
+		return join(left, a, right);
+	}
+	
+	/**
+	 * Every node that is not kept is given back: of two nodes with the 
+	 * same key the one of {@code b}, and every node of a subtree whose 
+	 * counterpart is empty.
+	 */
+	private int intersection(int a, int b) {
+		if (a == NIL || b == NIL) {
+			this.pool.dropAll(a == NIL ? b : a);
+			return NIL;
+		}
+		boolean fork = fork(a, b);
+		int[] parts = new int[2];
+		int found = split(b, key(a), this.pool.normalized(a), parts);
+		if (found != NIL) {
+			this.pool.drop(found);
+		}
+		int lower = parts[0];
+		int upper = parts[1];
+		int aLeft = this.pool.left(a);
+		int aRight = this.pool.right(a);
+		int left;
+		int right;
+		if (fork) {
+			ForkJoinTask<Integer> task = ForkJoinTask.adapt(() -> intersection(aRight, upper)).fork();
+			left = intersection(aLeft, lower);
+			right = task.join();
+		} else {
+			left = intersection(aLeft, lower);
+			right = intersection(aRight, upper);
+		}
+		if (found != NIL) {
+			return join(left, a, right);
+		}
+		this.pool.drop(a);
+		return join2(left, right);
+	}
+	
+	/**
+	 * Every node of {@code b} is given back, and so is every node of 
+	 * {@code a} with a key of {@code b}.
+	 */
+	private int difference(int a, int b) {
+		if (b == NIL) {
+			return a;
+		}
+		if (a == NIL) {
+			this.pool.dropAll(b);
+			return NIL;
+		}
+		boolean fork = fork(a, b);
+		int[] parts = new int[2];
+		int found = split(a, key(b), this.pool.normalized(b), parts);
+		if (found != NIL) {
+			this.pool.drop(found);
+		}
+		int lower = parts[0];
+		int upper = parts[1];
+		int bLeft = this.pool.left(b);
+		int bRight = this.pool.right(b);
+		this.pool.drop(b);
+		int left;
+		int right;
+		if (fork) {
+			ForkJoinTask<Integer> task = ForkJoinTask.adapt(() -> difference(upper, bRight)).fork();
+			left = difference(lower, bLeft);
+			right = task.join();
+		} else {
+			left = difference(lower, bLeft);
+			right = difference(upper, bRight);
+		}
+		return join2(left, right);
+	}
+	
+	/**
+	 * Writes the keys to {@code file} in in-order, in the binary format of
+	 * {@link TreeFile}: a header with the key type and the count, then the
+	 * keys. Only {@code Integer}, {@code Double} and {@code String} keys
+	 * can be saved.
+	 * @param file the file to be written
+	 * @throws IOException if the file cannot be written
+	 * @throws IllegalArgumentException if the keys are of another type
+	 */
+	public void save(Path file) throws IOException {
+		Object sample = this.root == NIL ? null : key(this.root);
+		byte type = sample == null ? TreeFile.EMPTY : sample instanceof Integer ? TreeFile.INT
+				: sample instanceof Double ? TreeFile.DOUBLE : sample instanceof String ? TreeFile.STRING : -1;
+		if (type < 0) {
+			throw new IllegalArgumentException("only Integer, Double and String keys can be saved");
+		}
+		try (TreeFile.Writer out = new TreeFile.Writer(file, type, size())) {
+			for (T key : this) {
+				if (type == TreeFile.INT) {
+					out.putInt((Integer) key);
+				} else if (type == TreeFile.DOUBLE) {
+					out.putDouble((Double) key);
+				} else {
+					out.putString((String) key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replace the content of the tree by the keys of a file written by
+	 * {@link #save}. The file is memory-mapped and, since its keys are
+	 * already sorted, the tree is built like {@link #buildFromSorted} in
+	 * O(n) without comparing any key. The keys must be of type {@code T}
+	 * and must have been saved from a tree with the same order.
+	 * @param file the file to be read
+	 * @throws IOException if the file cannot be read or is not a saved
+	 * tree
+	 */
+	public void load(Path file) throws IOException {
+		checkWritable();
+		try (TreeFile.Reader in = new TreeFile.Reader(file)) {
+			Object[] keys = new Object[in.count()];
+			in.readObjects(keys);
+			rebuild(keys, keys.length);
+			refilter();
+		}
+	}
+
+	/**
+	 * Sorts {@code keys} in the order of the tree.
+	 * @param keys the keys
+	 */
+	@SuppressWarnings("unchecked")
+	private void sort(Object[] keys) {
+		//a null comparator sorts by the natural order
+		Arrays.sort(keys, (Comparator<Object>) this.comparator);
+	}
+	
+	/**
+	 * Removes the duplicates of the sorted {@code keys[0, length)} in place.
+	 * @param keys the sorted keys
+	 * @param length the number of keys
+	 * @return the number of distinct keys now at the front of {@code keys}
+	 */
+	private int unique(Object[] keys, int length) {
+		int count = 0;
+		for (int i = 0; i < length; ++i) {
+			if (count == 0 || compare(key(keys, count - 1), key(keys, i)) != 0) {
+				keys[count++] = keys[i];
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns {@code keys[i]} as a key.
+	 */
+	@SuppressWarnings("unchecked")
+	private T key(Object[] keys, int i) {
+		return (T) keys[i];
+	}
+	
+	/**
+	 * Build a perfectly balanced subtree from the sorted keys 
+	 * {@code keys[lo, hi)}. The recursion depth is log2(n), and the nodes 
+	 * are allocated in in-order.
+	 * @param keys the sorted keys
+	 * @param lo the first key, inclusive
+	 * @param hi the last key, exclusive
+	 * @return the root of the subtree
+	 */
+	private int build(Object[] keys, int lo, int hi) {
+		if (lo >= hi) {
+			return NIL;
+		}
+		int mid = (lo + hi) >>> 1;
+		int left = build(keys, lo, mid);
+		int node = newNode(key(keys, mid));
+		int right = build(keys, mid + 1, hi);
+		this.pool.link(node, left, right);
+		return node;
+	}
+	
+	/**
+	 * Given the {@code item} and check if it is presented in the tree. 
+	 * If yes, return true, else return false. Utilizing the property of 
+	 * a binary search tree, if the key if greater, go right, else go left, 
+	 * until finding the key or reaching the end. In {@code SPLAY} mode the 
+	 * node found, or the last node reached, is splayed to the root.
+	 * @param item the item to be searched
+	 * @return {@code true} if found, {@code false} otherwise
+	 */
+	public boolean retrieve(T item) {
+		TreeMetrics metrics = this.metrics;
+		if (metrics == null) {
+			return this.mode == Mode.SPLAY ? access(item) : findNode(this.root, item) != NIL;
+		}
+		long start = System.nanoTime();
+		boolean found = this.mode == Mode.SPLAY ? access(item) : findNode(this.root, item) != NIL;
+		metrics.record(TreeMetrics.Operation.RETRIEVE, start, this.compared);
+		return found;
+	}
+	
+	/**
+	 * Returns the height of {@code node}, 0 for an empty tree.
+	 * @param node the root of the subtree
+	 * @return the height of the subtree
+	 */
+	private int height(int node) {
+		return this.pool.height(node);
+	}
+	
+	/**
+	 * Returns the number of nodes of {@code node}, 0 for an empty tree.
+	 * @param node the root of the subtree
+	 * @return the size of the subtree
+	 */
+	private int size(int node) {
+		return this.pool.subtreeSize(node);
+	}
+	
+	/**
+	 * Print the keys in in-order, visiting the left first, then the root, 
+	 * then the right. The walk is a Morris traversal: the rightmost node 
+	 * of each left subtree is temporarily threaded back to its successor, 
+	 * so no stack is needed, and every thread is removed again before the 
+	 * method returns. Nodes that a snapshot shares must not be changed, 
+	 * not even for a while, since other threads may be reading the 
+	 * snapshot, so only nodes that this tree owns are threaded and a left 
+	 * subtree that ends in a shared node is walked with the iterator. A 
+	 * snapshot itself is walked with the iterator.
+	 */
+	public void inOrder() {
+		TreeMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : System.nanoTime();
+		if (this.frozen) {
+			for (T key : this) {
+				System.out.print(key + " ");
+			}
+		} else {
+			//the version tells the walk which nodes it may thread
+			begin(0);
+			KeyPool<T> pool = this.pool;
+			pool.morris(this.root, node -> System.out.print(pool.key(node) + " "));
+		}
+		if (metrics != null) {
+			metrics.record(TreeMetrics.Operation.TRAVERSAL, start);
+		}
+	}
+	
+	/**
+	 * Returns an iterator over the keys in in-order. The iterator walks the 
+	 * tree lazily with an explicit stack of at most {@link #height()} nodes 
+	 * and allocates nothing per key. The tree must not be modified while 
+	 * the iterator is in use.
+	 * @return an in-order iterator
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new InOrderIterator<T>(this, null, null);
+	}
+	
+	/**
+	 * Returns a spliterator over the keys in in-order. It splits at subtree 
+	 * boundaries, so {@code stream().parallel()} hands whole subtrees to 
+	 * the worker threads. The tree must not be modified while the 
+	 * spliterator is in use.
+	 * @return an in-order spliterator
+	 */
+	@Override
+	public Spliterator<T> spliterator() {
+		return new TreeSpliterator<T>(this);
+	}
+	
+	/**
+	 * Returns a sequential stream of the keys in in-order.
+	 * @return a stream of the keys
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * Returns the number of keys {@code k} with {@code lo <= k < hi}, a 
+	 * {@code null} bound is unbounded.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return the number of keys in the range
+	 */
+	private int countBetween(T lo, T hi) {
+		int below = lo == null ? 0 : rank(lo, false);
+		int upTo = hi == null ? size() : rank(hi, false);
+		return Math.max(upTo - below, 0);
+	}
+	
+	/**
+	 * Returns a lazy iterator over the keys {@code k} with 
+	 * {@code lo <= k < hi} in in-order, a {@code null} bound is unbounded. 
+	 * Subtrees entirely below {@code lo} are skipped while the iterator 
+	 * descends, and it stops at the first key that is not below 
+	 * {@code hi}, so iterating k keys costs O(log n + k) in {@code AVL} 
+	 * mode. The tree must not be modified while the iterator is in use.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return an iterator over the keys in the range
+	 */
+	public Iterator<T> rangeIterator(T lo, T hi) {
+		return new InOrderIterator<T>(this, lo, hi);
+	}
+	
+	/**
+	 * Returns a lazy stream of the keys {@code k} with {@code lo <= k < hi} 
+	 * in in-order, a {@code null} bound is unbounded.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return a stream of the keys in the range
+	 */
+	public Stream<T> rangeStream(T lo, T hi) {
+		return StreamSupport.stream(Spliterators.spliterator(rangeIterator(lo, hi), countBetween(lo, hi), 
+				Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.SORTED | Spliterator.NONNULL), false);
+	}
+	
+	/**
+	 * Returns the keys {@code k} with {@code lo <= k < hi} in in-order, a 
+	 * {@code null} bound is unbounded.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, exclusive
+	 * @return the keys in the range
+	 */
+	public List<T> subSet(T lo, T hi) {
+		List<T> result = new ArrayList<>(countBetween(lo, hi));
+		Iterator<T> keys = rangeIterator(lo, hi);
+		while (keys.hasNext()) {
+			result.add(keys.next());
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the keys that are less than {@code hi} in in-order.
+	 * @param hi the upper bound, exclusive
+	 * @return the keys below {@code hi}
+	 */
+	public List<T> headSet(T hi) {
+		return subSet(null, hi);
+	}
+	
+	/**
+	 * Returns the keys that are greater than or equal to {@code lo} in 
+	 * in-order.
+	 * @param lo the lower bound, inclusive
+	 * @return the keys from {@code lo} on
+	 */
+	public List<T> tailSet(T lo) {
+		return subSet(lo, null);
+	}
+	
+	/**
+	 * Returns the keys of all the nodes that only have one child, in 
+	 * in-order. The in-order walk keeps its own stack of at most 
+	 * {@link #height()} nodes, and subtrees without any single parent, 
+	 * such as leaves, are not visited.
+	 * @return the keys of the single parents
+	 */
+	public List<T> getSingleParent() {
+		TreeMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : System.nanoTime();
+		int[] nodes = this.pool.singleParentNodes(this.root);
+		List<T> result = new ArrayList<>(nodes.length);
+		for (int node : nodes) {
+			result.add(key(node));
+		}
+		if (metrics != null) {
+			metrics.record(TreeMetrics.Operation.TRAVERSAL, start);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the number of nodes that only have one child. The count is 
+	 * kept up to date by insert and delete, so no traversal is needed.
+	 * @return the number of single parents
+	 */
+	public int getNumSingleParents() {
+		return this.pool.singleParents(this.root);
+	}
+	
+	/**
+	 * Returns the number of leaf nodes. The count is kept up to date by 
+	 * insert and delete, so no traversal is needed.
+	 * @return the number of leaf nodes
+	 */
+	public int getNumLeafNodes() {
+		return this.pool.leaves(this.root);
+	}
+	
+	/**
+	 * Folds every node of the tree bottom-up with {@code fold} on the 
+	 * common {@link ForkJoinPool}: subtrees with at least 
+	 * {@link SubtreeTask#THRESHOLD} nodes are split and their halves 
+	 * folded in parallel, smaller ones are walked on one thread. The tree 
+	 * must not be changed during the fold, a {@link #snapshot()} can be 
+	 * folded while the tree is updated.
+	 * @param <R> the result type
+	 * @param fold the aggregate
+	 * @return the value of the whole tree, {@code fold.empty()} if empty
+	 */
+	public <R> R fold(TreeFold<? super T, R> fold) {
+		return invoke(new SubtreeTask.Fold<T, R>(this.pool, this.root, 0, fold));
+	}
+	
+	/**
+	 * Counts the leaf nodes by walking the tree in parallel. 
+	 * {@link #getNumLeafNodes()} returns the same number from the counter 
+	 * of the root in O(1); this recount checks the counters against the 
+	 * links.
+	 * @return the number of leaf nodes
+	 */
+	public int parallelLeafCount() {
+		return invoke(new SubtreeTask.Leaves<T>(this.pool, this.root, 0));
+	}
+	
+	/**
+	 * Measures the height by walking the tree in parallel, see 
+	 * {@link #parallelLeafCount()}.
+	 * @return the height, 0 for an empty tree
+	 */
+	public int parallelHeight() {
+		return invoke(new SubtreeTask.Height<T>(this.pool, this.root, 0));
+	}
+	
+	/**
+	 * Returns the same keys as {@link #getSingleParent()}, collected in 
+	 * parallel. Every subtree task knows from the single parent counts 
+	 * where its keys start in the result, so the tasks fill disjoint parts 
+	 * of one array, which the result wraps as a fixed-size list.
+	 * @return the keys of the single parents in in-order
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> parallelSingleParents() {
+		Object[] out = new Object[getNumSingleParents()];
+		invoke(new SubtreeTask.SingleParents<T>(this.pool, this.root, 0, out, 0));
+		return (List<T>) (List<?>) Arrays.asList(out);
+	}
+	
+	/**
+	 * Returns the number of nodes on every level, computed in parallel. 
+	 * Entry 0 is the root level, the length is the height of the tree.
+	 * @return the width of every level
+	 */
+	public int[] parallelLevelWidths() {
+		return invoke(new SubtreeTask.Widths<T>(this.pool, this.root, 0));
+	}
+	
+	/**
+	 * Runs {@code task} on the common {@link ForkJoinPool}. The tree stays 
+	 * reachable until the task is done, so a snapshot stays registered 
+	 * with its pool and its nodes are not reused while they are walked.
+	 */
+	private <R> R invoke(SubtreeTask<T, R> task) {
+		try {
+			return ForkJoinPool.commonPool().invoke(task);
+		} finally {
+			Reference.reachabilityFence(this);
+		}
+	}
+	
+	/**
+	 * Returns the number of keys in the tree.
+	 * @return size
+	 */
+	public int size() {
+		return size(this.root);
+	}
+	
+	/**
+	 * Returns the height of the tree, the number of nodes on the longest 
+	 * path from the root, 0 for an empty tree.
+	 * @return height
+	 */
+	public int height() {
+		return height(this.root);
+	}
+	
+	/**
+	 * Returns the number of keys that are less than {@code key}, or less 
+	 * than or equal to {@code key} if {@code inclusive}. Every step to the 
+	 * right skips the left subtree and the node itself, whose sizes are 
+	 * known, so the cost is the depth of the search path.
+	 * @param key the key
+	 * @param inclusive whether to count {@code key} itself
+	 * @return the number of keys before {@code key}
+	 */
+	private int rank(T key, boolean inclusive) {
+		long normalized = normalize(key);
+		int rank = 0;
+		int temp = this.root;
+		while (temp != NIL) {
+			int cmp = compare(key, normalized, temp);
+			if (cmp < 0) {
+				temp = this.pool.left(temp);
+			} else if (cmp > 0) {
+				rank += size(this.pool.left(temp)) + 1;
+				temp = this.pool.right(temp);
+			} else {
+				return rank + size(this.pool.left(temp)) + (inclusive ? 1 : 0);
+			}
+		}
+		return rank;
+	}
+	
+	/**
+	 * Returns the number of keys in the tree that are less than 
+	 * {@code key}. {@code key} does not have to be presented. O(log n) in 
+	 * {@code AVL} mode.
+	 * @param key the key
+	 * @return the rank of the key
+	 */
+	public int rank(T key) {
+		return rank(key, false);
+	}
+	
+	/**
+	 * Returns the key with the given rank, {@code select(0)} is the 
+	 * smallest key and {@code select(size() - 1)} the largest. O(log n) 
+	 * in {@code AVL} mode.
+	 * @param index the rank of the key
+	 * @return the key with rank {@code index}
+	 * @throws IndexOutOfBoundsException if {@code index} is not in 
+	 * [0, size())
+	 */
+	public T select(int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+		}
+		int temp = this.root;
+		while (true) {
+			int leftSize = size(this.pool.left(temp));
+			if (index < leftSize) {
+				temp = this.pool.left(temp);
+			} else if (index > leftSize) {
+				index -= leftSize + 1;
+				temp = this.pool.right(temp);
+			} else {
+				return key(temp);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of keys {@code k} with {@code lo <= k <= hi}, 0 
+	 * if {@code lo > hi}. O(log n) in {@code AVL} mode.
+	 * @param lo the lower bound, inclusive
+	 * @param hi the upper bound, inclusive
+	 * @return the number of keys in the range
+	 */
+	public int countInRange(T lo, T hi) {
+		if (compare(lo, hi) > 0) {
+			return 0;
+		}
+		return rank(hi, true) - rank(lo, false);
+	}
+	
+	/**
+	 * Given a key then returns the level which the key belonging in the tree.
+	 * @param key the key
+	 * @return the level belonging
+	 */
+	public int getNodeLevel(T key) {
+		long normalized = normalize(key);
+		int level = 0;
+		int temp = this.root;
+		while (temp != NIL) {
+			int cmp = compare(key, normalized, temp);
+			if (cmp == 0) {
+				return level;
+			}
+			temp = cmp < 0 ? this.pool.left(temp) : this.pool.right(temp);
+			level += 1;
+		}
+		return -1;
+	}
+	/**
+	 * Given a key then returns the keys of its cousins, the nodes on the 
+	 * same level that have a different parent, from left to right. The 
+	 * parent and the level are found in one descent, then the levels above 
+	 * the node are walked breadth-first and the children of every node on 
+	 * the parent's level except the parent itself are collected.
+	 * @param key the key of the targeting node
+	 * @return the keys of the cousins, empty if the key is not presented
+	 */
+	public List<T> getCousins(T key) {
+		TreeMetrics metrics = this.metrics;
+		long start = metrics == null ? 0 : System.nanoTime();
+		List<T> cousins = cousins(key);
+		if (metrics != null) {
+			metrics.record(TreeMetrics.Operation.COUSINS, start, this.compared);
+		}
+		return cousins;
+	}
+	
+	/**
+	 * Collects the cousins of {@code key}, see {@link #getCousins}.
+	 */
+	private List<T> cousins(T key) {
+		List<T> cousins = new ArrayList<>();
+		long normalized = normalize(key);
+		int upper = NIL;
+		int node = this.root;
+		int level = 0;
+		while (node != NIL) {
+			int cmp = compare(key, normalized, node);
+			if (cmp == 0) {
+				break;
+			}
+			upper = node;
+			node = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+			level += 1;
+		}
+		if (this.metrics != null) {
+			this.compared = node == NIL ? level : level + 1;
+		}
+		if (node == NIL || upper == NIL) {
+			return cousins;
+		}
+		for (int cousin : this.pool.cousinNodes(this.root, upper, level)) {
+			cousins.add(key(cousin));
+		}
+		return cousins;
+	}
+	
+	/**
+	 * In-order iterator over the keys {@code k} with {@code lo <= k < hi}, 
+	 * a {@code null} bound is unbounded. {@code stack} holds the nodes 
+	 * whose key has not been returned yet and whose left subtree is done, 
+	 * the top is the next key.
+	 */
+	private static final class InOrderIterator<T extends Comparable<T>> implements Iterator<T> {
+		/** keeps a snapshot registered, so its nodes are not reused while the iterator is in use */
+		private final BinarySearchTree<T> tree;
+		private final KeyPool<T> pool;
+		private final int[] stack;
+		private int depth;
+		private final T hi;
+		
+		InOrderIterator(BinarySearchTree<T> tree, T lo, T hi) {
+			this.tree = tree;
+			this.pool = tree.pool;
+			this.stack = new int[this.pool.height(tree.root)];
+			this.depth = 0;
+			this.hi = hi;
+			//descend to lo, a node below lo is skipped together with its left subtree
+			int node = tree.root;
+			while (node != NIL) {
+				if (lo != null && compare(tree.comparator, this.pool.key(node), lo) < 0) {
+					node = this.pool.right(node);
+				} else {
+					this.stack[this.depth++] = node;
+					node = this.pool.left(node);
+				}
+			}
+		}
+		
+		private void pushLeft(int node) {
+			while (node != NIL) {
+				this.stack[this.depth++] = node;
+				node = this.pool.left(node);
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return this.depth > 0 
+					&& (this.hi == null || compare(this.tree.comparator, this.pool.key(this.stack[this.depth - 1]), this.hi) < 0);
+		}
+		
+		@Override
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			int node = this.stack[--this.depth];
+			pushLeft(this.pool.right(node));
+			return this.pool.key(node);
+		}
+	}
+	
+	/**
+	 * In-order spliterator. The remaining keys are {@code head} (its key 
+	 * only) followed by the frames of {@code stack[base, top)} from the 
+	 * top, where a frame stands for the key of the node followed by its 
+	 * whole right subtree. {@link #trySplit()} gives away everything 
+	 * except the bottom frame, which is a node and its right subtree, so 
+	 * the two halves are always separated at a subtree boundary and their 
+	 * sizes are exact.
+	 */
+	private static final class TreeSpliterator<T extends Comparable<T>> implements Spliterator<T> {
+		/** keeps a snapshot registered, so its nodes are not reused while the spliterator is in use */
+		private final BinarySearchTree<T> tree;
+		private final KeyPool<T> pool;
+		private int head;
+		private int[] stack;
+		private int base;
+		private int top;
+		private long size;
+		
+		TreeSpliterator(BinarySearchTree<T> tree) {
+			this.tree = tree;
+			this.pool = tree.pool;
+			this.head = NIL;
+			this.stack = new int[this.pool.height(tree.root) + 1];
+			this.base = 0;
+			this.top = 0;
+			this.size = this.pool.subtreeSize(tree.root);
+			pushLeft(tree.root);
+		}
+		
+		private TreeSpliterator(TreeSpliterator<T> from, int head, int[] stack, int base, int top, long size) {
+			this.tree = from.tree;
+			this.pool = from.pool;
+			this.head = head;
+			this.stack = stack;
+			this.base = base;
+			this.top = top;
+			this.size = size;
+		}
+		
+		private void pushLeft(int node) {
+			while (node != NIL) {
+				if (this.top == this.stack.length) {
+					this.stack = Arrays.copyOf(this.stack, 2 * this.stack.length + 1);
+				}
+				this.stack[this.top++] = node;
+				node = this.pool.left(node);
+			}
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			int node;
+			if (this.head != NIL) {
+				node = this.head;
+				this.head = NIL;
+			} else if (this.top > this.base) {
+				node = this.stack[--this.top];
+				pushLeft(this.pool.right(node));
+			} else {
+				return false;
+			}
+			this.size -= 1;
+			action.accept(this.pool.key(node));
+			return true;
+		}
+		
+		@Override
+		public Spliterator<T> trySplit() {
+			if (this.head == NIL && this.top - this.base == 1) {
+				//open the only frame: its key first, then its right subtree
+				int node = this.stack[this.base];
+				if (this.pool.right(node) == NIL) {
+					return null;
+				}
+				this.head = node;
+				this.top = this.base;
+				pushLeft(this.pool.right(node));
+			}
+			if (this.top == this.base || (this.head == NIL && this.top - this.base < 2)) {
+				return null;
+			}
+			int bottom = this.stack[this.base];
+			long rest = 1 + this.pool.subtreeSize(this.pool.right(bottom));
+			TreeSpliterator<T> prefix = new TreeSpliterator<T>(this, this.head, this.stack, this.base + 1, this.top, 
+					this.size - rest);
+			this.head = NIL;
+			this.stack = new int[this.pool.height(bottom) + 1];
+			this.stack[0] = bottom;
+			this.base = 0;
+			this.top = 1;
+			this.size = rest;
+			return prefix;
+		}
+		
+		@Override
+		public long estimateSize() {
+			return this.size;
+		}
+		
+		@Override
+		public int characteristics() {
+			return ORDERED | DISTINCT | SORTED | NONNULL | SIZED | SUBSIZED;
+		}
+		
+		@Override
+		public Comparator<? super T> getComparator() {
+			return this.tree.comparator;
+		}
+	}
+}
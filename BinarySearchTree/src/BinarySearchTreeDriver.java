@@ -1,326 +1,849 @@
-
-import java.util.Scanner;
-import java.io.File;
-import java.io.FileNotFoundException;
-
-public class BinarySearchTreeDriver {
-	
-	/**
-	 * In-order traversal then print out the key
-	 * @param <T> the type parameter
-	 * @param bst
-	 */
-	private static <T extends Comparable<T>> void print(BinarySearchTree<T> bst) {
-		System.out.print("In-order: ");
-		bst.inOrder();
-		System.out.print("\n");
-	}
-	/**
-	 * Parse the integer then insert them into the declared BST.
-	 * @param bst the BST
-	 * @param input the file from the command line
-	 */
-	private static void insertFromFileInt(BinarySearchTree<Integer> bst, String input) {
-		String val = "";
-		for (int i = 0; i < input.length(); ++i) {
-			if (input.charAt(i) != ' ') {
-				val += input.charAt(i);
-			} else {
-				bst.insert(Integer.parseInt(val));
-				val = "";
-			}
-		}
-	}
-	/**
-	 * Parse the double then insert them into the declared BST.
-	 * @param bst the BST
-	 * @param input the file from the command line
-	 */
-	private static void insertFromFileDouble(BinarySearchTree<Double> bst, String input) {
-		String val = "";
-		for (int i = 0; i < input.length(); ++i) {
-			if (input.charAt(i) != ' ') {
-				val += input.charAt(i);
-			} else {
-				bst.insert(Double.parseDouble(val));
-				val = "";
-			}
-		}
-	}
-	/**
-	 * Parse the string then insert them into the declared BST.
-	 * @param bst the BST
-	 * @param input the file from the command line
-	 */
-	private static void insertFromFileString(BinarySearchTree<String> bst, String input) {
-		String val = "";
-		for (int i = 0; i < input.length(); ++i) {
-			if (input.charAt(i) != ' ') {
-				val += input.charAt(i);
-			} else {
-				bst.insert(val);
-				val = "";
-			}
-		}
-	}
-
-	public static void main(String[] args) {
-		
-		String input = "";
-		
-		try {
-			File inputFile = new File(args[0]);
-			Scanner fileReader = new Scanner(inputFile);
-			while (fileReader.hasNextLine()) {
-				input = fileReader.nextLine();
-			}
-			input += " ";
-			fileReader.close();
-		} catch (ArrayIndexOutOfBoundsException aioob) {
-			System.out.println("The file is not presented");
-		} catch (FileNotFoundException fnf) {
-			System.out.println("The file provided is not found");
-		}
-		
-		Scanner kb = new Scanner(System.in);
-		String type = "", command = "";
-		Integer[] nums;
-		boolean done = false;
-
-		System.out.print("Enter list type (i - int, d - double, s - string): ");
-		type = kb.next();
-		while (!type.equalsIgnoreCase("i") && !type.equalsIgnoreCase("d") && !type.equalsIgnoreCase("s")) {
-			System.out.println("Invalid type, please try again.");
-			System.out.print("Enter list type (i - int, d - double, s - string): ");
-			type = kb.next();
-		}
-
-		if (type.equalsIgnoreCase("i")) {
-			Integer num;
-			BinarySearchTree<Integer> bst = new BinarySearchTree<>();
-			try {
-				insertFromFileInt(bst, input);
-			} catch (Exception e) {
-				System.out.println("Something wrong with the input format");
-			}
-
-			while (!command.equalsIgnoreCase("q")) {
-				if (!done) {
-					System.out.println("Commands:\n" + "(i) - Insert Item\n"
-							+ "(d) - Delete Item\n"
-							+ "(p) - Print Tree\n"
-							+ "(r) - Retrieve Item\n"
-							+ "(l) - Count Leaf Nodes\n"
-							+ "(s) - Find Single Parents\n"
-							+ "(c) - Find Cousins\n"
-							+ "(q) - Quit program\n");
-					done = true;
-				}
-
-				System.out.print("Enter a command: ");
-				command = kb.next();
-
-				try {
-					if (command.equalsIgnoreCase("i")) {
-						print(bst);
-						System.out.print("Enter a number to insert: ");
-						num = kb.nextInt();
-						bst.insert(num);
-						print(bst);
-					} else if (command.equalsIgnoreCase("d")) {
-						print(bst);
-						System.out.print("Enter a number to delete: ");
-						num = kb.nextInt();
-						bst.delete(num);
-						print(bst);
-					} else if (command.equalsIgnoreCase("p")) {
-						print(bst);
-					} else if (command.equalsIgnoreCase("r")) {
-						print(bst);
-						System.out.print("Enter a number to search: ");
-						num = kb.nextInt();
-						if (bst.retrieve(num)) {
-							System.out.println("Item is present in the tree");
-						} else {
-							System.out.println("Item is not present in the tree");
-						}
-					} else if (command.equalsIgnoreCase("l")) {
-						bst.getNumLeafNodes();
-						System.out.print("The number of leaf nodes are " 
-						+ bst.getCurrentNumLeafNodes() + "\n");
-					} else if (command.equalsIgnoreCase("s")) {
-						System.out.print("Single Parents: ");
-						bst.getSingleParent();
-						System.out.println();
-					} else if (command.equalsIgnoreCase("c")) {
-						print(bst);
-						System.out.print("Enter a number: ");
-						num = kb.nextInt();
-						nums = new Integer[bst.getNodeLevel(num)];
-						System.out.print(num + " cousins: ");
-						bst.findCousins(nums.length, nums, 0, num, bst.findSibling(num));
-						System.out.println();
-					} else if (command.equalsIgnoreCase("q")) {
-						System.exit(0);
-					} else {
-						System.out.println("Invalid command! Please try again.");
-					}
-				} catch (Exception e) {
-					System.out.println("Invalid input. Please try again.");
-					kb.nextLine();
-				}
-			}
-		} else if (type.equalsIgnoreCase("d")) {
-			Double num;
-			BinarySearchTree<Double> bst = new BinarySearchTree<>();
-			try {
-				insertFromFileDouble(bst, input);
-			} catch (Exception e) {
-				System.out.println("Something wrong with the input format");
-			}
-			
-			while (!command.equalsIgnoreCase("q")) {
-				if (!done) {
-					System.out.println("Commands:\n" + "(i) - Insert Item\n"
-							+ "(d) - Delete Item\n"
-							+ "(p) - Print Tree\n"
-							+ "(r) - Retrieve Item\n"
-							+ "(l) - Count Leaf Nodes\n"
-							+ "(s) - Find Single Parents\n"
-							+ "(c) - Find Cousins\n"
-							+ "(q) - Quit program\n");
-					done = true;
-				}
-
-				System.out.print("Enter a command: ");
-				command = kb.next();
-
-				try {
-					if (command.equalsIgnoreCase("i")) {
-						print(bst);
-						System.out.print("Enter a number to insert: ");
-						num = kb.nextDouble();
-						bst.insert(num);
-						print(bst);
-					} else if (command.equalsIgnoreCase("d")) {
-						print(bst);
-						System.out.print("Enter a number to delete: ");
-						num = kb.nextDouble();
-						bst.delete(num);
-						print(bst);
-					} else if (command.equalsIgnoreCase("p")) {
-						print(bst);
-					} else if (command.equalsIgnoreCase("r")) {
-						print(bst);
-						System.out.print("Enter a number to search: ");
-						num = kb.nextDouble();
-						if (bst.retrieve(num)) {
-							System.out.println("Item is present in the tree");
-						} else {
-							System.out.println("Item is not present in the tree");
-						}
-					} else if (command.equalsIgnoreCase("l")) {
-						bst.getNumLeafNodes();
-						System.out.print("The number of leaf nodes are " 
-						+ bst.getCurrentNumLeafNodes() + "\n");
-					} else if (command.equalsIgnoreCase("s")) {
-						System.out.print("Single Parents: ");
-						bst.getSingleParent();
-						System.out.println();
-					} else if (command.equalsIgnoreCase("c")) {
-						print(bst);
-						System.out.print("Enter a number: ");
-						num = kb.nextDouble();
-						nums = new Integer[bst.getNodeLevel(num)];
-						System.out.print(num + " cousins: ");
-						bst.findCousins(nums.length, nums, 0, num, bst.findSibling(num));
-						System.out.println();
-					} else if (command.equalsIgnoreCase("q")) {
-						System.exit(0);
-					} else {
-						System.out.println("Invalid command! Please try again.");
-					}
-				} catch (Exception e) {
-					System.out.println("Invalid input. Please try again.");
-					kb.nextLine();
-				}
-			}
-		} else if (type.equalsIgnoreCase("s")) {
-			String str;
-			BinarySearchTree<String> bst = new BinarySearchTree<>();
-			try {
-				insertFromFileString(bst, input);
-			} catch (Exception e) {
-				System.out.println("Something wrong with the input format");
-			}
-
-			while (!command.equalsIgnoreCase("q")) {
-				if (!done) {
-					System.out.println("Commands:\n" + "(i) - Insert Item\n"
-							+ "(d) - Delete Item\n"
-							+ "(p) - Print Tree\n"
-							+ "(r) - Retrieve Item\n"
-							+ "(l) - Count Leaf Nodes\n"
-							+ "(s) - Find Single Parents\n"
-							+ "(c) - Find Cousins\n"
-							+ "(q) - Quit program\n");
-					done = true;
-				}
-
-				System.out.print("Enter a command: ");
-				command = kb.next();
-
-				try {
-					if (command.equalsIgnoreCase("i")) {
-						print(bst);
-						System.out.print("Enter a number to insert: ");
-						str = kb.next();
-						bst.insert(str);
-						print(bst);
-					} else if (command.equalsIgnoreCase("d")) {
-						print(bst);
-						System.out.print("Enter a number to delete: ");
-						str = kb.next();
-						bst.delete(str);
-						print(bst);
-					} else if (command.equalsIgnoreCase("p")) {
-						print(bst);
-					} else if (command.equalsIgnoreCase("r")) {
-						print(bst);
-						System.out.print("Enter a number to search: ");
-						str = kb.next();
-						if (bst.retrieve(str)) {
-							System.out.println("Item is present in the tree");
-						} else {
-							System.out.println("Item is not present in the tree");
-						}
-					} else if (command.equalsIgnoreCase("l")) {
-						bst.getNumLeafNodes();
-						System.out.print("The number of leaf nodes are " 
-						+ bst.getCurrentNumLeafNodes() + "\n");
-					} else if (command.equalsIgnoreCase("s")) {
-						System.out.print("Single Parents: ");
-						bst.getSingleParent();
-						System.out.println();
-					} else if (command.equalsIgnoreCase("c")) {
-						print(bst);
-						System.out.print("Enter a number: ");
-						str = kb.next();
-						nums = new Integer[bst.getNodeLevel(str)];
-						System.out.print(str + " cousins: ");
-						bst.findCousins(nums.length, nums, 0, str, bst.findSibling(str));
-						System.out.println();
-					} else if (command.equalsIgnoreCase("q")) {
-						System.exit(0);
-					} else {
-						System.out.println("Invalid command! Please try again.");
-					}
-				} catch (Exception e) {
-					System.out.println("Invalid input. Please try again.");
-					kb.nextLine();
-				}
-			}
-		}
-		kb.close();
-	}
-}
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class BinarySearchTreeDriver {
+	
+	/**
+	 * Collects parsed int keys in a growing array.
+	 */
+	private static final class IntKeys implements IntConsumer {
+		int[] vals = new int[1024];
+		int count = 0;
+
+		@Override
+		public void accept(int val) {
+			if (this.count == this.vals.length) {
+				this.vals = Arrays.copyOf(this.vals, this.count * 2);
+			}
+			this.vals[this.count++] = val;
+		}
+	}
+	/**
+	 * Collects parsed double keys in a growing array.
+	 */
+	private static final class DoubleKeys implements DoubleConsumer {
+		double[] vals = new double[1024];
+		int count = 0;
+
+		@Override
+		public void accept(double val) {
+			if (this.count == this.vals.length) {
+				this.vals = Arrays.copyOf(this.vals, this.count * 2);
+			}
+			this.vals[this.count++] = val;
+		}
+	}
+	/**
+	 * Stream the integers of the input file then bulk insert them into 
+	 * the declared BST. A file written by save is loaded directly.
+	 * @param bst the BST
+	 * @param input the file from the command line, {@code null} if none
+	 * @throws IOException if the file cannot be read
+	 */
+	static void insertFromFileInt(IntBinarySearchTree bst, Path input) throws IOException {
+		if (input == null) {
+			return;
+		}
+		if (TreeFile.isTreeFile(input)) {
+			bst.load(input);
+			return;
+		}
+		IntKeys keys = new IntKeys();
+		try (KeyFileReader reader = new KeyFileReader(input)) {
+			reader.forEachInt(keys);
+		}
+		bst.insertAll(keys.vals, keys.count);
+	}
+	/**
+	 * Stream the doubles of the input file then bulk insert them into 
+	 * the declared BST. A file written by save is loaded directly.
+	 * @param bst the BST
+	 * @param input the file from the command line, {@code null} if none
+	 * @throws IOException if the file cannot be read
+	 */
+	static void insertFromFileDouble(DoubleBinarySearchTree bst, Path input) throws IOException {
+		if (input == null) {
+			return;
+		}
+		if (TreeFile.isTreeFile(input)) {
+			bst.load(input);
+			return;
+		}
+		DoubleKeys keys = new DoubleKeys();
+		try (KeyFileReader reader = new KeyFileReader(input)) {
+			reader.forEachDouble(keys);
+		}
+		bst.insertAll(keys.vals, keys.count);
+	}
+	/**
+	 * Stream the strings of the input file then bulk insert them into 
+	 * the declared BST. A file written by save is loaded directly.
+	 * @param bst the BST
+	 * @param input the file from the command line, {@code null} if none
+	 * @throws IOException if the file cannot be read
+	 */
+	static void insertFromFileString(BinarySearchTree<String> bst, Path input) throws IOException {
+		if (input == null) {
+			return;
+		}
+		if (TreeFile.isTreeFile(input)) {
+			bst.load(input);
+			return;
+		}
+		List<String> keys = new ArrayList<>();
+		try (KeyFileReader reader = new KeyFileReader(input)) {
+			reader.forEachString(keys::add);
+		}
+		bst.insertAll(keys);
+	}
+
+	/**
+	 * Returns the file next to the input that keeps the tree of the 
+	 * given type across runs, e.g. int-input.txt.i.wal for the log.
+	 * @param input the file from the command line, {@code null} if none
+	 * @param type the list type
+	 * @param suffix .bst for the snapshot, .wal for the log
+	 * @return the file
+	 */
+	private static Path stateFile(Path input, String type, String suffix) {
+		Path base = input == null ? Paths.get("bst") : input;
+		return base.resolveSibling(base.getFileName() + "." + type.toLowerCase() + suffix);
+	}
+	/**
+	 * Returns whether {@code input} was modified after {@code state}.
+	 * @param input the file from the command line, {@code null} if none
+	 * @param state the snapshot or the log
+	 * @return {@code false} if either time cannot be read
+	 */
+	private static boolean newer(Path input, Path state) {
+		try {
+			return input != null && Files.getLastModifiedTime(input).compareTo(Files.getLastModifiedTime(state)) > 0;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+	/**
+	 * Opens the operation log and makes sure it is committed when the 
+	 * program ends.
+	 * @param wal the log file
+	 * @param keyType the type of the keys
+	 * @return the log, {@code null} if it cannot be opened
+	 */
+	private static OperationLog openLog(Path wal, Class<?> keyType) {
+		try {
+			OperationLog log = new OperationLog(wal, keyType);
+			Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+				try {
+					log.close();
+				} catch (IOException e) {
+					System.err.println("The log cannot be written: " + e.getMessage());
+				}
+			}));
+			return log;
+		} catch (IOException e) {
+			System.err.println("The log cannot be opened, changes will not be saved: " + e.getMessage());
+			return null;
+		}
+	}
+	/**
+	 * Appends one operation to the log, e.g. 
+	 * {@code log -> log.append(OperationLog.INSERT, key)}.
+	 */
+	private interface Record {
+		void appendTo(OperationLog log) throws IOException;
+	}
+	/**
+	 * Append an insert or delete that changed the tree to the log.
+	 * @param log the log, {@code null} if there is none
+	 * @param record appends the operation and its key
+	 */
+	private static void record(OperationLog log, Record record) {
+		try {
+			if (log != null) {
+				record.appendTo(log);
+			}
+		} catch (IOException e) {
+			System.err.println("The log cannot be written: " + e.getMessage());
+		}
+	}
+	/**
+	 * Save the tree as the new snapshot and empty the log, if 
+	 * {@code force} or once the log has outgrown the tree.
+	 * @param log the log, {@code null} if there is none
+	 * @param size the number of keys in the tree
+	 * @param snapshot the snapshot file
+	 * @param saver writes the tree
+	 * @param force compact even a short log
+	 */
+	private static void compact(OperationLog log, int size, Path snapshot, OperationLog.Saver saver, boolean force) {
+		try {
+			if (log != null && (log.shouldCompact(size) || (force && log.records() > 0))) {
+				log.compact(snapshot, saver);
+			}
+		} catch (IOException e) {
+			System.err.println("The tree cannot be saved: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Reads the whitespace separated tokens of the commands, typed by the 
+	 * user or streamed from a script, through one large buffer.
+	 */
+	private static final class Tokens {
+		private final Reader in;
+		private final char[] buffer = new char[1 << 16];
+		private final StringBuilder token = new StringBuilder();
+		private int position = 0;
+		private int limit = 0;
+		/** the character after the last token, -1 at the end */
+		private int last = '\n';
+
+		Tokens(Reader in) {
+			this.in = in;
+		}
+
+		private int read() throws IOException {
+			if (this.position == this.limit) {
+				this.limit = Math.max(0, this.in.read(this.buffer, 0, this.buffer.length));
+				this.position = 0;
+				if (this.limit == 0) {
+					return -1;
+				}
+			}
+			return this.buffer[this.position++];
+		}
+
+		/**
+		 * Returns the next token.
+		 * @return the token, {@code null} at the end of the input
+		 * @throws IOException if the input cannot be read
+		 */
+		String next() throws IOException {
+			int c = read();
+			while (c >= 0 && Character.isWhitespace(c)) {
+				c = read();
+			}
+			if (c < 0) {
+				this.last = -1;
+				return null;
+			}
+			this.token.setLength(0);
+			while (c >= 0 && !Character.isWhitespace(c)) {
+				this.token.append((char) c);
+				c = read();
+			}
+			this.last = c;
+			return this.token.toString();
+		}
+
+		/**
+		 * Skips the rest of the line of the last token.
+		 * @throws IOException if the input cannot be read
+		 */
+		void skipLine() throws IOException {
+			int c = this.last;
+			while (c >= 0 && c != '\n') {
+				c = read();
+			}
+			this.last = '\n';
+		}
+	}
+
+	/**
+	 * The tree of one list type together with its snapshot and log, so 
+	 * that the command loop is written once for every key type. The keys 
+	 * come in as the tokens that were read and are parsed here, a token 
+	 * that is not a key throws {@link NumberFormatException}.
+	 */
+	private abstract static class Session {
+		/** the snapshot and the log, {@code null} unless -persist was given */
+		final Path snapshot;
+		final Path wal;
+		OperationLog log;
+
+		Session(Path input, String type, boolean persist) {
+			this.snapshot = persist ? stateFile(input, type, ".bst") : null;
+			this.wal = persist ? stateFile(input, type, ".wal") : null;
+		}
+
+		/**
+		 * Load the input. With -persist the last snapshot replaces the 
+		 * input, the log is replayed on top and opened for the changes to 
+		 * come; if a step fails the log is neither opened nor compacted, 
+		 * so the files are left as they were for the user to look at.
+		 * @param input the file from the command line, {@code null} if none
+		 * @return {@code false} if the saved tree cannot be restored
+		 */
+		boolean open(Path input) {
+			if (this.wal == null) {
+				try {
+					load(input);
+				} catch (IOException | RuntimeException e) {
+					System.out.println("Something wrong with the input format");
+				}
+				return true;
+			}
+			//the last snapshot replaces the input, then the log is replayed on top
+			boolean saved = Files.exists(this.snapshot);
+			Path source = saved ? this.snapshot : input;
+			if (saved && newer(input, this.snapshot)) {
+				return stale(input, this.snapshot);
+			}
+			try {
+				load(source);
+			} catch (IOException | RuntimeException e) {
+				System.err.println("Something wrong with the input format of " + source + ": " + e.getMessage());
+				return false;
+			}
+			long replayed;
+			try {
+				replayed = replay();
+			} catch (IOException | RuntimeException e) {
+				System.err.println("The log " + this.wal + " cannot be replayed: " + e.getMessage());
+				return false;
+			}
+			if (!saved && replayed > 0 && newer(input, this.wal)) {
+				return stale(input, this.wal);
+			}
+			this.log = openLog(this.wal, keyType());
+			return true;
+		}
+
+		/**
+		 * Report that {@code input} changed after {@code state} was 
+		 * written, so the saved tree is not the tree of the input any more.
+		 * @return {@code false}
+		 */
+		private boolean stale(Path input, Path state) {
+			System.err.println(input + " changed after " + state + " was written. Remove " + this.snapshot 
+					+ " and " + this.wal + " to start again from " + input + ".");
+			return false;
+		}
+
+		/**
+		 * Save the tree as the new snapshot and empty the log, if 
+		 * {@code force} or once the log has outgrown the tree.
+		 * @param force compact even a short log
+		 */
+		void compact(boolean force) {
+			BinarySearchTreeDriver.compact(this.log, size(), this.snapshot, this::save, force);
+		}
+
+		abstract Class<?> keyType();
+
+		abstract void load(Path file) throws IOException;
+
+		/**
+		 * Replay the log on top of the loaded tree.
+		 * @return the number of records replayed
+		 */
+		abstract long replay() throws IOException;
+
+		abstract void save(Path file) throws IOException;
+
+		abstract int size();
+
+		abstract int leaves();
+
+		abstract boolean retrieve(String key);
+
+		/**
+		 * Insert the key and log it.
+		 * @param key the token of the key
+		 * @return {@code false} if the key was already presented
+		 */
+		abstract boolean insert(String key);
+
+		/**
+		 * Delete the key and log it.
+		 * @param key the token of the key
+		 * @return {@code false} if the key was not presented
+		 */
+		abstract boolean delete(String key);
+
+		/** writes the keys in in-order, each followed by a space */
+		abstract void print(Writer out) throws IOException;
+
+		/** writes the single parents, each followed by a space */
+		abstract void singleParents(Writer out) throws IOException;
+
+		/** writes the key, " cousins: " and its cousins, each followed by a space */
+		abstract void cousins(String key, Writer out) throws IOException;
+	}
+
+	private static final class IntSession extends Session {
+		private final IntBinarySearchTree bst;
+
+		IntSession(Path input, boolean persist, BinarySearchTree.Mode mode) {
+			super(input, "i", persist);
+			this.bst = new IntBinarySearchTree(mode);
+		}
+
+		@Override
+		Class<?> keyType() {
+			return int.class;
+		}
+
+		@Override
+		void load(Path file) throws IOException {
+			insertFromFileInt(this.bst, file);
+		}
+
+		@Override
+		long replay() throws IOException {
+			return OperationLog.replayInts(this.wal, this.bst::add, this.bst::remove);
+		}
+
+		@Override
+		void save(Path file) throws IOException {
+			this.bst.save(file);
+		}
+
+		@Override
+		int size() {
+			return this.bst.size();
+		}
+
+		@Override
+		int leaves() {
+			return this.bst.getNumLeafNodes();
+		}
+
+		@Override
+		boolean retrieve(String key) {
+			return this.bst.retrieve(Integer.parseInt(key));
+		}
+
+		@Override
+		boolean insert(String key) {
+			int num = Integer.parseInt(key);
+			if (!this.bst.add(num)) {
+				return false;
+			}
+			record(this.log, log -> log.append(OperationLog.INSERT, num));
+			compact(false);
+			return true;
+		}
+
+		@Override
+		boolean delete(String key) {
+			int num = Integer.parseInt(key);
+			if (!this.bst.remove(num)) {
+				return false;
+			}
+			record(this.log, log -> log.append(OperationLog.DELETE, num));
+			compact(false);
+			return true;
+		}
+
+		@Override
+		void print(Writer out) throws IOException {
+			PrimitiveIterator.OfInt keys = this.bst.iterator();
+			while (keys.hasNext()) {
+				out.write(Integer.toString(keys.nextInt()));
+				out.write(' ');
+			}
+		}
+
+		@Override
+		void singleParents(Writer out) throws IOException {
+			for (int parent : this.bst.getSingleParent()) {
+				out.write(Integer.toString(parent));
+				out.write(' ');
+			}
+		}
+
+		@Override
+		void cousins(String key, Writer out) throws IOException {
+			int num = Integer.parseInt(key);
+			int[] cousins = this.bst.getCousins(num);
+			out.write(num + " cousins: ");
+			for (int cousin : cousins) {
+				out.write(Integer.toString(cousin));
+				out.write(' ');
+			}
+		}
+	}
+
+	private static final class DoubleSession extends Session {
+		private final DoubleBinarySearchTree bst;
+
+		DoubleSession(Path input, boolean persist, BinarySearchTree.Mode mode) {
+			super(input, "d", persist);
+			this.bst = new DoubleBinarySearchTree(mode);
+		}
+
+		@Override
+		Class<?> keyType() {
+			return double.class;
+		}
+
+		@Override
+		void load(Path file) throws IOException {
+			insertFromFileDouble(this.bst, file);
+		}
+
+		@Override
+		long replay() throws IOException {
+			return OperationLog.replayDoubles(this.wal, this.bst::add, this.bst::remove);
+		}
+
+		@Override
+		void save(Path file) throws IOException {
+			this.bst.save(file);
+		}
+
+		@Override
+		int size() {
+			return this.bst.size();
+		}
+
+		@Override
+		int leaves() {
+			return this.bst.getNumLeafNodes();
+		}
+
+		@Override
+		boolean retrieve(String key) {
+			return this.bst.retrieve(Double.parseDouble(key));
+		}
+
+		@Override
+		boolean insert(String key) {
+			double num = Double.parseDouble(key);
+			if (!this.bst.add(num)) {
+				return false;
+			}
+			record(this.log, log -> log.append(OperationLog.INSERT, num));
+			compact(false);
+			return true;
+		}
+
+		@Override
+		boolean delete(String key) {
+			double num = Double.parseDouble(key);
+			if (!this.bst.remove(num)) {
+				return false;
+			}
+			record(this.log, log -> log.append(OperationLog.DELETE, num));
+			compact(false);
+			return true;
+		}
+
+		@Override
+		void print(Writer out) throws IOException {
+			PrimitiveIterator.OfDouble keys = this.bst.iterator();
+			while (keys.hasNext()) {
+				out.write(Double.toString(keys.nextDouble()));
+				out.write(' ');
+			}
+		}
+
+		@Override
+		void singleParents(Writer out) throws IOException {
+			for (double parent : this.bst.getSingleParent()) {
+				out.write(Double.toString(parent));
+				out.write(' ');
+			}
+		}
+
+		@Override
+		void cousins(String key, Writer out) throws IOException {
+			double num = Double.parseDouble(key);
+			double[] cousins = this.bst.getCousins(num);
+			out.write(num + " cousins: ");
+			for (double cousin : cousins) {
+				out.write(Double.toString(cousin));
+				out.write(' ');
+			}
+		}
+	}
+
+	private static final class StringSession extends Session {
+		private final BinarySearchTree<String> bst;
+
+		StringSession(Path input, boolean persist, BinarySearchTree.Mode mode) {
+			super(input, "s", persist);
+			this.bst = new BinarySearchTree<>(mode, null, BinarySearchTree::stringPrefix);
+		}
+
+		@Override
+		Class<?> keyType() {
+			return String.class;
+		}
+
+		@Override
+		void load(Path file) throws IOException {
+			insertFromFileString(this.bst, file);
+		}
+
+		@Override
+		long replay() throws IOException {
+			return OperationLog.replayStrings(this.wal, this.bst::add, this.bst::remove);
+		}
+
+		@Override
+		void save(Path file) throws IOException {
+			this.bst.save(file);
+		}
+
+		@Override
+		int size() {
+			return this.bst.size();
+		}
+
+		@Override
+		int leaves() {
+			return this.bst.getNumLeafNodes();
+		}
+
+		@Override
+		boolean retrieve(String key) {
+			return this.bst.retrieve(key);
+		}
+
+		@Override
+		boolean insert(String key) {
+			if (!this.bst.add(key)) {
+				return false;
+			}
+			record(this.log, log -> log.append(OperationLog.INSERT, key));
+			compact(false);
+			return true;
+		}
+
+		@Override
+		boolean delete(String key) {
+			if (!this.bst.remove(key)) {
+				return false;
+			}
+			record(this.log, log -> log.append(OperationLog.DELETE, key));
+			compact(false);
+			return true;
+		}
+
+		@Override
+		void print(Writer out) throws IOException {
+			for (String key : this.bst) {
+				out.write(key);
+				out.write(' ');
+			}
+		}
+
+		@Override
+		void singleParents(Writer out) throws IOException {
+			for (String parent : this.bst.getSingleParent()) {
+				out.write(parent);
+				out.write(' ');
+			}
+		}
+
+		@Override
+		void cousins(String key, Writer out) throws IOException {
+			List<String> cousins = this.bst.getCousins(key);
+			out.write(key + " cousins: ");
+			for (String cousin : cousins) {
+				out.write(cousin);
+				out.write(' ');
+			}
+		}
+	}
+
+	/**
+	 * Read the next token, showing {@code prompt} first if there is one.
+	 */
+	private static String next(Tokens kb, Writer out, String prompt) throws IOException {
+		if (prompt != null) {
+			out.write(prompt);
+			out.flush();
+		}
+		return kb.next();
+	}
+	/**
+	 * In-order traversal then print out the key, only when interactive.
+	 */
+	private static void print(Session session, Writer out, boolean interactive) throws IOException {
+		if (interactive) {
+			out.write("In-order: ");
+			session.print(out);
+			out.write('\n');
+		}
+	}
+	/**
+	 * Run the commands until q or the end of the input. Interactive runs 
+	 * show the menu, the prompts and the tree around every insert, 
+	 * delete, retrieve and cousin search; a script only gets the results, 
+	 * one line per command that has one.
+	 * @param session the tree
+	 * @param kb the commands
+	 * @param out the results
+	 * @param interactive whether a user is typing the commands
+	 * @throws IOException if the commands cannot be read or the results 
+	 * written
+	 */
+	private static void run(Session session, Tokens kb, Writer out, boolean interactive) throws IOException {
+		if (interactive) {
+			out.write("Commands:\n" + "(i) - Insert Item\n"
+					+ "(d) - Delete Item\n"
+					+ "(p) - Print Tree\n"
+					+ "(r) - Retrieve Item\n"
+					+ "(l) - Count Leaf Nodes\n"
+					+ "(s) - Find Single Parents\n"
+					+ "(c) - Find Cousins\n"
+					+ "(q) - Quit program\n\n");
+		}
+		String command;
+		String key;
+		while ((command = next(kb, out, interactive ? "Enter a command: " : null)) != null 
+				&& !command.equalsIgnoreCase("q")) {
+			try {
+				if (command.equalsIgnoreCase("i")) {
+					print(session, out, interactive);
+					if ((key = next(kb, out, interactive ? "Enter a number to insert: " : null)) == null) {
+						break;
+					}
+					if (!session.insert(key)) {
+						out.write("The item already exsits in the tree.\n");
+					}
+					print(session, out, interactive);
+				} else if (command.equalsIgnoreCase("d")) {
+					print(session, out, interactive);
+					if ((key = next(kb, out, interactive ? "Enter a number to delete: " : null)) == null) {
+						break;
+					}
+					boolean empty = session.size() == 0;
+					if (!session.delete(key)) {
+						out.write(empty ? "You cannot delete from an empty tree\n" : "The item is not present in the tree\n");
+					}
+					print(session, out, interactive);
+				} else if (command.equalsIgnoreCase("p")) {
+					out.write("In-order: ");
+					session.print(out);
+					out.write('\n');
+				} else if (command.equalsIgnoreCase("r")) {
+					print(session, out, interactive);
+					if ((key = next(kb, out, interactive ? "Enter a number to search: " : null)) == null) {
+						break;
+					}
+					if (session.retrieve(key)) {
+						out.write("Item is present in the tree\n");
+					} else {
+						out.write("Item is not present in the tree\n");
+					}
+				} else if (command.equalsIgnoreCase("l")) {
+					out.write("The number of leaf nodes are " + session.leaves() + "\n");
+				} else if (command.equalsIgnoreCase("s")) {
+					out.write("Single Parents: ");
+					session.singleParents(out);
+					out.write('\n');
+				} else if (command.equalsIgnoreCase("c")) {
+					print(session, out, interactive);
+					if ((key = next(kb, out, interactive ? "Enter a number: " : null)) == null) {
+						break;
+					}
+					session.cousins(key, out);
+					out.write('\n');
+				} else {
+					out.write("Invalid command! Please try again.\n");
+				}
+			} catch (RuntimeException e) {
+				out.write("Invalid input. Please try again.\n");
+				//the bad key is already read, a script goes on with the next token
+				if (interactive) {
+					kb.skipLine();
+				}
+			}
+		}
+		out.flush();
+		session.compact(true);
+	}
+
+	/**
+	 * Run the driver on the file of keys given as the first argument. 
+	 * With {@code -batch script} the list type and the commands are read 
+	 * from the script instead of the keyboard, {@code -batch -} or a 
+	 * trailing {@code -batch} reads them from the standard input, e.g. 
+	 * {@code java BinarySearchTreeDriver int-input.txt -batch - < commands.txt}.
+	 * With {@code -persist} the tree is kept across runs in a snapshot and 
+	 * an operation log next to the input file. The trees are AVL balanced, 
+	 * {@code -mode plain} builds the unbalanced trees instead.
+	 * @param args the input file and the options
+	 */
+	public static void main(String[] args) {
+		
+		Path input = null;
+		String file = null;
+		String script = null;
+		boolean persist = false;
+		BinarySearchTree.Mode mode = BinarySearchTree.Mode.AVL;
+		for (int i = 0; i < args.length; ++i) {
+			if (args[i].equals("-batch")) {
+				script = i + 1 < args.length ? args[++i] : "-";
+			} else if (args[i].equals("-persist")) {
+				persist = true;
+			} else if (args[i].equals("-mode")) {
+				String name = i + 1 < args.length ? args[++i] : "";
+				if (name.equalsIgnoreCase("plain")) {
+					mode = BinarySearchTree.Mode.PLAIN;
+				} else if (!name.equalsIgnoreCase("avl")) {
+					System.out.println("Invalid mode, please use plain or avl.");
+					System.exit(1);
+				}
+			} else if (file == null) {
+				file = args[i];
+			}
+		}
+		
+		if (file == null) {
+			System.out.println("The file is not presented");
+		} else if (!Files.isRegularFile(Paths.get(file))) {
+			System.out.println("The file provided is not found");
+		} else {
+			input = Paths.get(file);
+		}
+		
+		boolean interactive = script == null;
+		int status = 0;
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		try (Reader in = interactive || script.equals("-") ? new InputStreamReader(System.in) 
+				: Files.newBufferedReader(Paths.get(script))) {
+			Tokens kb = new Tokens(in);
+			String prompt = interactive ? "Enter list type (i - int, d - double, s - string): " : null;
+			String type = next(kb, out, prompt);
+			while (type != null && !type.equalsIgnoreCase("i") && !type.equalsIgnoreCase("d") 
+					&& !type.equalsIgnoreCase("s")) {
+				out.write("Invalid type, please try again.\n");
+				type = next(kb, out, prompt);
+			}
+			if (type != null) {
+				Session session = type.equalsIgnoreCase("i") ? new IntSession(input, persist, mode) 
+						: type.equalsIgnoreCase("d") ? new DoubleSession(input, persist, mode) 
+						: new StringSession(input, persist, mode);
+				out.flush();
+				if (!session.open(input)) {
+					status = 1;
+				} else {
+					run(session, kb, out, interactive);
+				}
+			}
+			out.flush();
+		} catch (IOException e) {
+			System.err.println("The commands cannot be read: " + e.getMessage());
+			status = 1;
+		}
+		System.exit(status);
+	}
+}
@@ -0,0 +1,191 @@
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Checks that a snapshot never changes while the trees that share its
+ * nodes are updated. A {@code PERSISTENT} tree is frozen with
+ * {@link BinarySearchTree#snapshot()}, then merged into a tree of every
+ * mode with {@link BinarySearchTree#union} or
+ * {@link BinarySearchTree#join}, so both trees hold the same nodes. The
+ * merged tree is updated at random, looked up (which splays in
+ * {@code SPLAY} mode) and printed with {@link BinarySearchTree#inOrder()}
+ * while another thread keeps iterating the snapshot, which must still
+ * hold exactly its keys. Run it as
+ * <pre>
+ * java BinarySearchTreeSnapshotTest [-ops 100000] [-seed 42]
+ * </pre>
+ * The program exits with a non-zero status if a check fails.
+ * @author Chihyuan Tung
+ *
+ */
+public class BinarySearchTreeSnapshotTest {
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * Checks that {@code tree} holds exactly {@code keys}, in order.
+	 */
+	private static void same(BinarySearchTree<Integer> tree, Iterable<Integer> keys, String name) {
+		List<Integer> expected = new ArrayList<>();
+		keys.forEach(expected::add);
+		List<Integer> actual = new ArrayList<>();
+		tree.forEach(actual::add);
+		check(actual.equals(expected), name + " holds " + actual + " instead of " + expected);
+		check(tree.size() == expected.size(), name + " reports size " + tree.size() + " for " + expected.size() + " keys");
+	}
+
+	/**
+	 * Returns what {@link BinarySearchTree#inOrder()} prints.
+	 */
+	private static String printed(BinarySearchTree<Integer> tree) {
+		PrintStream out = System.out;
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		System.setOut(new PrintStream(buffer));
+		try {
+			tree.inOrder();
+		} finally {
+			System.setOut(out);
+		}
+		return buffer.toString();
+	}
+
+	private static String expected(Iterable<Integer> keys) {
+		StringBuilder text = new StringBuilder();
+		for (int key : keys) {
+			text.append(key).append(' ');
+		}
+		return text.toString();
+	}
+
+	/**
+	 * The sequence that used to rewrite a snapshot merged into a
+	 * {@code SPLAY} tree.
+	 */
+	private static void splayUnion() {
+		BinarySearchTree<Integer> live = new BinarySearchTree<>(BinarySearchTree.Mode.PERSISTENT);
+		TreeSet<Integer> keys = new TreeSet<>();
+		for (int key = 0; key <= 90; key += 10) {
+			live.insert(key);
+			keys.add(key);
+		}
+		BinarySearchTree<Integer> snap = live.snapshot();
+		BinarySearchTree<Integer> s = new BinarySearchTree<>(BinarySearchTree.Mode.SPLAY);
+		s.union(snap);
+		s.insert(55);
+		s.insert(1000);
+		s.delete(30);
+		s.delete(70);
+		same(snap, keys, "snapshot");
+		TreeSet<Integer> merged = new TreeSet<>(keys);
+		merged.add(55);
+		merged.add(1000);
+		merged.remove(30);
+		merged.remove(70);
+		same(s, merged, "SPLAY tree");
+		check(printed(s).equals(expected(merged)), "inOrder of the SPLAY tree");
+	}
+
+	/**
+	 * Merges a snapshot into a tree of {@code mode} and updates the
+	 * tree while a reader iterates the snapshot.
+	 */
+	private static void shared(BinarySearchTree.Mode mode, boolean join, int ops, long seed) throws InterruptedException {
+		SplittableRandom random = new SplittableRandom(seed);
+		BinarySearchTree<Integer> live = new BinarySearchTree<>(BinarySearchTree.Mode.PERSISTENT);
+		TreeSet<Integer> keys = new TreeSet<>();
+		for (int i = 0; i < 2000; ++i) {
+			int key = random.nextInt(4000);
+			if (keys.add(key)) {
+				live.insert(key);
+			}
+		}
+		BinarySearchTree<Integer> snap = live.snapshot();
+		BinarySearchTree<Integer> tree = new BinarySearchTree<>(mode);
+		TreeSet<Integer> model = new TreeSet<>();
+		if (join) {
+			//keys below those of the snapshot, then the snapshot appended
+			for (int key = -500; key < 0; ++key) {
+				tree.insert(key);
+				model.add(key);
+			}
+			tree.join(snap);
+		} else {
+			for (int i = 0; i < 500; ++i) {
+				int key = random.nextInt(4000);
+				if (model.add(key)) {
+					tree.insert(key);
+				}
+			}
+			tree.union(snap);
+		}
+		model.addAll(keys);
+		String name = mode + (join ? " join" : " union");
+
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					same(snap, keys, name + " snapshot while reading");
+				}
+			} catch (Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		}, "snapshot-reader");
+		reader.start();
+		try {
+			for (int i = 0; i < ops && failure.get() == null; ++i) {
+				int key = random.nextInt(-600, 4100);
+				int op = random.nextInt(8);
+				if (op < 3) {
+					if (model.add(key)) {
+						tree.insert(key);
+					}
+				} else if (op < 6) {
+					if (model.remove(key)) {
+						tree.delete(key);
+					}
+				} else if (op == 6) {
+					check(tree.retrieve(key) == model.contains(key), name + " retrieve " + key);
+				} else if (i % 64 == 7) {
+					check(printed(tree).equals(expected(model)), name + " inOrder");
+				}
+			}
+		} finally {
+			reader.interrupt();
+			reader.join();
+		}
+		if (failure.get() != null) {
+			throw new AssertionError(name + " reader failed", failure.get());
+		}
+		same(snap, keys, name + " snapshot");
+		same(tree, model, name + " tree");
+		check(printed(snap).equals(expected(keys)), name + " inOrder of the snapshot");
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int ops = 100000;
+		long seed = 42;
+		for (int i = 0; i + 1 < args.length; ++i) {
+			if (args[i].equals("-ops")) {
+				ops = Integer.parseInt(args[i + 1]);
+			} else if (args[i].equals("-seed")) {
+				seed = Long.parseLong(args[i + 1]);
+			}
+		}
+		splayUnion();
+		for (BinarySearchTree.Mode mode : BinarySearchTree.Mode.values()) {
+			shared(mode, false, ops, seed);
+			shared(mode, true, ops, seed + 1);
+		}
+		System.out.println("ok: snapshots unchanged in every mode");
+	}
+}
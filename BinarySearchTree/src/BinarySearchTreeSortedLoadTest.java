@@ -0,0 +1,106 @@
+import java.util.Locale;
+
+/**
+ * Loads ascending keys one insert at a time, the input that turns an
+ * unbalanced tree into a linked list, and checks that an {@code AVL}
+ * {@link BinarySearchTree} and an {@code AVL} {@link IntBinarySearchTree}
+ * stay O(log n) high and never overflow the stack. Run it as
+ * <pre>
+ * java BinarySearchTreeSortedLoadTest [-size 10000000]
+ * </pre>
+ * The program exits with a non-zero status if a check fails.
+ * @author Chihyuan Tung
+ *
+ */
+public class BinarySearchTreeSortedLoadTest {
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * Returns the height an AVL tree of {@code n} keys stays below,
+	 * 1.44 log2(n + 2).
+	 */
+	private static double bound(int n) {
+		return 1.4405 * Math.log(n + 2) / Math.log(2);
+	}
+
+	/**
+	 * Returns the height of a tree holding the keys {@code [lo, hi)}, one
+	 * more than the deepest level of a key.
+	 */
+	private static int height(BinarySearchTree<Integer> tree, int lo, int hi) {
+		int deepest = -1;
+		for (int i = lo; i < hi; ++i) {
+			int level = tree.getNodeLevel(i);
+			check(level >= 0, "key " + i + " is missing");
+			deepest = Math.max(deepest, level);
+		}
+		return deepest + 1;
+	}
+
+	private static int height(IntBinarySearchTree tree, int lo, int hi) {
+		int deepest = -1;
+		for (int i = lo; i < hi; ++i) {
+			int level = tree.getNodeLevel(i);
+			check(level >= 0, "key " + i + " is missing");
+			deepest = Math.max(deepest, level);
+		}
+		return deepest + 1;
+	}
+
+	private static void boxed(int n) {
+		BinarySearchTree<Integer> tree = new BinarySearchTree<>(BinarySearchTree.Mode.AVL);
+		for (int i = 0; i < n; ++i) {
+			tree.insert(i);
+		}
+		int loaded = height(tree, 0, n);
+		check(loaded <= bound(n), "height " + loaded + " of " + n + " sorted keys");
+		check(tree.retrieve(0) && tree.retrieve(n - 1) && !tree.retrieve(n), "lookup of the ends");
+		//deleting in order drains one side first
+		for (int i = 0; i < n / 2; ++i) {
+			tree.delete(i);
+		}
+		check(!tree.retrieve(n / 2 - 1) && tree.retrieve(n / 2), "lookup after deleting the lower half");
+		int drained = height(tree, n / 2, n);
+		check(drained <= bound(n - n / 2), "height " + drained + " after deleting the lower half");
+		System.out.println(String.format(Locale.ROOT, "BinarySearchTree AVL: %d keys, height %d", n, loaded));
+	}
+
+	private static void primitive(int n) {
+		IntBinarySearchTree tree = new IntBinarySearchTree(BinarySearchTree.Mode.AVL);
+		for (int i = 0; i < n; ++i) {
+			tree.insert(i);
+		}
+		int loaded = height(tree, 0, n);
+		check(loaded <= bound(n), "height " + loaded + " of " + n + " sorted keys");
+		check(tree.retrieve(0) && tree.retrieve(n - 1) && !tree.retrieve(n), "lookup of the ends");
+		for (int i = 0; i < n / 2; ++i) {
+			tree.delete(i);
+		}
+		check(!tree.retrieve(n / 2 - 1) && tree.retrieve(n / 2), "lookup after deleting the lower half");
+		int drained = height(tree, n / 2, n);
+		check(drained <= bound(n - n / 2), "height " + drained + " after deleting the lower half");
+		System.out.println(String.format(Locale.ROOT, "IntBinarySearchTree AVL: %d keys, height %d", n, loaded));
+	}
+
+	public static void main(String[] args) {
+		int n = 10000000;
+		for (int i = 0; i + 1 < args.length; ++i) {
+			if (args[i].equals("-size")) {
+				n = Integer.parseInt(args[i + 1]);
+			}
+		}
+		long start = System.nanoTime();
+		try {
+			boxed(n);
+			primitive(n);
+		} catch (StackOverflowError e) {
+			throw new AssertionError("a sorted load of " + n + " keys overflowed the stack", e);
+		}
+		System.out.println(String.format(Locale.ROOT, "ok: %.1f s", (System.nanoTime() - start) / 1e9));
+	}
+}
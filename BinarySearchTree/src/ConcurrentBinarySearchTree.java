@@ -0,0 +1,1010 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * This class represent a binary search tree that can be shared by many
+ * threads without a global lock. It is a relaxed AVL tree after Bronson,
+ * Casper, Chafi and Olukotun, "A Practical Concurrent Binary Search Tree".
+ * <p>
+ * Lookups never lock. Every node has a version that a rotation changes
+ * when it moves the node down, which shrinks the range of keys below it.
+ * A lookup reads the version of a node before it reads the child, checks
+ * it again afterwards and, if it changed, goes back to the deepest node
+ * whose version still holds instead of starting over at the root.
+ * <p>
+ * An insert locks only the node that gets the new leaf, or the node of
+ * the key if it was deleted before. A delete unlinks a node with at most
+ * one child under the locks of the node and its parent; a node with two
+ * children stays as a routing node without a key until one of them goes.
+ * The heights are then fixed and the AVL balance is restored on the way
+ * up by rotations that each lock a parent, a node and one or two of its
+ * children, always from the top down. While updates run the balance may
+ * be off for a moment, and once they are done the tree is an AVL tree
+ * again.
+ * <p>
+ * Every insert, delete and retrieve takes effect atomically at one point
+ * between its call and its return, so the tree is linearizable.
+ * @author Chihyuan Tung
+ *
+ * @param <T> type parameter
+ */
+public class ConcurrentBinarySearchTree<T extends Comparable<T>> implements Iterable<T> {
+
+	/** the version of an unlinked node, it never changes again */
+	private static final long UNLINKED = 1L;
+	/** set while a rotation moves the node down */
+	private static final long SHRINKING = 2L;
+
+	/** the results of an attempt */
+	private static final int UNCHANGED = 0;
+	private static final int CHANGED = 1;
+	private static final int RETRY = -1;
+	/** returned by {@link #attemptHigher} when it has to be retried */
+	private static final Object RETRY_KEY = new Object();
+
+	/** what {@link #nodeCondition} asks for, apart from a new height */
+	private static final int UNLINK_REQUIRED = -1;
+	private static final int REBALANCE_REQUIRED = -2;
+	private static final int NOTHING_REQUIRED = -3;
+
+	/** how often a lookup checks a node that is rotated before it blocks */
+	private static final int SPINS = 100;
+
+	/**
+	 * Node of the tree. The key never changes; every other field is only
+	 * written under the lock of the node, the children and the version
+	 * also under the lock of the parent for a rotation.
+	 */
+	private static final class Node<T> {
+		final T key;
+		/** {@code false} for a routing node, whose key was deleted */
+		volatile boolean present;
+		volatile int height;
+		volatile long version;
+		volatile Node<T> parent;
+		volatile Node<T> left;
+		volatile Node<T> right;
+
+		Node(T key, boolean present, int height, Node<T> parent) {
+			this.key = key;
+			this.present = present;
+			this.height = height;
+			this.parent = parent;
+		}
+
+		Node<T> child(int cmp) {
+			return cmp < 0 ? this.left : this.right;
+		}
+
+		void setChild(int cmp, Node<T> child) {
+			if (cmp < 0) {
+				this.left = child;
+			} else {
+				this.right = child;
+			}
+		}
+
+		/**
+		 * Waits until the rotation that moves this node down, which was
+		 * running at {@code version}, is done. The rotation holds the lock
+		 * of the node, so after a few spins the lock is taken.
+		 */
+		void waitUntilShrinkCompleted(long version) {
+			if ((version & SHRINKING) == 0) {
+				return;
+			}
+			for (int i = 0; i < SPINS; ++i) {
+				if (this.version != version) {
+					return;
+				}
+				Thread.onSpinWait();
+			}
+			synchronized (this) {
+				//the rotation is over once the lock is free
+			}
+		}
+	}
+
+	/** its right child is the root, it has no key */
+	private final Node<T> holder = new Node<T>(null, false, 1, null);
+	/** the number of keys, exact when no update is running */
+	private final LongAdder size = new LongAdder();
+
+	public ConcurrentBinarySearchTree() {
+	}
+
+	private static int height(Node<?> node) {
+		return node == null ? 0 : node.height;
+	}
+
+	private static boolean shrinkingOrUnlinked(long version) {
+		return (version & (SHRINKING | UNLINKED)) != 0;
+	}
+
+	private static boolean unlinked(long version) {
+		return version == UNLINKED;
+	}
+
+	private static long beginChange(long version) {
+		return version | SHRINKING;
+	}
+
+	/**
+	 * Clears the flags and counts the change, so that a lookup that read
+	 * the version before notices it.
+	 */
+	private static long endChange(long version) {
+		return (version | SHRINKING | UNLINKED) + 1;
+	}
+
+	/**
+	 * Given the {@code item} and check if it is presented in the tree.
+	 * No lock is taken.
+	 * @param item the item to be searched
+	 * @return {@code true} if found, {@code false} otherwise
+	 */
+	public boolean retrieve(T item) {
+		while (true) {
+			Node<T> right = this.holder.right;
+			if (right == null) {
+				return false;
+			}
+			int cmp = item.compareTo(right.key);
+			if (cmp == 0) {
+				return right.present;
+			}
+			long version = right.version;
+			if (shrinkingOrUnlinked(version)) {
+				right.waitUntilShrinkCompleted(version);
+			} else if (right == this.holder.right) {
+				int result = attemptGet(item, right, cmp, version);
+				if (result != RETRY) {
+					return result == CHANGED;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks for {@code item} below {@code node}, which had
+	 * {@code version} when it was reached, on the side {@code cmp}.
+	 * @return {@code CHANGED} if found, {@code UNCHANGED} if not and
+	 * {@code RETRY} if the version of {@code node} changed
+	 */
+	private int attemptGet(T item, Node<T> node, int cmp, long version) {
+		while (true) {
+			Node<T> child = node.child(cmp);
+			if (child == null) {
+				return node.version != version ? RETRY : UNCHANGED;
+			}
+			int childCmp = item.compareTo(child.key);
+			if (childCmp == 0) {
+				return child.present ? CHANGED : UNCHANGED;
+			}
+			long childVersion = child.version;
+			if (shrinkingOrUnlinked(childVersion)) {
+				child.waitUntilShrinkCompleted(childVersion);
+				if (node.version != version) {
+					return RETRY;
+				}
+			} else if (child != node.child(cmp)) {
+				if (node.version != version) {
+					return RETRY;
+				}
+			} else {
+				if (node.version != version) {
+					return RETRY;
+				}
+				int result = attemptGet(item, child, childCmp, childVersion);
+				if (result != RETRY) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Insert {@code key} into the tree.
+	 * @param key the key to be inserted
+	 * @return {@code true} if the key was not presented before
+	 */
+	public boolean insert(T key) {
+		return update(key, true);
+	}
+
+	/**
+	 * Delete {@code key} from the tree.
+	 * @param key the key to be deleted
+	 * @return {@code true} if the key was presented
+	 */
+	public boolean delete(T key) {
+		return update(key, false);
+	}
+
+	private boolean update(T key, boolean insert) {
+		while (true) {
+			Node<T> right = this.holder.right;
+			if (right == null) {
+				if (!insert) {
+					return false;
+				}
+				if (insertIntoEmpty(key)) {
+					this.size.increment();
+					return true;
+				}
+			} else {
+				long version = right.version;
+				if (shrinkingOrUnlinked(version)) {
+					right.waitUntilShrinkCompleted(version);
+				} else if (right == this.holder.right) {
+					int result = attemptUpdate(key, insert, this.holder, right, version);
+					if (result != RETRY) {
+						if (result == CHANGED) {
+							this.size.add(insert ? 1 : -1);
+						}
+						return result == CHANGED;
+					}
+				}
+			}
+		}
+	}
+
+	private boolean insertIntoEmpty(T key) {
+		synchronized (this.holder) {
+			if (this.holder.right != null) {
+				return false;
+			}
+			this.holder.right = new Node<T>(key, true, 1, this.holder);
+			this.holder.height = 2;
+			return true;
+		}
+	}
+
+	/**
+	 * Inserts or deletes {@code key} below {@code parent}, at
+	 * {@code node}, which had {@code version} when it was reached.
+	 */
+	private int attemptUpdate(T key, boolean insert, Node<T> parent, Node<T> node, long version) {
+		int cmp = key.compareTo(node.key);
+		if (cmp == 0) {
+			return attemptNodeUpdate(insert, parent, node);
+		}
+		while (true) {
+			Node<T> child = node.child(cmp);
+			if (node.version != version) {
+				return RETRY;
+			}
+			if (child == null) {
+				if (!insert) {
+					return UNCHANGED;
+				}
+				Node<T> damaged;
+				synchronized (node) {
+					if (node.version != version) {
+						return RETRY;
+					}
+					if (node.child(cmp) != null) {
+						//another thread got here first, look again
+						continue;
+					}
+					node.setChild(cmp, new Node<T>(key, true, 1, node));
+					damaged = fixHeight(node);
+				}
+				fixHeightAndRebalance(damaged);
+				return CHANGED;
+			}
+			long childVersion = child.version;
+			if (shrinkingOrUnlinked(childVersion)) {
+				child.waitUntilShrinkCompleted(childVersion);
+			} else if (child == node.child(cmp)) {
+				if (node.version != version) {
+					return RETRY;
+				}
+				int result = attemptUpdate(key, insert, node, child, childVersion);
+				if (result != RETRY) {
+					return result;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Inserts or deletes the key of {@code node}, a child of
+	 * {@code parent}. A deleted node with at most one child is unlinked,
+	 * with two it becomes a routing node.
+	 */
+	private int attemptNodeUpdate(boolean insert, Node<T> parent, Node<T> node) {
+		if (!insert && !node.present) {
+			return UNCHANGED;
+		}
+		if (!insert && (node.left == null || node.right == null)) {
+			Node<T> damaged;
+			synchronized (parent) {
+				if (unlinked(parent.version) || node.parent != parent) {
+					return RETRY;
+				}
+				synchronized (node) {
+					if (!node.present) {
+						return UNCHANGED;
+					}
+					if (!attemptUnlink(parent, node)) {
+						return RETRY;
+					}
+				}
+				damaged = fixHeight(parent);
+			}
+			fixHeightAndRebalance(damaged);
+			return CHANGED;
+		}
+		synchronized (node) {
+			if (unlinked(node.version)) {
+				return RETRY;
+			}
+			if (node.present == insert) {
+				return UNCHANGED;
+			}
+			if (!insert && (node.left == null || node.right == null)) {
+				//a child went meanwhile, the node can be unlinked now
+				return RETRY;
+			}
+			node.present = insert;
+			return CHANGED;
+		}
+	}
+
+	/**
+	 * Replaces {@code node}, which must have at most one child, by that
+	 * child. Both nodes are locked.
+	 * @return {@code false} if the nodes changed and it has to be retried
+	 */
+	private boolean attemptUnlink(Node<T> parent, Node<T> node) {
+		Node<T> parentLeft = parent.left;
+		Node<T> parentRight = parent.right;
+		if (parentLeft != node && parentRight != node) {
+			return false;
+		}
+		Node<T> left = node.left;
+		Node<T> right = node.right;
+		if (left != null && right != null) {
+			return false;
+		}
+		Node<T> splice = left != null ? left : right;
+		if (parentLeft == node) {
+			parent.left = splice;
+		} else {
+			parent.right = splice;
+		}
+		if (splice != null) {
+			splice.parent = parent;
+		}
+		node.version = UNLINKED;
+		node.present = false;
+		return true;
+	}
+
+	/**
+	 * Tells what {@code node} needs: to be unlinked, a rotation, a new
+	 * height, which is returned, or nothing.
+	 */
+	private int nodeCondition(Node<T> node) {
+		Node<T> left = node.left;
+		Node<T> right = node.right;
+		if ((left == null || right == null) && !node.present) {
+			return UNLINK_REQUIRED;
+		}
+		int height = node.height;
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		int balance = leftHeight - rightHeight;
+		if (balance < -1 || balance > 1) {
+			return REBALANCE_REQUIRED;
+		}
+		int fixed = 1 + Math.max(leftHeight, rightHeight);
+		return height != fixed ? fixed : NOTHING_REQUIRED;
+	}
+
+	/**
+	 * Repairs {@code node} and its ancestors until nothing is left to do,
+	 * taking the locks one repair at a time.
+	 */
+	private void fixHeightAndRebalance(Node<T> node) {
+		while (node != null && node.parent != null) {
+			int condition = nodeCondition(node);
+			if (condition == NOTHING_REQUIRED || unlinked(node.version)) {
+				return;
+			}
+			if (condition != UNLINK_REQUIRED && condition != REBALANCE_REQUIRED) {
+				synchronized (node) {
+					node = fixHeight(node);
+				}
+			} else {
+				Node<T> parent = node.parent;
+				synchronized (parent) {
+					if (!unlinked(parent.version) && node.parent == parent) {
+						synchronized (node) {
+							node = rebalance(parent, node);
+						}
+					}
+					//otherwise look at the node again
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fixes the height of the locked {@code node} if that is all it needs.
+	 * @return the node that needs a repair next, {@code null} if none
+	 */
+	private Node<T> fixHeight(Node<T> node) {
+		int condition = nodeCondition(node);
+		switch (condition) {
+		case REBALANCE_REQUIRED:
+		case UNLINK_REQUIRED:
+			return node;
+		case NOTHING_REQUIRED:
+			return null;
+		default:
+			node.height = condition;
+			return node.parent;
+		}
+	}
+
+	/**
+	 * Unlinks or rotates {@code node}, both it and {@code parent} are
+	 * locked.
+	 * @return the node that needs a repair next, {@code null} if none
+	 */
+	private Node<T> rebalance(Node<T> parent, Node<T> node) {
+		Node<T> left = node.left;
+		Node<T> right = node.right;
+		if ((left == null || right == null) && !node.present) {
+			return attemptUnlink(parent, node) ? fixHeight(parent) : node;
+		}
+		int height = node.height;
+		int leftHeight = height(left);
+		int rightHeight = height(right);
+		int fixed = 1 + Math.max(leftHeight, rightHeight);
+		int balance = leftHeight - rightHeight;
+		if (balance > 1) {
+			return rebalanceToRight(parent, node, left, rightHeight);
+		} else if (balance < -1) {
+			return rebalanceToLeft(parent, node, right, leftHeight);
+		} else if (fixed != height) {
+			node.height = fixed;
+			return fixHeight(parent);
+		}
+		return null;
+	}
+
+	/**
+	 * Rotates the too tall left subtree of {@code node} up, after a left
+	 * rotation of that subtree if its inner side is the taller one. The
+	 * heights are read again under the locks and the caller retries if
+	 * they changed.
+	 */
+	private Node<T> rebalanceToRight(Node<T> parent, Node<T> node, Node<T> left, int rightHeight) {
+		synchronized (left) {
+			int leftHeight = left.height;
+			if (leftHeight - rightHeight <= 1) {
+				return node;
+			}
+			Node<T> leftRight = left.right;
+			int leftLeftHeight = height(left.left);
+			int leftRightHeight = height(leftRight);
+			if (leftLeftHeight >= leftRightHeight) {
+				return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+			}
+			synchronized (leftRight) {
+				leftRightHeight = leftRight.height;
+				if (leftLeftHeight >= leftRightHeight) {
+					return rotateRight(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightHeight);
+				}
+				//a double rotation only if it leaves the new left child balanced
+				int leftRightLeftHeight = height(leftRight.left);
+				int balance = leftLeftHeight - leftRightLeftHeight;
+				if (balance >= -1 && balance <= 1 && !((leftLeftHeight == 0 || leftRightLeftHeight == 0) && !left.present)) {
+					return rotateRightOverLeft(parent, node, left, rightHeight, leftLeftHeight, leftRight, leftRightLeftHeight);
+				}
+			}
+			//otherwise the left child first, the node later
+			return rebalanceToLeft(node, left, leftRight, leftLeftHeight);
+		}
+	}
+
+	/**
+	 * The mirror image of {@link #rebalanceToRight}.
+	 */
+	private Node<T> rebalanceToLeft(Node<T> parent, Node<T> node, Node<T> right, int leftHeight) {
+		synchronized (right) {
+			int rightHeight = right.height;
+			if (leftHeight - rightHeight >= -1) {
+				return node;
+			}
+			Node<T> rightLeft = right.left;
+			int rightLeftHeight = height(rightLeft);
+			int rightRightHeight = height(right.right);
+			if (rightRightHeight >= rightLeftHeight) {
+				return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+			}
+			synchronized (rightLeft) {
+				rightLeftHeight = rightLeft.height;
+				if (rightRightHeight >= rightLeftHeight) {
+					return rotateLeft(parent, node, leftHeight, right, rightLeft, rightLeftHeight, rightRightHeight);
+				}
+				int rightLeftRightHeight = height(rightLeft.right);
+				int balance = rightRightHeight - rightLeftRightHeight;
+				if (balance >= -1 && balance <= 1 && !((rightRightHeight == 0 || rightLeftRightHeight == 0) && !right.present)) {
+					return rotateLeftOverRight(parent, node, leftHeight, right, rightLeft, rightRightHeight, rightLeftRightHeight);
+				}
+			}
+			return rebalanceToRight(node, right, rightLeft, rightRightHeight);
+		}
+	}
+
+	/**
+	 * Replaces {@code parent}'s child {@code node} by its child
+	 * {@code pivot}, either side.
+	 */
+	private static <T> void replaceChild(Node<T> parent, Node<T> node, Node<T> pivot) {
+		if (parent.left == node) {
+			parent.left = pivot;
+		} else {
+			parent.right = pivot;
+		}
+		pivot.parent = parent;
+	}
+
+	/**
+	 * Rotates {@code left} up over {@code node}; parent, node and left are
+	 * locked. The node moves down, so its version marks the change for the
+	 * lookups that pass it.
+	 * @return the node that needs a repair next, {@code null} if none
+	 */
+	private Node<T> rotateRight(Node<T> parent, Node<T> node, Node<T> left, int rightHeight, int leftLeftHeight,
+			Node<T> leftRight, int leftRightHeight) {
+		long version = node.version;
+		node.version = beginChange(version);
+		node.left = leftRight;
+		if (leftRight != null) {
+			leftRight.parent = node;
+		}
+		left.right = node;
+		node.parent = left;
+		replaceChild(parent, node, left);
+		int nodeHeight = 1 + Math.max(leftRightHeight, rightHeight);
+		node.height = nodeHeight;
+		left.height = 1 + Math.max(leftLeftHeight, nodeHeight);
+		node.version = endChange(version);
+
+		int balance = leftRightHeight - rightHeight;
+		if (balance < -1 || balance > 1) {
+			return node;
+		}
+		if ((leftRight == null || rightHeight == 0) && !node.present) {
+			return node;
+		}
+		balance = leftLeftHeight - nodeHeight;
+		if (balance < -1 || balance > 1) {
+			return left;
+		}
+		if (leftLeftHeight == 0 && !left.present) {
+			return left;
+		}
+		return fixHeight(parent);
+	}
+
+	/**
+	 * The mirror image of {@link #rotateRight}.
+	 */
+	private Node<T> rotateLeft(Node<T> parent, Node<T> node, int leftHeight, Node<T> right, Node<T> rightLeft,
+			int rightLeftHeight, int rightRightHeight) {
+		long version = node.version;
+		node.version = beginChange(version);
+		node.right = rightLeft;
+		if (rightLeft != null) {
+			rightLeft.parent = node;
+		}
+		right.left = node;
+		node.parent = right;
+		replaceChild(parent, node, right);
+		int nodeHeight = 1 + Math.max(leftHeight, rightLeftHeight);
+		node.height = nodeHeight;
+		right.height = 1 + Math.max(nodeHeight, rightRightHeight);
+		node.version = endChange(version);
+
+		int balance = rightLeftHeight - leftHeight;
+		if (balance < -1 || balance > 1) {
+			return node;
+		}
+		if ((rightLeft == null || leftHeight == 0) && !node.present) {
+			return node;
+		}
+		balance = rightRightHeight - nodeHeight;
+		if (balance < -1 || balance > 1) {
+			return right;
+		}
+		if (rightRightHeight == 0 && !right.present) {
+			return right;
+		}
+		return fixHeight(parent);
+	}
+
+	/**
+	 * Rotates {@code leftRight} up over {@code left} and {@code node}; the
+	 * four nodes are locked and both node and left move down.
+	 * @return the node that needs a repair next, {@code null} if none
+	 */
+	private Node<T> rotateRightOverLeft(Node<T> parent, Node<T> node, Node<T> left, int rightHeight,
+			int leftLeftHeight, Node<T> leftRight, int leftRightLeftHeight) {
+		long version = node.version;
+		long leftVersion = left.version;
+		Node<T> leftRightLeft = leftRight.left;
+		Node<T> leftRightRight = leftRight.right;
+		int leftRightRightHeight = height(leftRightRight);
+		node.version = beginChange(version);
+		left.version = beginChange(leftVersion);
+		node.left = leftRightRight;
+		if (leftRightRight != null) {
+			leftRightRight.parent = node;
+		}
+		left.right = leftRightLeft;
+		if (leftRightLeft != null) {
+			leftRightLeft.parent = left;
+		}
+		leftRight.left = left;
+		left.parent = leftRight;
+		leftRight.right = node;
+		node.parent = leftRight;
+		replaceChild(parent, node, leftRight);
+		int nodeHeight = 1 + Math.max(leftRightRightHeight, rightHeight);
+		node.height = nodeHeight;
+		int leftHeight = 1 + Math.max(leftLeftHeight, leftRightLeftHeight);
+		left.height = leftHeight;
+		leftRight.height = 1 + Math.max(leftHeight, nodeHeight);
+		node.version = endChange(version);
+		left.version = endChange(leftVersion);
+
+		int balance = leftRightRightHeight - rightHeight;
+		if (balance < -1 || balance > 1) {
+			return node;
+		}
+		if ((leftRightRight == null || rightHeight == 0) && !node.present) {
+			return node;
+		}
+		balance = leftHeight - nodeHeight;
+		if (balance < -1 || balance > 1) {
+			return leftRight;
+		}
+		return fixHeight(parent);
+	}
+
+	/**
+	 * The mirror image of {@link #rotateRightOverLeft}.
+	 */
+	private Node<T> rotateLeftOverRight(Node<T> parent, Node<T> node, int leftHeight, Node<T> right,
+			Node<T> rightLeft, int rightRightHeight, int rightLeftRightHeight) {
+		long version = node.version;
+		long rightVersion = right.version;
+		Node<T> rightLeftLeft = rightLeft.left;
+		Node<T> rightLeftRight = rightLeft.right;
+		int rightLeftLeftHeight = height(rightLeftLeft);
+		node.version = beginChange(version);
+		right.version = beginChange(rightVersion);
+		node.right = rightLeftLeft;
+		if (rightLeftLeft != null) {
+			rightLeftLeft.parent = node;
+		}
+		right.left = rightLeftRight;
+		if (rightLeftRight != null) {
+			rightLeftRight.parent = right;
+		}
+		rightLeft.right = right;
+		right.parent = rightLeft;
+		rightLeft.left = node;
+		node.parent = rightLeft;
+		replaceChild(parent, node, rightLeft);
+		int nodeHeight = 1 + Math.max(leftHeight, rightLeftLeftHeight);
+		node.height = nodeHeight;
+		int rightHeight = 1 + Math.max(rightLeftRightHeight, rightRightHeight);
+		right.height = rightHeight;
+		rightLeft.height = 1 + Math.max(nodeHeight, rightHeight);
+		node.version = endChange(version);
+		right.version = endChange(rightVersion);
+
+		int balance = rightLeftLeftHeight - leftHeight;
+		if (balance < -1 || balance > 1) {
+			return node;
+		}
+		if ((rightLeftLeft == null || leftHeight == 0) && !node.present) {
+			return node;
+		}
+		balance = rightHeight - nodeHeight;
+		if (balance < -1 || balance > 1) {
+			return rightLeft;
+		}
+		return fixHeight(parent);
+	}
+
+	/**
+	 * Returns the smallest key greater than {@code key}, or the smallest
+	 * key if it is {@code null}. Like a lookup, it takes no lock and
+	 * checks the version of every node it passes.
+	 * @return the key, {@code null} if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	private T higher(T key) {
+		while (true) {
+			Node<T> right = this.holder.right;
+			if (right == null) {
+				return null;
+			}
+			long version = right.version;
+			if (shrinkingOrUnlinked(version)) {
+				right.waitUntilShrinkCompleted(version);
+			} else if (right == this.holder.right) {
+				Object found = attemptHigher(key, right, version);
+				if (found != RETRY_KEY) {
+					return (T) found;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Looks for the smallest key greater than {@code key} in the subtree
+	 * of {@code node}, which had {@code version} when it was reached: in
+	 * the left subtree, at the node and in the right subtree.
+	 */
+	private Object attemptHigher(T key, Node<T> node, long version) {
+		if (key == null || key.compareTo(node.key) < 0) {
+			Object found = attemptChildHigher(key, node, version, -1);
+			if (found != null) {
+				return found;
+			}
+			if (node.present) {
+				return node.key;
+			}
+		}
+		return attemptChildHigher(key, node, version, 1);
+	}
+
+	private Object attemptChildHigher(T key, Node<T> node, long version, int side) {
+		while (true) {
+			Node<T> child = node.child(side);
+			if (node.version != version) {
+				return RETRY_KEY;
+			}
+			if (child == null) {
+				return null;
+			}
+			long childVersion = child.version;
+			if (shrinkingOrUnlinked(childVersion)) {
+				child.waitUntilShrinkCompleted(childVersion);
+			} else if (child == node.child(side)) {
+				if (node.version != version) {
+					return RETRY_KEY;
+				}
+				Object found = attemptHigher(key, child, childVersion);
+				if (found != RETRY_KEY) {
+					return found;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Given a key then returns the level which the key belonging in the
+	 * tree, counting routing nodes. Like the other methods that look at
+	 * the shape, it walks the tree without locks and is only exact while
+	 * no update is running.
+	 * @param key the key
+	 * @return the level belonging, -1 if the key is not presented
+	 */
+	public int getNodeLevel(T key) {
+		int level = 0;
+		Node<T> temp = this.holder.right;
+		while (temp != null) {
+			int cmp = key.compareTo(temp.key);
+			if (cmp == 0) {
+				return temp.present ? level : -1;
+			}
+			temp = temp.child(cmp);
+			level += 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Given the key, search the sibling of the given key if presented,
+	 * otherwise, return null. A routing node has no key, so it is no
+	 * sibling either.
+	 * @param key the key of the node to be searched for sibling
+	 * @return the key if its sibling node
+	 */
+	public T findSibling(T key) {
+		Node<T> upper = null;
+		Node<T> temp = this.holder.right;
+		while (temp != null) {
+			int cmp = key.compareTo(temp.key);
+			if (cmp == 0) {
+				if (upper == null || !temp.present) {
+					return null;
+				}
+				Node<T> sibling = upper.left == temp ? upper.right : upper.left;
+				return sibling == null || !sibling.present ? null : sibling.key;
+			}
+			upper = temp;
+			temp = temp.child(cmp);
+		}
+		return null;
+	}
+
+	/**
+	 * Given a key then returns the keys of its cousins from left to right,
+	 * see {@link BinarySearchTree#getCousins}. Routing nodes are not
+	 * listed.
+	 * @param key the key of the targeting node
+	 * @return the keys of the cousins, empty if the key is not presented
+	 */
+	public List<T> getCousins(T key) {
+		Node<T> top = this.holder.right;
+		List<T> cousins = new ArrayList<>();
+		Node<T> upper = null;
+		Node<T> node = top;
+		int level = 0;
+		while (node != null) {
+			int cmp = key.compareTo(node.key);
+			if (cmp == 0) {
+				break;
+			}
+			upper = node;
+			node = node.child(cmp);
+			level += 1;
+		}
+		if (node == null || upper == null || !node.present) {
+			return cousins;
+		}
+
+		List<Node<T>> frontier = new ArrayList<>();
+		frontier.add(top);
+		for (int i = 1; i < level; ++i) {
+			List<Node<T>> next = new ArrayList<>(frontier.size() * 2);
+			for (Node<T> temp : frontier) {
+				Node<T> left = temp.left;
+				Node<T> right = temp.right;
+				if (left != null) {
+					next.add(left);
+				}
+				if (right != null) {
+					next.add(right);
+				}
+			}
+			frontier = next;
+		}
+		for (Node<T> temp : frontier) {
+			if (temp != upper) {
+				Node<T> left = temp.left;
+				Node<T> right = temp.right;
+				if (left != null && left.present) {
+					cousins.add(left.key);
+				}
+				if (right != null && right.present) {
+					cousins.add(right.key);
+				}
+			}
+		}
+		return cousins;
+	}
+
+	/**
+	 * Returns the number of leaf nodes, by a walk of the tree.
+	 * @return the number of leaf nodes
+	 */
+	public int getNumLeafNodes() {
+		int count = 0;
+		ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+		Node<T> top = this.holder.right;
+		if (top != null) {
+			stack.push(top);
+		}
+		while (!stack.isEmpty()) {
+			Node<T> node = stack.pop();
+			Node<T> left = node.left;
+			Node<T> right = node.right;
+			if (left == null && right == null) {
+				count += node.present ? 1 : 0;
+			}
+			if (left != null) {
+				stack.push(left);
+			}
+			if (right != null) {
+				stack.push(right);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the keys of all the nodes that only have one child, in
+	 * in-order, by a walk of the tree.
+	 * @return the keys of the single parents
+	 */
+	public List<T> getSingleParent() {
+		List<T> result = new ArrayList<>();
+		ArrayDeque<Node<T>> stack = new ArrayDeque<>();
+		Node<T> node = this.holder.right;
+		while (node != null || !stack.isEmpty()) {
+			while (node != null) {
+				stack.push(node);
+				node = node.left;
+			}
+			node = stack.pop();
+			if (node.present && (node.left == null) != (node.right == null)) {
+				result.add(node.key);
+			}
+			node = node.right;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of keys in the tree. While updates are running
+	 * it may miss the latest of them.
+	 * @return size
+	 */
+	public int size() {
+		return this.size.intValue();
+	}
+
+	/**
+	 * Returns the height of the tree, 0 for an empty tree, counting
+	 * routing nodes. While updates are running it may not be fixed yet.
+	 * @return height
+	 */
+	public int height() {
+		return height(this.holder.right);
+	}
+
+	/**
+	 * Print the keys in in-order.
+	 */
+	public void inOrder() {
+		for (T key : this) {
+			System.out.print(key + " ");
+		}
+	}
+
+	/**
+	 * Returns an in-order iterator over the tree. Every step looks up the
+	 * next greater key like {@link #retrieve} does, in O(log n), so the
+	 * keys come strictly ascending while other threads update the tree,
+	 * every key that stays in the tree the whole time is returned and the
+	 * keys added or deleted meanwhile may or may not be.
+	 * @return an in-order iterator
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new Iterator<T>() {
+			private T next = higher(null);
+
+			@Override
+			public boolean hasNext() {
+				return this.next != null;
+			}
+
+			@Override
+			public T next() {
+				T key = this.next;
+				if (key == null) {
+					throw new NoSuchElementException();
+				}
+				this.next = higher(key);
+				return key;
+			}
+		};
+	}
+}
@@ -0,0 +1,411 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.TreeSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A stress test for {@link ConcurrentBinarySearchTree}: several threads
+ * insert, delete and look up random keys of one shared tree at the same
+ * time, and every result they saw must fit a sequential order of the
+ * operations. Run it as
+ * <pre>
+ * java ConcurrentBinarySearchTreeStressTest [-threads 8] [-ops 200000]
+ *     [-keys 1024] [-seed 42]
+ * </pre>
+ * The first phase gives every thread its own keys, so each insert and
+ * delete must return what a plain set of that thread predicts. The
+ * second phase lets all threads fight over the same keys. Every thread
+ * records its operations with their results and the times of their call
+ * and return, and the histories must be linearizable: some order of all
+ * operations that keeps the order of those that did not overlap has to
+ * give the same results on a sequential {@link TreeSet}. Readers check
+ * that every iteration they do is strictly ascending, and the final tree
+ * must be an AVL tree of the expected keys. The program exits with a
+ * non-zero status on the first violation.
+ * @author Chihyuan Tung
+ *
+ */
+public class ConcurrentBinarySearchTreeStressTest {
+
+	/** the first violation seen by any thread */
+	private static final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+	/**
+	 * Runs {@code work} on {@code threads} threads that start together
+	 * and rethrows the first failure.
+	 */
+	private static void run(int threads, IntWork work) throws InterruptedException {
+		CountDownLatch start = new CountDownLatch(1);
+		Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; ++t) {
+			int id = t;
+			workers[t] = new Thread(() -> {
+				try {
+					start.await();
+					work.run(id);
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				}
+			}, "stress-" + t);
+			workers[t].start();
+		}
+		start.countDown();
+		for (Thread worker : workers) {
+			worker.join();
+		}
+		Throwable first = failure.get();
+		if (first instanceof AssertionError) {
+			throw (AssertionError) first;
+		} else if (first != null) {
+			throw new AssertionError("a worker failed", first);
+		}
+	}
+
+	private interface IntWork {
+		void run(int thread) throws Exception;
+	}
+
+	/**
+	 * Checks that the keys are strictly ascending and returns how many
+	 * there are.
+	 */
+	private static int ascending(ConcurrentBinarySearchTree<Integer> tree) {
+		Iterator<Integer> it = tree.iterator();
+		int count = 0;
+		Integer last = null;
+		while (it.hasNext()) {
+			Integer key = it.next();
+			check(last == null || last < key, "iteration not ascending at " + key);
+			last = key;
+			count += 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Checks the final tree against the keys that must be in it.
+	 */
+	private static void verify(ConcurrentBinarySearchTree<Integer> tree, boolean[] present) {
+		int expected = 0;
+		for (int key = 0; key < present.length; ++key) {
+			check(tree.retrieve(key) == present[key], "key " + key + " should be "
+					+ (present[key] ? "present" : "absent"));
+			expected += present[key] ? 1 : 0;
+		}
+		check(tree.size() == expected, "size " + tree.size() + " but " + expected + " keys");
+		check(ascending(tree) == expected, "iteration misses keys");
+		//once the updates are done every routing node has two children, so
+		//there are less than 2n nodes, and an AVL tree of them is below
+		//1.44 log2(2n + 1)
+		double bound = 1.4405 * Math.log(2 * expected + 1) / Math.log(2);
+		check(tree.height() <= bound, "height " + tree.height() + " of " + expected + " keys");
+		check(expected == 0 || tree.getNumLeafNodes() > 0, "no leaves in a tree of " + expected + " keys");
+		Integer last = null;
+		for (Integer key : tree.getSingleParent()) {
+			check(present[key] && (last == null || last < key), "single parent " + key);
+			last = key;
+		}
+	}
+
+	/**
+	 * Every thread owns the keys that are equal to its id modulo the
+	 * number of threads, so its own results are fully predictable.
+	 */
+	private static void ownKeys(int threads, int ops, int keys, long seed) throws InterruptedException {
+		ConcurrentBinarySearchTree<Integer> tree = new ConcurrentBinarySearchTree<>();
+		boolean[][] owned = new boolean[threads][keys];
+		run(threads, t -> {
+			SplittableRandom random = new SplittableRandom(seed + t);
+			boolean[] mine = owned[t];
+			for (int i = 0; i < ops; ++i) {
+				int slot = random.nextInt(keys / threads);
+				int key = slot * threads + t;
+				int op = random.nextInt(3);
+				if (op == 0) {
+					check(tree.insert(key) != mine[key], "insert " + key + " on thread " + t);
+					mine[key] = true;
+				} else if (op == 1) {
+					check(tree.delete(key) == mine[key], "delete " + key + " on thread " + t);
+					mine[key] = false;
+				} else {
+					check(tree.retrieve(key) == mine[key], "retrieve " + key + " on thread " + t);
+				}
+			}
+		});
+		boolean[] present = new boolean[keys];
+		for (boolean[] mine : owned) {
+			for (int key = 0; key < keys; ++key) {
+				present[key] |= mine[key];
+			}
+		}
+		verify(tree, present);
+	}
+
+	/** the kinds of recorded operations */
+	private static final int INSERT = 0;
+	private static final int DELETE = 1;
+	private static final int RETRIEVE = 2;
+
+	/**
+	 * An operation of a history: what was called with which key, what it
+	 * returned, and when the call started and returned.
+	 */
+	private static final class Operation {
+		final int kind;
+		final int key;
+		final boolean result;
+		final long call;
+		final long response;
+		/** the number of the operation among those of its key */
+		int id;
+
+		Operation(int kind, int key, boolean result, long call, long response) {
+			this.kind = kind;
+			this.key = key;
+			this.result = result;
+			this.call = call;
+			this.response = response;
+		}
+
+		/**
+		 * Runs the operation on the sequential model.
+		 * @return whether the model returns what the tree did
+		 */
+		boolean apply(TreeSet<Integer> model) {
+			switch (this.kind) {
+			case INSERT:
+				return model.add(this.key) == this.result;
+			case DELETE:
+				return model.remove(this.key) == this.result;
+			default:
+				return model.contains(this.key) == this.result;
+			}
+		}
+	}
+
+	/**
+	 * The call or the return of an operation, in a list ordered by time.
+	 */
+	private static final class Event {
+		final Operation operation;
+		final boolean call;
+		/** the return of a call */
+		Event match;
+		Event previous;
+		Event next;
+
+		Event(Operation operation, boolean call) {
+			this.operation = operation;
+			this.call = call;
+		}
+
+		long time() {
+			return this.call ? this.operation.call : this.operation.response;
+		}
+
+		/**
+		 * Takes the call and its return out of the list.
+		 */
+		void lift() {
+			this.previous.next = this.next;
+			if (this.next != null) {
+				this.next.previous = this.previous;
+			}
+			this.match.previous.next = this.match.next;
+			if (this.match.next != null) {
+				this.match.next.previous = this.match.previous;
+			}
+		}
+
+		/**
+		 * Puts the call and its return back, in the reverse order of
+		 * {@link #lift()}.
+		 */
+		void unlift() {
+			this.match.previous.next = this.match;
+			if (this.match.next != null) {
+				this.match.next.previous = this.match;
+			}
+			this.previous.next = this;
+			if (this.next != null) {
+				this.next.previous = this;
+			}
+		}
+	}
+
+	/**
+	 * Searches a linearization of the operations on one key, after Wing
+	 * and Gong with the cache of Lowe: the next operation is always one
+	 * whose call comes before every pending return, and a state, the set
+	 * of operations done and the model, is never tried twice. Operations
+	 * on different keys commute, so the keys may be checked one by one.
+	 * @return whether the operations are linearizable
+	 */
+	private static boolean linearizable(List<Operation> operations) {
+		int count = operations.size();
+		Event[] events = new Event[2 * count];
+		for (int i = 0; i < count; ++i) {
+			Operation operation = operations.get(i);
+			operation.id = i;
+			Event call = new Event(operation, true);
+			call.match = new Event(operation, false);
+			events[2 * i] = call;
+			events[2 * i + 1] = call.match;
+		}
+		//overlapping operations may go either way, so at the same time the
+		//calls come first
+		Arrays.sort(events, (a, b) -> a.time() != b.time() ? Long.compare(a.time(), b.time())
+				: Boolean.compare(b.call, a.call));
+		Event head = new Event(null, false);
+		Event last = head;
+		for (Event event : events) {
+			last.next = event;
+			event.previous = last;
+			last = event;
+		}
+
+		TreeSet<Integer> model = new TreeSet<>();
+		BitSet done = new BitSet(count + 1);
+		Set<BitSet> tried = new HashSet<>();
+		ArrayDeque<Event> stack = new ArrayDeque<>();
+		ArrayDeque<TreeSet<Integer>> models = new ArrayDeque<>();
+		Event event = head.next;
+		while (head.next != null) {
+			if (event.call) {
+				TreeSet<Integer> before = new TreeSet<>(model);
+				if (event.operation.apply(model)) {
+					BitSet state = (BitSet) done.clone();
+					state.set(event.operation.id);
+					state.set(count, !model.isEmpty());
+					if (tried.add(state)) {
+						done.set(event.operation.id);
+						stack.push(event);
+						models.push(before);
+						event.lift();
+						event = head.next;
+						continue;
+					}
+				}
+				model = before;
+				event = event.next;
+			} else {
+				//an operation returned that no order could place, go back
+				if (stack.isEmpty()) {
+					return false;
+				}
+				Event top = stack.pop();
+				model = models.pop();
+				done.clear(top.operation.id);
+				top.unlift();
+				event = top.next;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * All threads update the same keys, one in four threads iterates
+	 * instead. Every thread records what it did, and the histories with a
+	 * retrieve of every key at the end must be linearizable.
+	 */
+	private static void sharedKeys(int threads, int ops, int keys, long seed) throws InterruptedException {
+		ConcurrentBinarySearchTree<Integer> tree = new ConcurrentBinarySearchTree<>();
+		List<List<Operation>> histories = new ArrayList<>();
+		for (int t = 0; t < threads; ++t) {
+			histories.add(new ArrayList<>());
+		}
+		run(threads, t -> {
+			SplittableRandom random = new SplittableRandom(~seed - t);
+			if (t % 4 == 3) {
+				for (int i = 0; i < ops / keys + 1; ++i) {
+					ascending(tree);
+					tree.getNumLeafNodes();
+					tree.getSingleParent();
+					tree.getCousins(random.nextInt(keys));
+				}
+				return;
+			}
+			List<Operation> history = histories.get(t);
+			for (int i = 0; i < ops; ++i) {
+				int key = random.nextInt(keys);
+				int op = random.nextInt(4);
+				long call = System.nanoTime();
+				boolean result;
+				if (op == INSERT) {
+					result = tree.insert(key);
+				} else if (op == DELETE) {
+					result = tree.delete(key);
+				} else if (op == RETRIEVE) {
+					result = tree.retrieve(key);
+				} else {
+					tree.getNodeLevel(key);
+					tree.findSibling(key);
+					continue;
+				}
+				history.add(new Operation(op, key, result, call, System.nanoTime()));
+			}
+		});
+
+		List<List<Operation>> byKey = new ArrayList<>();
+		boolean[] present = new boolean[keys];
+		for (int key = 0; key < keys; ++key) {
+			byKey.add(new ArrayList<>());
+			long call = System.nanoTime();
+			present[key] = tree.retrieve(key);
+			byKey.get(key).add(new Operation(RETRIEVE, key, present[key], call, System.nanoTime()));
+		}
+		for (List<Operation> history : histories) {
+			for (Operation operation : history) {
+				byKey.get(operation.key).add(operation);
+			}
+		}
+		for (int key = 0; key < keys; ++key) {
+			check(linearizable(byKey.get(key)), "the " + byKey.get(key).size() + " operations on key " + key
+					+ " are not linearizable");
+		}
+		verify(tree, present);
+	}
+
+	/**
+	 * Returns the value of {@code -name} in {@code args}, or
+	 * {@code fallback}.
+	 */
+	private static String option(String[] args, String name, String fallback) {
+		for (int i = 0; i + 1 < args.length; ++i) {
+			if (args[i].equals("-" + name)) {
+				return args[i + 1];
+			}
+		}
+		return fallback;
+	}
+
+	public static void main(String[] args) throws InterruptedException {
+		int threads = Integer.parseInt(option(args, "threads", "8"));
+		int ops = Integer.parseInt(option(args, "ops", "200000"));
+		int keys = Integer.parseInt(option(args, "keys", "1024"));
+		long seed = Long.parseLong(option(args, "seed", "42"));
+		if (threads < 1 || keys < threads) {
+			throw new IllegalArgumentException("need at least one thread and one key per thread");
+		}
+		long start = System.nanoTime();
+		ownKeys(threads, ops, keys, seed);
+		sharedKeys(threads, ops, keys, seed);
+		System.out.println(String.format(Locale.ROOT, "ok: %d threads, %d operations each, %d keys, %.1f s",
+				threads, ops, keys, (System.nanoTime() - start) / 1e9));
+	}
+}
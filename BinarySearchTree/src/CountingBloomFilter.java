@@ -0,0 +1,174 @@
+import java.util.function.ToIntFunction;
+
+/**
+ * A counting Bloom filter: a set of keys that may answer "maybe" for a key
+ * that was never added, but never answers "no" for a key that was added
+ * and not removed. Each key increments k of m 4-bit counters chosen by
+ * double hashing, so a key can also be removed again by decrementing
+ * them. A counter that reaches 15 stays at 15, which can only cause false
+ * positives. m and k are chosen for the capacity and the false positive
+ * rate, m is rounded up to a power of two. {@link BinarySearchTree} puts
+ * one in front of its searches, see
+ * {@link BinarySearchTree#enableFilter(double)}.
+ * @author Chihyuan Tung
+ *
+ * @param <T> the key type
+ */
+public final class CountingBloomFilter<T> {
+
+	private static final int MAX = 15;
+
+	private final long[] counters;
+	private final int mask;
+	private final int hashes;
+	private final int capacity;
+	private final double falsePositiveRate;
+	private final ToIntFunction<? super T> hash;
+	private int count;
+
+	/**
+	 * Constructor of a filter for up to {@code capacity} keys.
+	 * @param capacity the number of keys the rate is computed for
+	 * @param falsePositiveRate the wanted rate of false "maybe" answers at
+	 * capacity, between 0 and 1
+	 * @param hash the hash of a key, consistent with the equality of the
+	 * keys
+	 * @throws IllegalArgumentException if the rate is not between 0 and 1
+	 */
+	public CountingBloomFilter(int capacity, double falsePositiveRate, ToIntFunction<? super T> hash) {
+		if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+			throw new IllegalArgumentException("the false positive rate must be between 0 and 1");
+		}
+		this.capacity = Math.max(1, capacity);
+		this.falsePositiveRate = falsePositiveRate;
+		this.hash = hash;
+		//m = -n ln p / ln^2 2 counters and k = m / n ln 2 hashes
+		double bits = -this.capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+		int m = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(64, Math.ceil(bits))) - 1) << 1;
+		this.mask = m - 1;
+		this.hashes = Math.max(1, (int) Math.round(bits / this.capacity * Math.log(2)));
+		this.counters = new long[m >>> 4];
+	}
+
+	/**
+	 * Spreads the hash of {@code key} over 64 bits, the low half is the
+	 * first index and the high half, made odd, the step between the
+	 * indexes.
+	 */
+	private long mix(T key) {
+		long h = this.hash.applyAsInt(key) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		h *= 0xD6E8FEB86659FD93L;
+		return h ^ (h >>> 32);
+	}
+
+	private int get(int index) {
+		return (int) (this.counters[index >>> 4] >>> ((index & 15) << 2)) & MAX;
+	}
+
+	private void add(int index, int delta) {
+		this.counters[index >>> 4] += (long) delta << ((index & 15) << 2);
+	}
+
+	/**
+	 * Returns {@code false} if {@code key} is certainly not in the filter,
+	 * {@code true} if it may be.
+	 * @param key the key
+	 * @return whether the key may have been added
+	 */
+	public boolean mightContain(T key) {
+		long h = mix(key);
+		int index = (int) h;
+		int step = (int) (h >>> 32) | 1;
+		for (int i = 0; i < this.hashes; ++i) {
+			if (get(index & this.mask) == 0) {
+				return false;
+			}
+			index += step;
+		}
+		return true;
+	}
+
+	/**
+	 * Adds {@code key}, which must not be in the filter already.
+	 * @param key the key
+	 */
+	public void add(T key) {
+		long h = mix(key);
+		int index = (int) h;
+		int step = (int) (h >>> 32) | 1;
+		for (int i = 0; i < this.hashes; ++i) {
+			if (get(index & this.mask) < MAX) {
+				add(index & this.mask, 1);
+			}
+			index += step;
+		}
+		this.count += 1;
+	}
+
+	/**
+	 * Removes {@code key}, which must have been added.
+	 * @param key the key
+	 */
+	public void remove(T key) {
+		long h = mix(key);
+		int index = (int) h;
+		int step = (int) (h >>> 32) | 1;
+		for (int i = 0; i < this.hashes; ++i) {
+			int value = get(index & this.mask);
+			if (value > 0 && value < MAX) {
+				add(index & this.mask, -1);
+			}
+			index += step;
+		}
+		this.count -= 1;
+	}
+
+	/**
+	 * Returns the number of keys in the filter.
+	 * @return keys
+	 */
+	public int count() {
+		return this.count;
+	}
+
+	/**
+	 * Returns the number of keys the filter was sized for.
+	 * @return capacity
+	 */
+	public int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Returns the false positive rate the filter was sized for.
+	 * @return the rate at capacity
+	 */
+	public double falsePositiveRate() {
+		return this.falsePositiveRate;
+	}
+
+	/**
+	 * Returns the hash function of the keys.
+	 * @return hash
+	 */
+	ToIntFunction<? super T> hash() {
+		return this.hash;
+	}
+
+	/**
+	 * Returns the number of counters.
+	 * @return m
+	 */
+	public int counters() {
+		return this.mask + 1;
+	}
+
+	/**
+	 * Returns the number of counters per key.
+	 * @return k
+	 */
+	public int hashes() {
+		return this.hashes;
+	}
+}
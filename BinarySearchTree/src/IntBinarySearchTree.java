@@ -0,0 +1,476 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+
+/**
+ * This class represent a binary search tree of {@code int} keys. It offers
+ * the same operations as {@code BinarySearchTree<Integer>} but keeps the
+ * keys unboxed and compares them as primitives. The nodes live in a
+ * {@link NodePool} that does the reshaping and the walks, the key of node
+ * {@code i} is {@code keys[i]} of the pool.
+ * @author Chihyuan Tung
+ *
+ */
+public class IntBinarySearchTree {
+
+	private static final int NIL = NodePool.NIL;
+
+	private final Keys pool;
+	private int root;
+	private final BinarySearchTree.Mode mode;
+
+	public IntBinarySearchTree() {
+		this(BinarySearchTree.Mode.PLAIN);
+	}
+
+	/**
+	 * Constructor of the class.
+	 * @param mode the balancing mode of the tree
+	 */
+	public IntBinarySearchTree(BinarySearchTree.Mode mode) {
+		if (mode != BinarySearchTree.Mode.PLAIN && mode != BinarySearchTree.Mode.AVL) {
+			throw new IllegalArgumentException("mode must be PLAIN or AVL");
+		}
+		this.pool = new Keys();
+		this.root = NIL;
+		this.mode = mode;
+	}
+
+	/**
+	 * Returns mode
+	 * @return the balancing mode of the tree
+	 */
+	public BinarySearchTree.Mode getMode() {
+		return this.mode;
+	}
+
+	/**
+	 * Returns the number of bytes used per key by the node arrays and the
+	 * key array, including unused capacity.
+	 * @return bytes per key
+	 */
+	public double bytesPerKey() {
+		return this.pool.bytesPerKey(Integer.BYTES);
+	}
+
+	/**
+	 * Allocates a node for {@code key}.
+	 * @param key the key of the node
+	 * @return the index of the node
+	 */
+	private int newNode(int key) {
+		int node = this.pool.allocate();
+		this.pool.keys[node] = key;
+		return node;
+	}
+
+	private boolean balanced() {
+		return this.mode == BinarySearchTree.Mode.AVL;
+	}
+
+	/**
+	 * Given the key, returns the node that contains the same key in the
+	 * tree if presented, otherwise, return {@code NIL}.
+	 * @param key the key
+	 * @return the node that contains the same key
+	 */
+	private int findNode(int key) {
+		int node = this.root;
+		while (node != NIL) {
+			int cmp = Integer.compare(key, this.pool.keys[node]);
+			if (cmp < 0) {
+				node = this.pool.left(node);
+			} else if (cmp > 0) {
+				node = this.pool.right(node);
+			} else {
+				return node;
+			}
+		}
+		return NIL;
+	}
+
+	/**
+	 * Given the key, search the sibling of the given key if presented,
+	 * otherwise, return null. Sibling is the node that share the same
+	 * parent node.
+	 * @param key the key of the node to be searched for sibling
+	 * @return the key if its sibling node
+	 */
+	public Integer findSibling(int key) {
+		int upper = findUpperNode(key);
+		if (upper == NIL || this.pool.left(upper) == NIL || this.pool.right(upper) == NIL) {
+			return null;
+		} else if (Integer.compare(this.pool.keys[this.pool.left(upper)], key) == 0) {
+			return this.pool.keys[this.pool.right(upper)];
+		} else {
+			return this.pool.keys[this.pool.left(upper)];
+		}
+	}
+
+	/**
+	 * Given the key, search for the parent node of the node that contains
+	 * {@code key}. Returns its parent node if presented, otherwise, returns
+	 * {@code NIL}.
+	 * @param key the key of the the child node
+	 * @return the parent node if presented
+	 */
+	private int findUpperNode(int key) {
+		int upper = NIL;
+		int node = this.root;
+		while (node != NIL) {
+			int cmp = Integer.compare(key, this.pool.keys[node]);
+			if (cmp == 0) {
+				return upper;
+			}
+			upper = node;
+			node = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+		}
+		return NIL;
+	}
+
+	/**
+	 * Insert {@code key} into the tree, then walk back up the search path
+	 * to update the heights and rebalance if the tree is balanced.
+	 * @param key the key to be inserted.
+	 */
+	public void insert(int key) {
+		if (!add(key)) {
+			System.out.println("The item already exsits in the tree.");
+		}
+	}
+
+	/**
+	 * Insert {@code key} into the tree without printing anything.
+	 * @param key the key to be inserted
+	 * @return {@code true} if the key was not presented before
+	 */
+	public boolean add(int key) {
+		if (this.root == NIL) {
+			this.root = newNode(key);
+			return true;
+		}
+
+		this.pool.clearPath();
+		int node = this.root;
+		while (true) {
+			this.pool.push(node);
+			int cmp = Integer.compare(key, this.pool.keys[node]);
+			if (cmp == 0) {
+				return false;
+			}
+			int child = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+			if (child == NIL) {
+				this.root = this.pool.attach(newNode(key), cmp < 0, balanced());
+				return true;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Replace the content of the tree by {@code keys[0, length)}, which
+	 * must be sorted in strictly ascending order, see
+	 * {@link BinarySearchTree#buildFromSorted}.
+	 * @param keys the keys in ascending order
+	 * @param length the number of keys
+	 * @throws IllegalArgumentException if the keys are not strictly
+	 * ascending
+	 */
+	public void buildFromSorted(int[] keys, int length) {
+		for (int i = 1; i < length; ++i) {
+			if (Integer.compare(keys[i - 1], keys[i]) >= 0) {
+				throw new IllegalArgumentException("keys are not strictly ascending at index " + i);
+			}
+		}
+		rebuild(keys, length);
+	}
+
+	/**
+	 * Insert the keys {@code keys[0, length)} into the tree, duplicates
+	 * are ignored, see {@link BinarySearchTree#insertAll}. The array is
+	 * not modified.
+	 * @param keys the keys to be inserted
+	 * @param length the number of keys
+	 */
+	public void insertAll(int[] keys, int length) {
+		int[] batch = Arrays.copyOf(keys, length);
+		if (!isSorted(batch, length)) {
+			Arrays.sort(batch);
+		}
+		int m = unique(batch, length);
+		if (NodePool.insertOneByOne(size(), m)) {
+			for (int i = 0; i < m; ++i) {
+				add(batch[i]);
+			}
+			return;
+		}
+		int[] order = this.pool.merge(this.root, m, (node, i) -> Integer.compare(this.pool.keys[node], batch[i]));
+		int[] merged = new int[order.length];
+		for (int i = 0; i < order.length; ++i) {
+			merged[i] = order[i] >= 0 ? this.pool.keys[order[i]] : batch[~order[i]];
+		}
+		rebuild(merged, merged.length);
+	}
+
+	private static boolean isSorted(int[] keys, int length) {
+		for (int i = 1; i < length; ++i) {
+			if (Integer.compare(keys[i - 1], keys[i]) > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes the duplicates of the sorted {@code keys[0, length)} in place.
+	 * @return the number of distinct keys now at the front of {@code keys}
+	 */
+	private static int unique(int[] keys, int length) {
+		int count = 0;
+		for (int i = 0; i < length; ++i) {
+			if (count == 0 || Integer.compare(keys[count - 1], keys[i]) != 0) {
+				keys[count++] = keys[i];
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the keys to {@code file} in in-order, in the binary format of
+	 * {@link TreeFile}, see {@link BinarySearchTree#save}.
+	 * @param file the file to be written
+	 * @throws IOException if the file cannot be written
+	 */
+	public void save(Path file) throws IOException {
+		try (TreeFile.Writer out = new TreeFile.Writer(file, TreeFile.INT, size())) {
+			PrimitiveIterator.OfInt it = iterator();
+			while (it.hasNext()) {
+				out.putInt(it.nextInt());
+			}
+		}
+	}
+
+	/**
+	 * Replace the content of the tree by the keys of a file written by
+	 * {@link #save}, see {@link BinarySearchTree#load}.
+	 * @param file the file to be read
+	 * @throws IOException if the file cannot be read or does not hold
+	 * int keys
+	 */
+	public void load(Path file) throws IOException {
+		try (TreeFile.Reader in = new TreeFile.Reader(file)) {
+			if (in.type() != TreeFile.INT && in.type() != TreeFile.EMPTY) {
+				throw new IOException(file + " does not hold int keys");
+			}
+			int[] loaded = new int[in.count()];
+			in.readInts(loaded);
+			rebuild(loaded, loaded.length);
+		}
+	}
+
+	/**
+	 * Drops every node and builds a perfectly balanced tree from the
+	 * sorted distinct keys {@code keys[0, length)}.
+	 */
+	private void rebuild(int[] keys, int length) {
+		this.root = this.pool.rebuild(length);
+		System.arraycopy(keys, 0, this.pool.keys, 0, length);
+	}
+
+	/**
+	 * Given the key and delete it from the tree. A leaf is unlinked from
+	 * its parent, a node with one child is replaced by that child, and a
+	 * node with two children takes the key of its in-order predecessor
+	 * which is then unlinked instead. The slot of the unlinked node goes
+	 * back to the pool.
+	 * @param key the key to be deleted
+	 */
+	public void delete(int key) {
+		if (this.root == NIL) {
+			System.out.println("You cannot delete from an empty tree");
+		} else if (!remove(key)) {
+			System.out.println("The item is not present in the tree");
+		}
+	}
+
+	/**
+	 * Delete {@code key} from the tree without printing anything, see
+	 * {@link #delete}.
+	 * @param key the key to be deleted
+	 * @return {@code true} if the key was presented
+	 */
+	public boolean remove(int key) {
+		this.pool.clearPath();
+		int target = this.root;
+		int cmp;
+		while (target != NIL && (cmp = Integer.compare(key, this.pool.keys[target])) != 0) {
+			this.pool.push(target);
+			target = cmp < 0 ? this.pool.left(target) : this.pool.right(target);
+		}
+		if (target == NIL) {
+			return false;
+		}
+		this.root = this.pool.unlink(target, balanced());
+		return true;
+	}
+
+	/**
+	 * Given the {@code item} and check if it is presented in the tree.
+	 * @param item the item to be searched
+	 * @return {@code true} if found, {@code false} otherwise
+	 */
+	public boolean retrieve(int item) {
+		return findNode(item) != NIL;
+	}
+
+	/**
+	 * Print the keys in in-order with a Morris traversal that needs no
+	 * stack, see {@link BinarySearchTree#inOrder()}.
+	 */
+	public void inOrder() {
+		this.pool.morris(this.root, node -> System.out.print(this.pool.keys[node] + " "));
+	}
+
+	/**
+	 * Returns an iterator over the keys in in-order that does not box
+	 * them, see {@link BinarySearchTree#iterator()}. The tree must not be
+	 * modified while the iterator is in use.
+	 * @return an in-order iterator
+	 */
+	public PrimitiveIterator.OfInt iterator() {
+		return new InOrderIterator();
+	}
+
+	/**
+	 * Returns the keys of every node that only has one of the children, in
+	 * in-order. Subtrees without any single parent are not visited.
+	 * @return the keys of the single parents
+	 */
+	public int[] getSingleParent() {
+		int[] nodes = this.pool.singleParentNodes(this.root);
+		int[] result = new int[nodes.length];
+		for (int i = 0; i < nodes.length; ++i) {
+			result[i] = this.pool.keys[nodes[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of nodes that only have one child.
+	 * @return the number of single parents
+	 */
+	public int getNumSingleParents() {
+		return this.pool.singleParents(this.root);
+	}
+
+	/**
+	 * Returns the number of leaf nodes.
+	 * @return the number of leaf nodes
+	 */
+	public int getNumLeafNodes() {
+		return this.pool.leaves(this.root);
+	}
+
+	/**
+	 * Returns the number of keys in the tree.
+	 * @return size
+	 */
+	public int size() {
+		return this.pool.subtreeSize(this.root);
+	}
+
+	/**
+	 * Returns the height of the tree, 0 for an empty tree.
+	 * @return height
+	 */
+	public int height() {
+		return this.pool.height(this.root);
+	}
+
+	/**
+	 * Given a key then returns the level which the key belonging in the tree.
+	 * @param key the key
+	 * @return the level belonging, -1 if the key is not presented
+	 */
+	public int getNodeLevel(int key) {
+		int level = 0;
+		int node = this.root;
+		while (node != NIL) {
+			int cmp = Integer.compare(key, this.pool.keys[node]);
+			if (cmp == 0) {
+				return level;
+			}
+			node = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+			level += 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Given a key then returns the keys of its cousins from left to right,
+	 * see {@link BinarySearchTree#getCousins}.
+	 * @param key the key of the targeting node
+	 * @return the keys of the cousins, empty if the key is not presented
+	 */
+	public int[] getCousins(int key) {
+		int upper = NIL;
+		int node = this.root;
+		int level = 0;
+		while (node != NIL) {
+			int cmp = Integer.compare(key, this.pool.keys[node]);
+			if (cmp == 0) {
+				break;
+			}
+			upper = node;
+			node = cmp < 0 ? this.pool.left(node) : this.pool.right(node);
+			level += 1;
+		}
+		if (node == NIL || upper == NIL) {
+			return new int[0];
+		}
+
+		int[] nodes = this.pool.cousinNodes(this.root, upper, level);
+		int[] cousins = new int[nodes.length];
+		for (int i = 0; i < nodes.length; ++i) {
+			cousins[i] = this.pool.keys[nodes[i]];
+		}
+		return cousins;
+	}
+
+	/**
+	 * In-order iterator that reads the keys of the nodes returned by a
+	 * {@link NodePool.InOrder} walk.
+	 */
+	private final class InOrderIterator implements PrimitiveIterator.OfInt {
+		private final NodePool.InOrder walk = pool.new InOrder(root);
+
+		@Override
+		public boolean hasNext() {
+			return this.walk.hasNext();
+		}
+
+		@Override
+		public int nextInt() {
+			return pool.keys[this.walk.next()];
+		}
+	}
+
+	/**
+	 * The node pool of the tree, the key of node {@code i} is
+	 * {@code keys[i]}.
+	 */
+	private static final class Keys extends NodePool {
+		private int[] keys = new int[capacity()];
+
+		@Override
+		protected void resize(int capacity) {
+			this.keys = Arrays.copyOf(this.keys, capacity);
+		}
+
+		@Override
+		protected void copyKey(int from, int to) {
+			this.keys[to] = this.keys[from];
+		}
+	}
+}
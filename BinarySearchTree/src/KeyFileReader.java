@@ -0,0 +1,219 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+
+/**
+ * Reads whitespace separated keys from a file. The file is memory-mapped
+ * one window at a time, so files larger than the heap can be read, and
+ * numbers are parsed straight from the mapped bytes without building a
+ * String per token. Every line is read and any run of spaces, tabs,
+ * carriage returns or newlines separates two tokens.
+ * @author Chihyuan Tung
+ *
+ */
+public final class KeyFileReader implements Closeable {
+
+	/** size of one mapped window, a token must be shorter than this */
+	private static final int WINDOW = 64 << 20;
+	/** 10^i for every i for which 10^i is an exact double */
+	private static final double[] POWERS_OF_TEN = new double[23];
+	/** mantissas below 2^53 are exact doubles */
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; ++i) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	/**
+	 * Receives the bytes of one token, {@code buffer[start, end)}.
+	 */
+	private interface TokenHandler {
+		void token(MappedByteBuffer buffer, int start, int end);
+	}
+
+	private final FileChannel channel;
+	/** scratch buffer for the bytes of a token that needs a String */
+	private byte[] scratch = new byte[64];
+
+	/**
+	 * Constructor of the class, opens the file for reading.
+	 * @param path the file to be read
+	 * @throws IOException if the file cannot be opened
+	 */
+	public KeyFileReader(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Parses every token as an {@code int} and passes it to {@code action}.
+	 * @param action receives the keys in file order
+	 * @throws IOException if the file cannot be read
+	 * @throws NumberFormatException if a token is not an int
+	 */
+	public void forEachInt(IntConsumer action) throws IOException {
+		scan((buffer, start, end) -> action.accept(parseInt(buffer, start, end)));
+	}
+
+	/**
+	 * Parses every token as a {@code double} and passes it to
+	 * {@code action}.
+	 * @param action receives the keys in file order
+	 * @throws IOException if the file cannot be read
+	 * @throws NumberFormatException if a token is not a double
+	 */
+	public void forEachDouble(DoubleConsumer action) throws IOException {
+		scan((buffer, start, end) -> action.accept(parseDouble(buffer, start, end)));
+	}
+
+	/**
+	 * Decodes every token as UTF-8 and passes it to {@code action}.
+	 * @param action receives the keys in file order
+	 * @throws IOException if the file cannot be read
+	 */
+	public void forEachString(Consumer<String> action) throws IOException {
+		scan((buffer, start, end) -> action.accept(text(buffer, start, end)));
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.channel.close();
+	}
+
+	private static boolean isSeparator(byte b) {
+		return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+	}
+
+	/**
+	 * Maps the file window by window and hands every token to
+	 * {@code handler}. A token cut by the end of a window is read again
+	 * from the start of the next window.
+	 * @param handler receives the tokens
+	 * @throws IOException if the file cannot be read
+	 */
+	private void scan(TokenHandler handler) throws IOException {
+		long fileSize = this.channel.size();
+		long position = 0;
+		while (position < fileSize) {
+			int length = (int) Math.min(WINDOW, fileSize - position);
+			boolean last = position + length == fileSize;
+			MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			int start = -1;
+			int i = 0;
+			for (; i < length; ++i) {
+				if (isSeparator(buffer.get(i))) {
+					if (start >= 0) {
+						handler.token(buffer, start, i);
+						start = -1;
+					}
+				} else if (start < 0) {
+					start = i;
+				}
+			}
+			if (start >= 0 && last) {
+				handler.token(buffer, start, length);
+				start = -1;
+			}
+			if (start == 0) {
+				throw new IOException("token longer than " + WINDOW + " bytes at offset " + position);
+			}
+			position += start >= 0 ? start : length;
+		}
+	}
+
+	/**
+	 * Parses {@code buffer[start, end)} as a decimal int with an optional
+	 * sign.
+	 */
+	private int parseInt(MappedByteBuffer buffer, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			i += 1;
+		}
+		if (i == end) {
+			throw new NumberFormatException("For input string: \"" + text(buffer, start, end) + "\"");
+		}
+		//accumulate negatively so that Integer.MIN_VALUE fits
+		long value = 0;
+		for (; i < end; ++i) {
+			int digit = buffer.get(i) - '0';
+			if (digit < 0 || digit > 9) {
+				throw new NumberFormatException("For input string: \"" + text(buffer, start, end) + "\"");
+			}
+			value = value * 10 - digit;
+			if (value < Integer.MIN_VALUE) {
+				throw new NumberFormatException("For input string: \"" + text(buffer, start, end) + "\"");
+			}
+		}
+		if (!negative && value == Integer.MIN_VALUE) {
+			throw new NumberFormatException("For input string: \"" + text(buffer, start, end) + "\"");
+		}
+		return (int) (negative ? value : -value);
+	}
+
+	/**
+	 * Parses {@code buffer[start, end)} as a double. Plain decimals such
+	 * as {@code -12.75} whose digits fit in an exact double mantissa are
+	 * computed directly as mantissa / 10^k, which is correctly rounded
+	 * because both operands are exact. Every other form, such as
+	 * exponents or NaN, goes through {@link Double#parseDouble}.
+	 */
+	private double parseDouble(MappedByteBuffer buffer, int start, int end) {
+		int i = start;
+		boolean negative = false;
+		if (buffer.get(i) == '-' || buffer.get(i) == '+') {
+			negative = buffer.get(i) == '-';
+			i += 1;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int fraction = -1;
+		for (; i < end; ++i) {
+			byte b = buffer.get(i);
+			if (b >= '0' && b <= '9') {
+				mantissa = mantissa * 10 + (b - '0');
+				digits += 1;
+				if (fraction >= 0) {
+					fraction += 1;
+				}
+				if (mantissa >= MAX_EXACT_MANTISSA) {
+					break;
+				}
+			} else if (b == '.' && fraction < 0) {
+				fraction = 0;
+			} else {
+				break;
+			}
+		}
+		if (i < end || digits == 0 || fraction >= POWERS_OF_TEN.length) {
+			return Double.parseDouble(text(buffer, start, end));
+		}
+		double value = fraction > 0 ? mantissa / POWERS_OF_TEN[fraction] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Decodes {@code buffer[start, end)} as UTF-8.
+	 */
+	private String text(MappedByteBuffer buffer, int start, int end) {
+		int length = end - start;
+		if (this.scratch.length < length) {
+			this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+		}
+		for (int i = 0; i < length; ++i) {
+			this.scratch[i] = buffer.get(start + i);
+		}
+		return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+	}
+}
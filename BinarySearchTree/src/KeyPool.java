@@ -0,0 +1,297 @@
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The {@link NodePool} of a {@link BinarySearchTree}: the keys are kept in
+ * an {@code Object[]} beside the arrays of the pool, together with the
+ * version of every slot in {@code PERSISTENT} mode and the normalized key
+ * for a tree with a normalizer. The other modes do not pay for either.
+ * <p>
+ * A tree that is split off another one, and in {@code PERSISTENT} mode a
+ * snapshot, shares the slots of the tree it came from. In
+ * {@code PERSISTENT} mode every writer has its own version, a slot carries
+ * the version of the writer that created it, and {@link #own} copies a
+ * slot of another version before it is changed. A node that is unlinked
+ * but shared cannot be released at once; instead the trees that use the
+ * pool register themselves, and when the pool runs out of slots at the
+ * start of an update, {@link #begin} releases every slot that none of them
+ * can reach any more. That is how old versions are reclaimed once no
+ * snapshot refers to them.
+ * <p>
+ * A snapshot reads through a view, {@link #view()}, which keeps the arrays
+ * of the moment it was made. The writer only ever changes slots of its own
+ * version and only reuses slots that no registered tree can reach, so the
+ * view stays valid while the pool grows. The trees of one pool must not be
+ * changed by several threads at the same time.
+ * @author Chihyuan Tung
+ *
+ * @param <T> type parameter
+ */
+final class KeyPool<T extends Comparable<T>> extends NodePool {
+
+	private Object[] keys;
+	/** the normalized key of every slot, {@code null} without a normalizer */
+	private long[] normalized;
+	/** the version of the writer that created every slot, only if persistent */
+	private int[] versions;
+	/** the pool whose slots this one reads, itself unless it is a view */
+	private final KeyPool<T> source;
+	/** whether slots are shared between versions */
+	private final boolean persistent;
+	/** the version of the running update */
+	private int version;
+	/** the next version to be handed out */
+	private int nextVersion;
+	/** the trees that use the pool, only kept by the source */
+	private final List<WeakReference<BinarySearchTree<T>>> trees;
+	/** set when a shared node was unlinked, so a slot may be unreachable */
+	private boolean garbage;
+
+	/**
+	 * Constructor of the class.
+	 * @param persistent whether the trees of the pool share nodes between
+	 * versions
+	 * @param normalized whether the slots keep a normalized key
+	 */
+	KeyPool(boolean persistent, boolean normalized) {
+		this.keys = new Object[capacity()];
+		this.normalized = normalized ? new long[capacity()] : null;
+		this.versions = persistent ? new int[capacity()] : null;
+		this.source = this;
+		this.persistent = persistent;
+		this.version = 0;
+		this.nextVersion = 1;
+		this.trees = new ArrayList<>();
+		this.garbage = false;
+	}
+
+	/**
+	 * Constructor of a read-only view of {@code pool}.
+	 * @param pool the pool to be viewed
+	 */
+	private KeyPool(KeyPool<T> pool) {
+		super(pool);
+		this.keys = pool.keys;
+		this.normalized = pool.normalized;
+		this.versions = null;
+		this.source = pool;
+		this.persistent = pool.persistent;
+		this.trees = null;
+	}
+
+	/**
+	 * Returns a read-only view of the pool as it is now, for a snapshot.
+	 * @return the view
+	 */
+	KeyPool<T> view() {
+		return new KeyPool<T>(this);
+	}
+
+	/**
+	 * Returns the pool whose slots this one reads, itself unless it is a
+	 * view. Trees whose pools have the same source share their slots.
+	 * @return the source
+	 */
+	KeyPool<T> source() {
+		return this.source;
+	}
+
+	@SuppressWarnings("unchecked")
+	T key(int node) {
+		return (T) this.keys[node];
+	}
+
+	long normalized(int node) {
+		return this.normalized == null ? 0 : this.normalized[node];
+	}
+
+	/**
+	 * Sets the key of a new node.
+	 * @param node the node
+	 * @param key the key
+	 * @param normalized the normalized key, ignored without a normalizer
+	 */
+	void setKey(int node, T key, long normalized) {
+		this.keys[node] = key;
+		if (this.normalized != null) {
+			this.normalized[node] = normalized;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes of the arrays of this class per slot.
+	 * @return bytes per slot
+	 */
+	int keyBytes() {
+		return ObjectLayout.REFERENCE + (this.normalized == null ? 0 : Long.BYTES) 
+				+ (this.versions == null ? 0 : Integer.BYTES);
+	}
+
+	@Override
+	protected void resize(int capacity) {
+		this.keys = Arrays.copyOf(this.keys, capacity);
+		if (this.normalized != null) {
+			this.normalized = Arrays.copyOf(this.normalized, capacity);
+		}
+		if (this.versions != null) {
+			this.versions = Arrays.copyOf(this.versions, capacity);
+		}
+	}
+
+	@Override
+	protected void copyKey(int from, int to) {
+		this.keys[to] = this.keys[from];
+		if (this.normalized != null) {
+			this.normalized[to] = this.normalized[from];
+		}
+	}
+
+	@Override
+	int allocate() {
+		int node = super.allocate();
+		if (this.versions != null) {
+			this.versions[node] = this.version;
+		}
+		return node;
+	}
+
+	@Override
+	void release(int node) {
+		//before the slot is free, another task may take it right after
+		this.keys[node] = null;
+		super.release(node);
+	}
+
+	@Override
+	void clear() {
+		Arrays.fill(this.keys, null);
+		super.clear();
+	}
+
+	@Override
+	protected int own(int node) {
+		if (owned(node)) {
+			return node;
+		}
+		int copy = allocate();
+		copyNode(node, copy);
+		copyKey(node, copy);
+		return copy;
+	}
+
+	@Override
+	protected boolean owned(int node) {
+		return this.versions == null || this.versions[node] == this.version;
+	}
+
+	@Override
+	protected void drop(int node) {
+		if (owned(node)) {
+			release(node);
+		} else {
+			this.garbage = true;
+		}
+	}
+
+	/**
+	 * Registers a tree that uses the pool, so that {@link #collect()}
+	 * keeps its nodes. Trees that are gone are pruned now and then.
+	 * @param tree the tree
+	 */
+	void register(BinarySearchTree<T> tree) {
+		if (this.trees.size() >= 16 && Integer.bitCount(this.trees.size()) == 1) {
+			prune();
+		}
+		this.trees.add(new WeakReference<>(tree));
+	}
+
+	/**
+	 * Drops the registrations of trees that were garbage collected or
+	 * moved to another pool.
+	 */
+	private void prune() {
+		this.trees.removeIf(ref -> {
+			BinarySearchTree<T> tree = ref.get();
+			return tree == null || tree.pool().source() != this;
+		});
+	}
+
+	/**
+	 * Returns a version that no tree of the pool uses. Once the versions
+	 * run out, every slot is set to version 0, which no tree owns, and the
+	 * trees are numbered again.
+	 * @return the version
+	 */
+	int newVersion() {
+		if (this.nextVersion == Integer.MAX_VALUE) {
+			Arrays.fill(this.versions, 0);
+			this.nextVersion = 1;
+			prune();
+			for (WeakReference<BinarySearchTree<T>> ref : this.trees) {
+				BinarySearchTree<T> tree = ref.get();
+				if (tree != null && !tree.isFrozen()) {
+					tree.setVersion(this.nextVersion++);
+				}
+			}
+		}
+		return this.nextVersion++;
+	}
+
+	/**
+	 * Starts an update of a tree of the given version that allocates about
+	 * {@code count} nodes. Every registered tree must be complete. If the
+	 * pool has to grow for them and some slots may be unreachable, these
+	 * are released first, and the pool then grows to leave room for half
+	 * its size, so that the next collection is far away.
+	 * @param version the version of the tree
+	 * @param count the number of nodes
+	 */
+	void begin(int version, int count) {
+		this.version = version;
+		if (capacity() - size() < count && (this.garbage || this.persistent && this.trees.size() > 1)) {
+			collect();
+			reserve(Math.max(count, size() >> 1));
+		}
+	}
+
+	/**
+	 * Releases every slot that no registered tree can reach.
+	 */
+	void collect() {
+		prune();
+		int[] roots = new int[this.trees.size()];
+		int count = 0;
+		for (WeakReference<BinarySearchTree<T>> ref : this.trees) {
+			BinarySearchTree<T> tree = ref.get();
+			if (tree != null) {
+				roots[count++] = tree.root();
+			}
+		}
+		collect(roots, count);
+		this.garbage = false;
+	}
+
+	/**
+	 * Returns whether {@code tree}, which has {@code count} nodes, is the
+	 * only non-empty tree of the pool and every slot belongs to it, so
+	 * that the pool may be cleared and rebuilt.
+	 * @param tree the tree
+	 * @param count the size of the tree
+	 * @return {@code true} if nothing else uses a slot
+	 */
+	boolean exclusive(BinarySearchTree<T> tree, int count) {
+		if (size() != count) {
+			return false;
+		}
+		prune();
+		for (WeakReference<BinarySearchTree<T>> ref : this.trees) {
+			BinarySearchTree<T> other = ref.get();
+			if (other != null && other != tree && other.root() != NIL) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
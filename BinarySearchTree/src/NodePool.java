@@ -0,0 +1,847 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.IntBinaryOperator;
+import java.util.function.IntConsumer;
+
+/**
+ * Stores the shape of a binary search tree in parallel {@code int} arrays
+ * instead of one node object per key. A node is an index into the arrays,
+ * its children are indices as well and {@link #NIL} stands for no child.
+ * Deleted slots are kept on a free list and handed out again by
+ * {@link #allocate()}. The pool does all the work that does not look at a
+ * key: it rebalances, unlinks, walks and rebuilds. The keys live in a
+ * subclass that keeps them in its own array indexed by the same slot
+ * numbers and follows the pool through {@link #resize} and
+ * {@link #copyKey}. A subclass that shares nodes between trees, such as
+ * {@link KeyPool} in {@code PERSISTENT} mode, decides through
+ * {@link #own}, {@link #owned} and {@link #drop} which nodes may be
+ * changed in place and which slots may be reused.
+ * @author Chihyuan Tung
+ *
+ */
+public class NodePool {
+
+	/** index that stands for an empty child */
+	public static final int NIL = -1;
+
+	private static final int DEFAULT_CAPACITY = 16;
+	/** bytes used by the pool for one slot: left, right, height, size and leaves */
+	private static final int SLOT_BYTES = 5 * Integer.BYTES;
+
+	private int[] left;
+	private int[] right;
+	private int[] height;
+	private int[] subtreeSize;
+	private int[] leaves;
+	/** first slot of the free list, the list is linked through {@code left} */
+	private int free;
+	/** number of slots that have ever been handed out */
+	private int used;
+	/** number of live nodes */
+	private int size;
+	/** search path of the running insert or delete, from the root down */
+	private int[] path;
+	/** number of nodes on {@code path} */
+	private int depth;
+	/**
+	 * set while the tasks of a parallel merge share the pool, allocate
+	 * and release then lock the pool and must not grow it
+	 */
+	private boolean concurrent;
+
+	public NodePool() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor of the class.
+	 * @param capacity the initial number of slots
+	 */
+	public NodePool(int capacity) {
+		capacity = Math.max(capacity, 1);
+		this.left = new int[capacity];
+		this.right = new int[capacity];
+		this.height = new int[capacity];
+		this.subtreeSize = new int[capacity];
+		this.leaves = new int[capacity];
+		this.free = NIL;
+		this.used = 0;
+		this.size = 0;
+		this.path = new int[32];
+		this.depth = 0;
+	}
+
+	/**
+	 * Constructor of a read-only view of the arrays of {@code pool} as
+	 * they are now. The view keeps reading these arrays when the pool
+	 * grows, so it sees every node that was complete when it was made as
+	 * long as the pool neither changes nor reuses it.
+	 * @param pool the pool to be viewed
+	 */
+	protected NodePool(NodePool pool) {
+		this.left = pool.left;
+		this.right = pool.right;
+		this.height = pool.height;
+		this.subtreeSize = pool.subtreeSize;
+		this.leaves = pool.leaves;
+		this.free = NIL;
+		this.used = pool.used;
+		this.size = pool.size;
+		this.path = null;
+		this.depth = 0;
+	}
+
+	/**
+	 * Called after the arrays grew to {@code capacity} slots. A subclass
+	 * grows its key array here.
+	 * @param capacity the new number of slots
+	 */
+	protected void resize(int capacity) {
+	}
+
+	/**
+	 * Called when a delete moves the key of {@code from} into {@code to}.
+	 * @param from the slot whose key is moved
+	 * @param to the slot that takes the key
+	 */
+	protected void copyKey(int from, int to) {
+	}
+
+	/**
+	 * Returns {@code node} if the running update may change it in place,
+	 * otherwise a copy of it that it may change. The parent still refers
+	 * to {@code node} and has to be relinked to the copy.
+	 * @param node the node to be changed
+	 * @return the node to change instead
+	 */
+	protected int own(int node) {
+		return node;
+	}
+
+	/**
+	 * Returns whether the running update may change {@code node} in place.
+	 * @param node the node
+	 * @return {@code true} unless the node is shared
+	 */
+	protected boolean owned(int node) {
+		return true;
+	}
+
+	/**
+	 * Gives back a node that was unlinked from the tree. Its slot is
+	 * released unless the node is shared.
+	 * @param node the unlinked node
+	 */
+	protected void drop(int node) {
+		release(node);
+	}
+
+	/**
+	 * Returns a slot for a new leaf, reusing a freed slot if there is one.
+	 * @return the index of the new node
+	 */
+	int allocate() {
+		if (this.concurrent) {
+			synchronized (this) {
+				return allocateSlot();
+			}
+		}
+		return allocateSlot();
+	}
+
+	private int allocateSlot() {
+		int node;
+		if (this.free != NIL) {
+			node = this.free;
+			this.free = this.left[node];
+		} else {
+			if (this.used == this.left.length) {
+				if (this.concurrent) {
+					throw new IllegalStateException("the pool was not reserved for the merge");
+				}
+				grow(this.left.length + (this.left.length >> 1) + 1);
+			}
+			node = this.used++;
+		}
+		this.left[node] = NIL;
+		this.right[node] = NIL;
+		this.height[node] = 1;
+		this.subtreeSize[node] = 1;
+		this.leaves[node] = 1;
+		this.size += 1;
+		return node;
+	}
+
+	/**
+	 * Makes sure that {@code capacity} slots fit without growing again.
+	 * @param capacity the number of slots
+	 */
+	void ensureCapacity(int capacity) {
+		if (this.left.length < capacity) {
+			grow(capacity);
+		}
+	}
+
+	/**
+	 * Makes sure that {@code count} nodes can be allocated without growing
+	 * the arrays, which a parallel merge relies on.
+	 * @param count the number of nodes
+	 */
+	void reserve(int count) {
+		ensureCapacity(this.size + count);
+	}
+
+	private void grow(int capacity) {
+		this.left = Arrays.copyOf(this.left, capacity);
+		this.right = Arrays.copyOf(this.right, capacity);
+		this.height = Arrays.copyOf(this.height, capacity);
+		this.subtreeSize = Arrays.copyOf(this.subtreeSize, capacity);
+		this.leaves = Arrays.copyOf(this.leaves, capacity);
+		resize(capacity);
+	}
+
+	/**
+	 * Puts the slot of a deleted node on the free list.
+	 * @param node the index of the deleted node
+	 */
+	void release(int node) {
+		if (this.concurrent) {
+			synchronized (this) {
+				releaseSlot(node);
+			}
+		} else {
+			releaseSlot(node);
+		}
+	}
+
+	private void releaseSlot(int node) {
+		this.left[node] = this.free;
+		this.right[node] = NIL;
+		this.height[node] = 0;
+		this.free = node;
+		this.size -= 1;
+	}
+
+	/**
+	 * Drops every node and keeps the allocated arrays.
+	 */
+	void clear() {
+		this.free = NIL;
+		this.used = 0;
+		this.size = 0;
+	}
+
+	/**
+	 * Switches allocate and release to locking while the tasks of a
+	 * parallel merge share the pool. The slots of the merge must have been
+	 * reserved with {@link #reserve} before.
+	 * @param concurrent whether tasks share the pool
+	 */
+	void setConcurrent(boolean concurrent) {
+		this.concurrent = concurrent;
+	}
+
+	/**
+	 * Returns the number of slots of the arrays.
+	 * @return capacity
+	 */
+	public int capacity() {
+		return this.left.length;
+	}
+
+	/**
+	 * Returns the number of live nodes.
+	 * @return size
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the number of bytes of all slots, counting {@code keyBytes}
+	 * per slot for the arrays of a subclass.
+	 * @param keyBytes the size of the key arrays for one slot
+	 * @return bytes of the arrays
+	 */
+	long bytes(int keyBytes) {
+		return (long) capacity() * (SLOT_BYTES + keyBytes);
+	}
+
+	/**
+	 * Returns the number of bytes the pool uses for every live node,
+	 * counting the unused capacity and {@code keyBytes} for the key array
+	 * of the tree.
+	 * @param keyBytes the size of one key in the key array
+	 * @return bytes per key, 0 for an empty pool
+	 */
+	public double bytesPerKey(int keyBytes) {
+		if (this.size == 0) {
+			return 0;
+		}
+		return (double) bytes(keyBytes) / this.size;
+	}
+
+	int left(int node) {
+		return this.left[node];
+	}
+
+	int right(int node) {
+		return this.right[node];
+	}
+
+	void setLeft(int node, int child) {
+		this.left[node] = child;
+	}
+
+	void setRight(int node, int child) {
+		this.right[node] = child;
+	}
+
+	/**
+	 * Copies the children and counters of {@code from} into {@code to},
+	 * for a subclass that copies a shared node.
+	 * @param from the node to be copied
+	 * @param to the copy
+	 */
+	void copyNode(int from, int to) {
+		this.left[to] = this.left[from];
+		this.right[to] = this.right[from];
+		this.height[to] = this.height[from];
+		this.subtreeSize[to] = this.subtreeSize[from];
+		this.leaves[to] = this.leaves[from];
+	}
+
+	/**
+	 * Returns the height of the subtree rooted at {@code node}, 0 for
+	 * {@link #NIL}.
+	 * @param node the root of the subtree
+	 * @return the height
+	 */
+	int height(int node) {
+		return node == NIL ? 0 : this.height[node];
+	}
+
+	/**
+	 * Returns the number of nodes of the subtree rooted at {@code node}, 0
+	 * for {@link #NIL}.
+	 * @param node the root of the subtree
+	 * @return the size
+	 */
+	int subtreeSize(int node) {
+		return node == NIL ? 0 : this.subtreeSize[node];
+	}
+
+	/**
+	 * Returns the number of leaf nodes of the subtree rooted at
+	 * {@code node}, 0 for {@link #NIL}.
+	 * @param node the root of the subtree
+	 * @return the number of leaf nodes
+	 */
+	int leaves(int node) {
+		return node == NIL ? 0 : this.leaves[node];
+	}
+
+	/**
+	 * Returns the number of single parents of the subtree rooted at
+	 * {@code node}, derived from its size and leaf count.
+	 * @param node the root of the subtree
+	 * @return the number of single parents
+	 */
+	int singleParents(int node) {
+		return node == NIL ? 0 : this.subtreeSize[node] + 1 - 2 * this.leaves[node];
+	}
+
+	/**
+	 * Sets both children of {@code node} and updates its height, size and
+	 * leaf count from them.
+	 */
+	void link(int node, int left, int right) {
+		this.left[node] = left;
+		this.right[node] = right;
+		update(node);
+	}
+
+	/**
+	 * Replaces the child of {@code parent} that is {@code oldChild} by
+	 * {@code newChild}.
+	 */
+	void replaceChild(int parent, int oldChild, int newChild) {
+		if (this.left[parent] == oldChild) {
+			this.left[parent] = newChild;
+		} else {
+			this.right[parent] = newChild;
+		}
+	}
+
+	/**
+	 * Recompute the height, size and leaf count of {@code node} from its
+	 * children.
+	 * @param node the node to be updated
+	 */
+	void update(int node) {
+		int l = this.left[node];
+		int r = this.right[node];
+		this.height[node] = 1 + Math.max(height(l), height(r));
+		this.subtreeSize[node] = 1 + subtreeSize(l) + subtreeSize(r);
+		this.leaves[node] = l == NIL && r == NIL ? 1 : leaves(l) + leaves(r);
+	}
+
+	/**
+	 * Rotate the subtree to the left so that the right child becomes the
+	 * new root of the subtree. Both nodes are taken over with {@link #own}.
+	 * @param node the root of the subtree
+	 * @return the new root of the subtree
+	 */
+	int rotateLeft(int node) {
+		node = own(node);
+		int pivot = own(this.right[node]);
+		this.right[node] = this.left[pivot];
+		this.left[pivot] = node;
+		update(node);
+		update(pivot);
+		return pivot;
+	}
+
+	/**
+	 * Rotate the subtree to the right so that the left child becomes the
+	 * new root of the subtree. Both nodes are taken over with {@link #own}.
+	 * @param node the root of the subtree
+	 * @return the new root of the subtree
+	 */
+	int rotateRight(int node) {
+		node = own(node);
+		int pivot = own(this.left[node]);
+		this.left[node] = this.right[pivot];
+		this.right[pivot] = node;
+		update(node);
+		update(pivot);
+		return pivot;
+	}
+
+	/**
+	 * Restore the AVL property of {@code node} whose counters are up to
+	 * date and whose children are balanced and differ in height by at most
+	 * 2. {@code node} must be owned.
+	 * @param node the root of the subtree
+	 * @return the new root of the subtree
+	 */
+	int rotate(int node) {
+		int balance = height(this.left[node]) - height(this.right[node]);
+		if (balance > 1) {
+			if (height(this.left[this.left[node]]) < height(this.right[this.left[node]])) {
+				//a copy made by the rotation may grow the arrays, so set the child afterwards
+				setLeft(node, rotateLeft(this.left[node]));
+			}
+			return rotateRight(node);
+		} else if (balance < -1) {
+			if (height(this.right[this.right[node]]) < height(this.left[this.right[node]])) {
+				setRight(node, rotateRight(this.right[node]));
+			}
+			return rotateLeft(node);
+		}
+		return node;
+	}
+
+	/**
+	 * Update the counters of {@code node} and restore its AVL property.
+	 * @param node the root of the subtree
+	 * @return the new root of the subtree
+	 */
+	int rebalance(int node) {
+		update(node);
+		return rotate(node);
+	}
+
+	/**
+	 * Starts a new search path.
+	 */
+	void clearPath() {
+		this.depth = 0;
+	}
+
+	/**
+	 * Appends {@code node} to the search path.
+	 * @param node the node to be appended
+	 */
+	void push(int node) {
+		if (this.depth == this.path.length) {
+			this.path = Arrays.copyOf(this.path, this.depth * 2);
+		}
+		this.path[this.depth++] = node;
+	}
+
+	/**
+	 * Returns the number of nodes on the search path.
+	 * @return depth
+	 */
+	int depth() {
+		return this.depth;
+	}
+
+	/**
+	 * Returns the node at {@code depth} on the search path, 0 is the root.
+	 * @param depth the depth
+	 * @return the node
+	 */
+	int pathAt(int depth) {
+		return this.path[depth];
+	}
+
+	/**
+	 * Links the new leaf {@code node} below the last node of the search
+	 * path and walks back up, see {@link #retrace}.
+	 * @param node the new leaf
+	 * @param left whether it becomes the left child
+	 * @param balanced whether to rebalance
+	 * @return the new root of the tree
+	 */
+	int attach(int node, boolean left, boolean balanced) {
+		return retrace(node, left, balanced, -1, NIL);
+	}
+
+	/**
+	 * Unlinks {@code target}, whose ancestors are on the search path. A
+	 * leaf is unlinked from its parent, a node with one child is replaced
+	 * by that child, and a node with two children takes the key of its
+	 * in-order predecessor which is then unlinked instead. The unlinked
+	 * node is given back with {@link #drop}.
+	 * @param target the node to be deleted
+	 * @param balanced whether to rebalance
+	 * @return the new root of the tree
+	 */
+	int unlink(int target, boolean balanced) {
+		int keyAt = -1;
+		int victim = target;
+		boolean left = this.depth > 0 && this.left[this.path[this.depth - 1]] == target;
+		if (this.left[target] != NIL && this.right[target] != NIL) {
+			//replace the key with its predecessor's key then unlink the predecessor
+			keyAt = this.depth;
+			push(target);
+			left = true;
+			victim = this.left[target];
+			while (this.right[victim] != NIL) {
+				push(victim);
+				victim = this.right[victim];
+				left = false;
+			}
+		}
+		int child = this.left[victim] != NIL ? this.left[victim] : this.right[victim];
+		int root = this.depth == 0 ? child : retrace(child, left, balanced, keyAt, victim);
+		drop(victim);
+		return root;
+	}
+
+	/**
+	 * Walks back up the search path after the child of its last node on
+	 * the side given by {@code left} was replaced by {@code sub}. Every
+	 * node on the path is taken over with {@link #own}, linked to the new
+	 * subtree below it and updated and, if {@code balanced}, rotated when
+	 * it lost the AVL property. If {@code keyAt} is not -1, the node at
+	 * that depth takes the key of {@code keyFrom}, which is how delete
+	 * moves a predecessor up.
+	 * @param sub the new subtree below the last node
+	 * @param left whether {@code sub} replaces a left child
+	 * @param balanced whether to rebalance
+	 * @param keyAt the depth of the node whose key is replaced, or -1
+	 * @param keyFrom the node whose key it takes
+	 * @return the new root of the tree
+	 */
+	private int retrace(int sub, boolean left, boolean balanced, int keyAt, int keyFrom) {
+		for (int i = this.depth - 1; i >= 0; --i) {
+			int node = own(this.path[i]);
+			if (i == this.depth - 1 ? left : this.left[node] == this.path[i + 1]) {
+				this.left[node] = sub;
+			} else {
+				this.right[node] = sub;
+			}
+			if (i == keyAt) {
+				copyKey(keyFrom, node);
+			}
+			if (balanced) {
+				sub = rebalance(node);
+			} else {
+				update(node);
+				sub = node;
+			}
+		}
+		return sub;
+	}
+
+	/**
+	 * Returns whether inserting {@code m} keys one by one into a tree of
+	 * {@code n} keys is cheaper than merging them and rebuilding. The
+	 * inserts cost about m log n, a rebuild costs n + m.
+	 * @param n the size of the tree
+	 * @param m the number of keys to be inserted
+	 * @return {@code true} to insert one by one
+	 */
+	static boolean insertOneByOne(int n, int m) {
+		return (long) m * (32 - Integer.numberOfLeadingZeros(n)) < n;
+	}
+
+	/**
+	 * Merges the nodes of the subtree rooted at {@code root} in in-order
+	 * with {@code count} sorted distinct batch keys. A batch key equal to
+	 * the key of a node is left out.
+	 * @param root the root of the subtree
+	 * @param count the number of batch keys
+	 * @param cmp compares the key of a node with the batch key of an index
+	 * @return the merged sequence, a node for a key of the tree and
+	 * {@code ~i} for the batch key {@code i}
+	 */
+	int[] merge(int root, int count, IntBinaryOperator cmp) {
+		int[] merged = new int[subtreeSize(root) + count];
+		InOrder it = new InOrder(root);
+		int n = 0;
+		int i = 0;
+		int next = it.hasNext() ? it.next() : NIL;
+		while (next != NIL || i < count) {
+			int c = next == NIL ? 1 : i == count ? -1 : cmp.applyAsInt(next, i);
+			if (c <= 0) {
+				merged[n++] = next;
+				next = it.hasNext() ? it.next() : NIL;
+				if (c == 0) {
+					i += 1;
+				}
+			} else {
+				merged[n++] = ~i++;
+			}
+		}
+		return n == merged.length ? merged : Arrays.copyOf(merged, n);
+	}
+
+	/**
+	 * Drops every node and builds a perfectly balanced tree of
+	 * {@code count} nodes. The slots are handed out in in-order, so the
+	 * i-th smallest key belongs to slot {@code i}.
+	 * @param count the number of nodes
+	 * @return the root of the tree
+	 */
+	int rebuild(int count) {
+		clear();
+		ensureCapacity(count);
+		return build(0, count);
+	}
+
+	/**
+	 * Build a perfectly balanced subtree from the in-order positions
+	 * {@code [lo, hi)}.
+	 * @return the root of the subtree
+	 */
+	private int build(int lo, int hi) {
+		if (lo >= hi) {
+			return NIL;
+		}
+		int mid = (lo + hi) >>> 1;
+		int left = build(lo, mid);
+		int node = allocate();
+		int right = build(mid + 1, hi);
+		link(node, left, right);
+		return node;
+	}
+
+	/**
+	 * Gives back every node of the subtree rooted at {@code root} with
+	 * {@link #drop}. Below a shared node everything is shared, so the
+	 * walk does not descend into one.
+	 * @param root the root of the subtree
+	 */
+	void dropAll(int root) {
+		if (root == NIL) {
+			return;
+		}
+		int[] stack = new int[height(root) + 1];
+		int depth = 0;
+		stack[depth++] = root;
+		while (depth > 0) {
+			int node = stack[--depth];
+			if (owned(node)) {
+				if (this.left[node] != NIL) {
+					stack[depth++] = this.left[node];
+				}
+				if (this.right[node] != NIL) {
+					stack[depth++] = this.right[node];
+				}
+			}
+			drop(node);
+		}
+	}
+
+	/**
+	 * Releases every live slot that cannot be reached from
+	 * {@code roots[0, count)}, the roots of the trees that still use the
+	 * pool. Nodes reached through several roots are marked once.
+	 * @param roots the roots of the trees
+	 * @param count the number of roots
+	 */
+	void collect(int[] roots, int count) {
+		long[] marked = new long[(this.used + 63) >>> 6];
+		int[] stack = new int[64];
+		for (int i = 0; i < count; ++i) {
+			int depth = 0;
+			if (roots[i] != NIL) {
+				stack[depth++] = roots[i];
+			}
+			while (depth > 0) {
+				int node = stack[--depth];
+				if ((marked[node >>> 6] & 1L << node) != 0) {
+					continue;
+				}
+				marked[node >>> 6] |= 1L << node;
+				if (depth + 2 > stack.length) {
+					stack = Arrays.copyOf(stack, stack.length * 2);
+				}
+				if (this.left[node] != NIL) {
+					stack[depth++] = this.left[node];
+				}
+				if (this.right[node] != NIL) {
+					stack[depth++] = this.right[node];
+				}
+			}
+		}
+		for (int node = 0; node < this.used; ++node) {
+			//a free slot has height 0
+			if (this.height[node] != 0 && (marked[node >>> 6] & 1L << node) == 0) {
+				release(node);
+			}
+		}
+	}
+
+	/**
+	 * Visits the nodes of the subtree rooted at {@code root} in in-order
+	 * with a Morris traversal that needs no stack. The threads are removed
+	 * again before it returns. A shared node is never threaded, a left
+	 * subtree that ends in one is walked with an {@link InOrder} instead.
+	 * @param root the root of the subtree
+	 * @param visit called with every node
+	 */
+	void morris(int root, IntConsumer visit) {
+		int node = root;
+		while (node != NIL) {
+			int left = this.left[node];
+			if (left == NIL) {
+				visit.accept(node);
+				node = this.right[node];
+				continue;
+			}
+			int predecessor = left;
+			while (this.right[predecessor] != NIL && this.right[predecessor] != node) {
+				predecessor = this.right[predecessor];
+			}
+			if (this.right[predecessor] == NIL && !owned(predecessor)) {
+				//a shared node is never threaded, and neither is anything below it
+				InOrder walk = new InOrder(left);
+				while (walk.hasNext()) {
+					visit.accept(walk.next());
+				}
+				visit.accept(node);
+				node = this.right[node];
+			} else if (this.right[predecessor] == NIL) {
+				//thread the predecessor to node, then walk the left subtree
+				this.right[predecessor] = node;
+				node = left;
+			} else {
+				//the left subtree is done, remove the thread
+				this.right[predecessor] = NIL;
+				visit.accept(node);
+				node = this.right[node];
+			}
+		}
+	}
+
+	/**
+	 * Returns every node of the subtree rooted at {@code root} that only
+	 * has one of the children, in in-order. Subtrees without any single
+	 * parent are not visited.
+	 * @param root the root of the subtree
+	 * @return the single parents
+	 */
+	int[] singleParentNodes(int root) {
+		int[] result = new int[singleParents(root)];
+		int count = 0;
+		//a stack of its own, several threads may walk a snapshot
+		int[] stack = new int[height(root)];
+		int depth = 0;
+		int node = root;
+		while (singleParents(node) > 0 || depth > 0) {
+			while (singleParents(node) > 0) {
+				stack[depth++] = node;
+				node = this.left[node];
+			}
+			node = stack[--depth];
+			if ((this.left[node] == NIL) != (this.right[node] == NIL)) {
+				result[count++] = node;
+			}
+			node = this.right[node];
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the nodes of the level {@code level} from left to right
+	 * without the children of {@code upper}, which is on the level above.
+	 * These are the cousins of a child of {@code upper}.
+	 * @param root the root of the tree
+	 * @param upper the parent of the node whose cousins are wanted
+	 * @param level the level of that node
+	 * @return the cousins
+	 */
+	int[] cousinNodes(int root, int upper, int level) {
+		int[] frontier = { root };
+		int width = 1;
+		for (int i = 1; i <= level; ++i) {
+			int[] next = new int[width * 2];
+			int count = 0;
+			for (int j = 0; j < width; ++j) {
+				//the children of the parent are the node itself and its sibling
+				if (i == level && frontier[j] == upper) {
+					continue;
+				}
+				if (this.left[frontier[j]] != NIL) {
+					next[count++] = this.left[frontier[j]];
+				}
+				if (this.right[frontier[j]] != NIL) {
+					next[count++] = this.right[frontier[j]];
+				}
+			}
+			frontier = next;
+			width = count;
+		}
+		return Arrays.copyOf(frontier, width);
+	}
+
+	/**
+	 * In-order walk over the nodes of a subtree, {@code stack} holds the
+	 * nodes whose key has not been returned yet and whose left subtree is
+	 * done. The pool must not change while the walk is in use.
+	 */
+	final class InOrder {
+		private final int[] stack;
+		private int depth = 0;
+
+		InOrder(int root) {
+			this.stack = new int[height(root)];
+			pushLeft(root);
+		}
+
+		private void pushLeft(int node) {
+			while (node != NIL) {
+				this.stack[this.depth++] = node;
+				node = left[node];
+			}
+		}
+
+		boolean hasNext() {
+			return this.depth > 0;
+		}
+
+		int next() {
+			if (this.depth == 0) {
+				throw new NoSuchElementException();
+			}
+			int node = this.stack[--this.depth];
+			pushLeft(right[node]);
+			return node;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Estimates the heap size of objects the way HotSpot lays them out: an
+ * object header, the instance fields, and padding to the object
+ * alignment. The header, reference and alignment sizes are read from the
+ * options of the running JVM, so the numbers follow
+ * {@code -XX:-UseCompressedOops} and friends. A JVM without these options
+ * is assumed to use the 64-bit defaults: a 12 byte header, 4 byte
+ * references and 8 byte alignment.
+ * @author Chihyuan Tung
+ *
+ */
+final class ObjectLayout {
+
+	/** size of a reference field or array element */
+	static final int REFERENCE;
+	/** size of an object header */
+	private static final int HEADER;
+	/** every object starts at a multiple of this */
+	private static final int ALIGNMENT;
+
+	static {
+		boolean compressedOops = true;
+		boolean compressedClasses = true;
+		int alignment = 8;
+		try {
+			HotSpotDiagnosticMXBean hotspot = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+			compressedOops = Boolean.parseBoolean(hotspot.getVMOption("UseCompressedOops").getValue());
+			compressedClasses = Boolean.parseBoolean(hotspot.getVMOption("UseCompressedClassPointers").getValue());
+			alignment = Integer.parseInt(hotspot.getVMOption("ObjectAlignmentInBytes").getValue());
+		} catch (RuntimeException | LinkageError e) {
+			//not HotSpot, keep the defaults
+		}
+		REFERENCE = compressedOops ? 4 : 8;
+		HEADER = compressedClasses ? 12 : 16;
+		ALIGNMENT = alignment;
+	}
+
+	private ObjectLayout() {
+	}
+
+	/**
+	 * Returns the size of one instance of {@code type}, counting the
+	 * fields it inherits.
+	 * @param type the class
+	 * @return bytes per instance
+	 */
+	static int instanceBytes(Class<?> type) {
+		long bytes = HEADER;
+		for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+			for (Field field : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(field.getModifiers())) {
+					bytes += fieldBytes(field.getType());
+				}
+			}
+		}
+		return (int) align(bytes);
+	}
+
+	/**
+	 * Returns the size of an array of {@code length} elements of
+	 * {@code elementBytes} each, e.g. {@link #REFERENCE} for an array of
+	 * objects.
+	 * @param length the number of elements
+	 * @param elementBytes the size of one element
+	 * @return bytes of the array
+	 */
+	static long arrayBytes(int length, int elementBytes) {
+		//the header is followed by the length, the elements start aligned to their size
+		long start = HEADER + Integer.BYTES;
+		start = (start + elementBytes - 1) / elementBytes * elementBytes;
+		return align(start + (long) length * elementBytes);
+	}
+
+	private static int fieldBytes(Class<?> type) {
+		if (type == long.class || type == double.class) {
+			return 8;
+		} else if (type == int.class || type == float.class) {
+			return 4;
+		} else if (type == short.class || type == char.class) {
+			return 2;
+		} else if (type == byte.class || type == boolean.class) {
+			return 1;
+		}
+		return REFERENCE;
+	}
+
+	private static long align(long bytes) {
+		return (bytes + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+	}
+}
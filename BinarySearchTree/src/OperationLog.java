@@ -0,0 +1,493 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only log of the inserts and deletes of a tree, written ahead
+ * so that they survive the end of the process. A record is one byte for
+ * the operation followed by the key: 4 bytes for an int, 8 for a double,
+ * or the length and the UTF-8 bytes of a String, then the CRC-32 of the
+ * operation and the key, so an insert of an int costs 9 bytes. The log
+ * starts with an 8 byte header that names the type of its keys.
+ * Appending only copies the record into a buffer. A background thread
+ * writes the buffer and calls fsync once every {@code syncMillis}, so all
+ * the operations of that interval share one fsync (group commit) and no
+ * operation waits for the disk; a crash loses at most the last interval.
+ * {@link #sync()} makes everything appended so far durable at once.
+ * <p>
+ * On startup the log is replayed on top of the last snapshot written by
+ * {@code save}. The replay ends at the first record that is cut short or
+ * whose checksum does not match, which is where a crash in the middle of
+ * a write leaves the log. {@link #compact} writes a new snapshot and
+ * empties the log, so the log stays about as large as the tree at most.
+ * @author Chihyuan Tung
+ *
+ */
+public final class OperationLog implements Closeable {
+
+	public static final byte INSERT = 1;
+	public static final byte DELETE = 2;
+	/** default interval between two group commits */
+	public static final long DEFAULT_SYNC_MILLIS = 10;
+	/** "WAL2", the first version had no checksums */
+	private static final int MAGIC = 0x57414C32;
+	/** "WAL1" */
+	private static final int MAGIC_V1 = 0x57414C31;
+	private static final int HEADER = 8;
+	/** the log is not compacted before it has this many records */
+	private static final long MIN_COMPACT_RECORDS = 1 << 20;
+	/** pending bytes that are written without waiting for the next commit */
+	private static final int BUFFER = 1 << 16;
+
+	/**
+	 * Writes a snapshot of the tree, e.g. {@code tree::save}.
+	 */
+	public interface Saver {
+		void save(Path file) throws IOException;
+	}
+
+	private final FileChannel channel;
+	/** the type of the keys, as in {@link TreeFile} */
+	private final byte type;
+	private final Thread committer;
+	/** the records not handed to the channel yet, guarded by {@code this} */
+	private ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+	/** checksums the records, guarded by {@code this} */
+	private final CRC32 crc = new CRC32();
+	private long records;
+	/** set when the channel has bytes that are not forced yet */
+	private boolean dirty;
+	/** the first failure of the committer, thrown by the next call */
+	private IOException failure;
+	private volatile boolean closed;
+
+	/**
+	 * Opens {@code file} for appending, creating it if needed, with the
+	 * default commit interval.
+	 * @param file the log file
+	 * @param keyType {@code int.class}, {@code double.class} or
+	 * {@code String.class}
+	 * @throws IOException if the file cannot be opened or logs another
+	 * type of key
+	 */
+	public OperationLog(Path file, Class<?> keyType) throws IOException {
+		this(file, keyType, DEFAULT_SYNC_MILLIS);
+	}
+
+	/**
+	 * Opens {@code file} for appending, creating it if needed. A torn
+	 * record at the end, left by a crash, is cut off.
+	 * @param file the log file
+	 * @param keyType {@code int.class}, {@code double.class} or
+	 * {@code String.class}
+	 * @param syncMillis the interval between two group commits
+	 * @throws IOException if the file cannot be opened or logs another
+	 * type of key
+	 */
+	public OperationLog(Path file, Class<?> keyType, long syncMillis)
+			throws IOException {
+		if (syncMillis <= 0) {
+			throw new IllegalArgumentException("syncMillis must be positive");
+		}
+		this.type = typeOf(keyType);
+		long[] valid = scan(file, this.type, null);
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		if (valid[0] == 0) {
+			writeHeader();
+			syncDirectory(file);
+		} else {
+			this.channel.truncate(valid[0]);
+			this.channel.position(valid[0]);
+		}
+		this.records = valid[1];
+		this.committer = new Thread(() -> commit(syncMillis), "operation-log");
+		this.committer.setDaemon(true);
+		this.committer.start();
+	}
+
+	private static byte typeOf(Class<?> keyType) {
+		if (keyType == int.class) {
+			return TreeFile.INT;
+		} else if (keyType == double.class) {
+			return TreeFile.DOUBLE;
+		} else if (keyType == String.class) {
+			return TreeFile.STRING;
+		}
+		throw new IllegalArgumentException(
+				"keyType must be int, double or String");
+	}
+
+	/**
+	 * Empties the file and writes the header.
+	 */
+	private void writeHeader() throws IOException {
+		this.channel.truncate(0);
+		this.channel.position(0);
+		ByteBuffer header = ByteBuffer.allocate(HEADER);
+		header.putInt(MAGIC).put(this.type).position(HEADER);
+		header.flip();
+		while (header.hasRemaining()) {
+			this.channel.write(header);
+		}
+		this.channel.force(true);
+	}
+
+	/**
+	 * Body of the committer thread.
+	 */
+	private void commit(long syncMillis) {
+		while (!this.closed) {
+			try {
+				Thread.sleep(syncMillis);
+				sync();
+			} catch (InterruptedException e) {
+				return;
+			} catch (IOException e) {
+				synchronized (this) {
+					if (this.failure == null) {
+						this.failure = e;
+					}
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of records in the log.
+	 * @return records
+	 */
+	public synchronized long records() {
+		return this.records;
+	}
+
+	/**
+	 * Returns {@code true} once the log holds more records than a tree of
+	 * {@code size} keys and at least about a million, the point where
+	 * {@link #compact} pays off.
+	 * @param size the number of keys in the tree
+	 * @return whether the log should be compacted
+	 */
+	public synchronized boolean shouldCompact(int size) {
+		return this.records > Math.max(MIN_COMPACT_RECORDS, size);
+	}
+
+	/**
+	 * Makes room for a record of {@code bytes} bytes and its checksum,
+	 * writing the buffer to the channel if it is full.
+	 * @return the position of the record in the buffer
+	 */
+	private int reserve(byte type, int bytes) throws IOException {
+		if (type != this.type) {
+			throw new IllegalStateException(
+					"the log holds keys of another type");
+		}
+		if (this.closed) {
+			throw new IOException("the log is closed");
+		}
+		if (this.failure != null) {
+			throw this.failure;
+		}
+		bytes += Integer.BYTES;
+		if (this.buffer.remaining() < bytes) {
+			drain();
+			if (this.buffer.capacity() < bytes) {
+				this.buffer = ByteBuffer.allocate(bytes);
+			}
+		}
+		return this.buffer.position();
+	}
+
+	/**
+	 * Appends the checksum of the record that starts at {@code start}.
+	 */
+	private void seal(int start) {
+		this.crc.reset();
+		this.crc.update(this.buffer.array(), start,
+				this.buffer.position() - start);
+		this.buffer.putInt((int) this.crc.getValue());
+		this.records += 1;
+	}
+
+	/**
+	 * Writes the buffer to the channel, the caller holds {@code this}.
+	 */
+	private void drain() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+		this.dirty = true;
+	}
+
+	/**
+	 * Appends an operation on an int key.
+	 * @param op {@link #INSERT} or {@link #DELETE}
+	 * @param key the key
+	 * @throws IOException if an earlier write failed
+	 */
+	public synchronized void append(byte op, int key) throws IOException {
+		int start = reserve(TreeFile.INT, 1 + Integer.BYTES);
+		this.buffer.put(op).putInt(key);
+		seal(start);
+	}
+
+	/**
+	 * Appends an operation on a double key.
+	 * @param op {@link #INSERT} or {@link #DELETE}
+	 * @param key the key
+	 * @throws IOException if an earlier write failed
+	 */
+	public synchronized void append(byte op, double key) throws IOException {
+		int start = reserve(TreeFile.DOUBLE, 1 + Double.BYTES);
+		this.buffer.put(op).putDouble(key);
+		seal(start);
+	}
+
+	/**
+	 * Appends an operation on a String key.
+	 * @param op {@link #INSERT} or {@link #DELETE}
+	 * @param key the key
+	 * @throws IOException if an earlier write failed
+	 */
+	public synchronized void append(byte op, String key) throws IOException {
+		byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+		int start = reserve(TreeFile.STRING, 1 + Integer.BYTES + bytes.length);
+		this.buffer.put(op).putInt(bytes.length).put(bytes);
+		seal(start);
+	}
+
+	/**
+	 * Writes every record appended so far and forces it to the disk. The
+	 * records are handed to the channel under the lock, the fsync runs
+	 * without it, so appends go on while the disk is busy and the next
+	 * commit takes all of them at once.
+	 * @throws IOException if the log cannot be written
+	 */
+	public void sync() throws IOException {
+		synchronized (this) {
+			if (this.failure != null) {
+				throw this.failure;
+			}
+			if (this.buffer.position() > 0) {
+				drain();
+			}
+			if (!this.dirty) {
+				return;
+			}
+			this.dirty = false;
+		}
+		this.channel.force(false);
+	}
+
+	/**
+	 * Writes a snapshot of the tree with {@code saver} and empties the
+	 * log. The snapshot is written to a temporary file and moved over
+	 * {@code snapshot} atomically, so a crash leaves either the old
+	 * snapshot with the full log or the new one; the directory is forced
+	 * after the move so that the rename itself is durable before the log
+	 * is emptied. The tree must hold every
+	 * operation appended so far and must not change meanwhile.
+	 * @param snapshot the snapshot file
+	 * @param saver writes the tree to a file
+	 * @throws IOException if a file cannot be written
+	 */
+	public void compact(Path snapshot, Saver saver) throws IOException {
+		Path temp = snapshot.resolveSibling(snapshot.getFileName() + ".tmp");
+		saver.save(temp);
+		try (FileChannel written = FileChannel.open(temp,
+				StandardOpenOption.WRITE)) {
+			written.force(true);
+		}
+		Files.move(temp, snapshot, StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
+		syncDirectory(snapshot);
+		synchronized (this) {
+			this.buffer.clear();
+			writeHeader();
+			this.dirty = false;
+			this.records = 0;
+		}
+	}
+
+	/**
+	 * Forces the directory of {@code file}, so that a file created or
+	 * renamed there survives a crash.
+	 * @throws IOException if the directory cannot be forced
+	 */
+	private static void syncDirectory(Path file) throws IOException {
+		Path directory = file.toAbsolutePath().getParent();
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			//Windows cannot open a directory, renames are durable without it
+			return;
+		}
+		try (FileChannel opened = channel) {
+			opened.force(true);
+		}
+	}
+
+	/**
+	 * Commits the remaining records and closes the log.
+	 * @throws IOException if the log cannot be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		try {
+			sync();
+		} finally {
+			this.closed = true;
+			this.committer.interrupt();
+			this.channel.close();
+		}
+	}
+
+	/**
+	 * Receives the records of a log during a replay.
+	 */
+	private interface RecordHandler {
+		void record(byte op, ByteBuffer buffer, int at);
+	}
+
+	/**
+	 * Replays an int log, calling {@code insert} or {@code delete} for
+	 * every record in order. A missing file is an empty log.
+	 * @param file the log file
+	 * @param insert receives the inserted keys
+	 * @param delete receives the deleted keys
+	 * @return the number of records replayed
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long replayInts(Path file, IntConsumer insert,
+			IntConsumer delete) throws IOException {
+		return scan(file, TreeFile.INT, (op, buffer, at) ->
+				(op == INSERT ? insert : delete).accept(buffer.getInt(at)))[1];
+	}
+
+	/**
+	 * Replays a double log, see {@link #replayInts}.
+	 * @param file the log file
+	 * @param insert receives the inserted keys
+	 * @param delete receives the deleted keys
+	 * @return the number of records replayed
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long replayDoubles(Path file, DoubleConsumer insert,
+			DoubleConsumer delete) throws IOException {
+		return scan(file, TreeFile.DOUBLE, (op, buffer, at) -> (op == INSERT
+				? insert : delete).accept(buffer.getDouble(at)))[1];
+	}
+
+	/**
+	 * Replays a String log, see {@link #replayInts}.
+	 * @param file the log file
+	 * @param insert receives the inserted keys
+	 * @param delete receives the deleted keys
+	 * @return the number of records replayed
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long replayStrings(Path file, Consumer<String> insert,
+			Consumer<String> delete) throws IOException {
+		return scan(file, TreeFile.STRING, (op, buffer, at) -> {
+			byte[] bytes = new byte[buffer.getInt(at)];
+			buffer.position(at + Integer.BYTES);
+			buffer.get(bytes);
+			String key = new String(bytes, StandardCharsets.UTF_8);
+			(op == INSERT ? insert : delete).accept(key);
+		})[1];
+	}
+
+	/**
+	 * Walks the complete records of {@code file} and hands them to
+	 * {@code handler}, if not {@code null}. The key of a record starts at
+	 * {@code at}. The walk stops at the first byte that is not an
+	 * operation, at a record cut by the end of the file or at a record
+	 * whose checksum does not match, which is where a crash in the middle
+	 * of a write leaves the log.
+	 * @return the length of the valid prefix, 0 for a missing or empty
+	 * file, and the number of records
+	 * @throws IOException if the file cannot be read, is not a log or logs
+	 * another type of key
+	 */
+	private static long[] scan(Path file, byte type, RecordHandler handler)
+			throws IOException {
+		if (!Files.exists(file)) {
+			return new long[] { 0, 0 };
+		}
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size == 0) {
+				return new long[] { 0, 0 };
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large, compact it first");
+			}
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+					0, size);
+			if (size >= HEADER && buffer.getInt(0) == MAGIC_V1) {
+				throw new IOException(file + " has no checksums, it was "
+						+ "written by an older version: replay it with that "
+						+ "version or delete it");
+			}
+			if (size < HEADER || buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not an operation log");
+			}
+			if (buffer.get(4) != type) {
+				throw new IOException(file + " logs another type of key");
+			}
+			int width = type == TreeFile.INT ? Integer.BYTES
+					: type == TreeFile.DOUBLE ? Double.BYTES : 0;
+			CRC32 crc = new CRC32();
+			int at = HEADER;
+			long records = 0;
+			while (at < size) {
+				byte op = buffer.get(at);
+				if (op != INSERT && op != DELETE) {
+					break;
+				}
+				long length = width;
+				if (width == 0) {
+					length = at + 1L + Integer.BYTES <= size
+							? Integer.BYTES + (long) buffer.getInt(at + 1) : -1;
+				}
+				if (length < width || length < Integer.BYTES
+						|| at + 1L + length + Integer.BYTES > size) {
+					break;
+				}
+				crc.reset();
+				buffer.limit(at + 1 + (int) length).position(at);
+				crc.update(buffer);
+				buffer.limit((int) size);
+				int checksum = buffer.getInt(at + 1 + (int) length);
+				if ((int) crc.getValue() != checksum) {
+					break;
+				}
+				if (handler != null) {
+					handler.record(op, buffer, at + 1);
+				}
+				at += 1 + (int) length + Integer.BYTES;
+				records += 1;
+			}
+			return new long[] { at, records };
+		}
+	}
+}
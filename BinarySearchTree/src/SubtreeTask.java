@@ -0,0 +1,426 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * A fork/join task that aggregates a subtree of a {@link BinarySearchTree}.
+ * A subtree with fewer than {@link #THRESHOLD} nodes is walked on the
+ * current thread by {@link #sequential()}. A larger one forks its right
+ * subtree, computes its left subtree and joins them with
+ * {@link #combine(Object, Object)}. A chain of nodes where only one child
+ * is large, as in an unbalanced {@code PLAIN} tree, is followed in a loop
+ * with the small sides walked sequentially, so neither the number of
+ * tasks nor the call stack grows with the height. The walks keep their
+ * own stacks for the same reason.
+ * @author Chihyuan Tung
+ *
+ * @param <T> the key type
+ * @param <R> the result type
+ */
+abstract class SubtreeTask<T extends Comparable<T>, R> extends RecursiveTask<R> {
+
+	private static final long serialVersionUID = 1L;
+
+	/** subtrees with fewer nodes are not split */
+	static final int THRESHOLD = 1 << 14;
+
+	static final int NIL = NodePool.NIL;
+
+	/** the nodes of the tree */
+	final KeyPool<T> pool;
+	/** the root of the subtree, may be {@link NodePool#NIL} */
+	final int node;
+	/** the level of {@link #node}, 0 for the root of the tree */
+	final int level;
+
+	SubtreeTask(KeyPool<T> pool, int node, int level) {
+		this.pool = pool;
+		this.node = node;
+		this.level = level;
+	}
+
+	/**
+	 * Returns the task of the left or the right subtree of {@link #node}.
+	 * @param left whether the left subtree is wanted
+	 * @return the task of the child
+	 */
+	abstract SubtreeTask<T, R> child(boolean left);
+
+	/**
+	 * Aggregates the whole subtree on the current thread.
+	 * @return the result of the subtree
+	 */
+	abstract R sequential();
+
+	/**
+	 * Combines the results of the two subtrees of {@link #node}, which is
+	 * not {@link NodePool#NIL}.
+	 * @param left the result of the left subtree
+	 * @param right the result of the right subtree
+	 * @return the result of the subtree
+	 */
+	abstract R combine(R left, R right);
+
+	@Override
+	protected final R compute() {
+		List<SubtreeTask<T, R>> spine = new ArrayList<>();
+		List<R> sides = new ArrayList<>();
+		List<Boolean> lefts = new ArrayList<>();
+		SubtreeTask<T, R> task = this;
+		R value;
+		while (true) {
+			int node = task.node;
+			if (this.pool.subtreeSize(node) < THRESHOLD) {
+				value = task.sequential();
+				break;
+			}
+			boolean left = this.pool.subtreeSize(this.pool.left(node)) >= THRESHOLD;
+			boolean right = this.pool.subtreeSize(this.pool.right(node)) >= THRESHOLD;
+			if (left && right) {
+				SubtreeTask<T, R> forked = task.child(false);
+				forked.fork();
+				R leftValue = task.child(true).compute();
+				value = task.combine(leftValue, forked.join());
+				break;
+			}
+			if (!left && !right) {
+				value = task.sequential();
+				break;
+			}
+			//only one side is worth a task, keep walking down that side
+			spine.add(task);
+			lefts.add(left);
+			sides.add(task.child(!left).sequential());
+			task = task.child(left);
+		}
+		for (int i = spine.size() - 1; i >= 0; --i) {
+			SubtreeTask<T, R> parent = spine.get(i);
+			value = lefts.get(i) ? parent.combine(value, sides.get(i)) : parent.combine(sides.get(i), value);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns a stack for a walk of {@link #node}, which is grown by
+	 * {@link #grow} if the height of the node is not up to date.
+	 */
+	int[] stack() {
+		return new int[this.pool.height(this.node) + 1];
+	}
+
+	int left(int node) {
+		return this.pool.left(node);
+	}
+
+	int right(int node) {
+		return this.pool.right(node);
+	}
+
+	static <E> E[] grow(E[] stack, int depth) {
+		return depth < stack.length ? stack : Arrays.copyOf(stack, stack.length * 2);
+	}
+
+	static int[] grow(int[] stack, int depth) {
+		return depth < stack.length ? stack : Arrays.copyOf(stack, stack.length * 2);
+	}
+
+	/**
+	 * Folds a subtree with a {@link TreeFold} in post-order.
+	 */
+	static final class Fold<T extends Comparable<T>, R> extends SubtreeTask<T, R> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final TreeFold<? super T, R> fold;
+
+		Fold(KeyPool<T> pool, int node, int level, TreeFold<? super T, R> fold) {
+			super(pool, node, level);
+			this.fold = fold;
+		}
+
+		@Override
+		SubtreeTask<T, R> child(boolean left) {
+			return new Fold<T, R>(this.pool, left ? left(this.node) : right(this.node), this.level + 1, this.fold);
+		}
+
+		@Override
+		R combine(R left, R right) {
+			return this.fold.node(this.pool.key(this.node), this.level, left, right);
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		R sequential() {
+			if (this.node == NIL) {
+				return this.fold.empty();
+			}
+			int[] nodes = stack();
+			Object[] lefts = new Object[nodes.length];
+			int[] stages = new int[nodes.length];
+			int depth = 0;
+			nodes[0] = this.node;
+			R value = null;
+			while (depth >= 0) {
+				int node = nodes[depth];
+				//stage 0: go left, 1: value is the left result, go right,
+				//2: value is the right result
+				if (stages[depth] == 0) {
+					stages[depth] = 1;
+					if (left(node) != NIL) {
+						nodes = grow(nodes, depth + 1);
+						lefts = grow(lefts, depth + 1);
+						stages = grow(stages, depth + 1);
+						nodes[++depth] = left(node);
+						stages[depth] = 0;
+						continue;
+					}
+					value = this.fold.empty();
+				}
+				if (stages[depth] == 1) {
+					stages[depth] = 2;
+					lefts[depth] = value;
+					if (right(node) != NIL) {
+						nodes = grow(nodes, depth + 1);
+						lefts = grow(lefts, depth + 1);
+						stages = grow(stages, depth + 1);
+						nodes[++depth] = right(node);
+						stages[depth] = 0;
+						continue;
+					}
+					value = this.fold.empty();
+				}
+				value = this.fold.node(this.pool.key(node), this.level + depth, (R) lefts[depth], value);
+				lefts[depth] = null;
+				depth -= 1;
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Counts the leaf nodes by walking the subtree.
+	 */
+	static final class Leaves<T extends Comparable<T>> extends SubtreeTask<T, Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		Leaves(KeyPool<T> pool, int node, int level) {
+			super(pool, node, level);
+		}
+
+		@Override
+		SubtreeTask<T, Integer> child(boolean left) {
+			return new Leaves<T>(this.pool, left ? left(this.node) : right(this.node), this.level + 1);
+		}
+
+		@Override
+		Integer combine(Integer left, Integer right) {
+			return left(this.node) == NIL && right(this.node) == NIL ? 1 : left + right;
+		}
+
+		@Override
+		Integer sequential() {
+			if (this.node == NIL) {
+				return 0;
+			}
+			int[] stack = stack();
+			int depth = 0;
+			int count = 0;
+			stack[depth++] = this.node;
+			while (depth > 0) {
+				int node = stack[--depth];
+				if (left(node) == NIL && right(node) == NIL) {
+					count += 1;
+					continue;
+				}
+				stack = grow(stack, depth + 1);
+				if (right(node) != NIL) {
+					stack[depth++] = right(node);
+				}
+				if (left(node) != NIL) {
+					stack[depth++] = left(node);
+				}
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Measures the height by walking the subtree.
+	 */
+	static final class Height<T extends Comparable<T>> extends SubtreeTask<T, Integer> {
+
+		private static final long serialVersionUID = 1L;
+
+		Height(KeyPool<T> pool, int node, int level) {
+			super(pool, node, level);
+		}
+
+		@Override
+		SubtreeTask<T, Integer> child(boolean left) {
+			return new Height<T>(this.pool, left ? left(this.node) : right(this.node), this.level + 1);
+		}
+
+		@Override
+		Integer combine(Integer left, Integer right) {
+			return 1 + Math.max(left, right);
+		}
+
+		@Override
+		Integer sequential() {
+			if (this.node == NIL) {
+				return 0;
+			}
+			int[] stack = stack();
+			int[] heights = new int[stack.length];
+			int depth = 0;
+			int height = 0;
+			stack[depth] = this.node;
+			heights[depth++] = 1;
+			while (depth > 0) {
+				int node = stack[--depth];
+				int h = heights[depth];
+				height = Math.max(height, h);
+				stack = grow(stack, depth + 1);
+				heights = grow(heights, depth + 1);
+				if (right(node) != NIL) {
+					stack[depth] = right(node);
+					heights[depth++] = h + 1;
+				}
+				if (left(node) != NIL) {
+					stack[depth] = left(node);
+					heights[depth++] = h + 1;
+				}
+			}
+			return height;
+		}
+	}
+
+	/**
+	 * Counts the nodes on every level of the subtree, relative to its root.
+	 */
+	static final class Widths<T extends Comparable<T>> extends SubtreeTask<T, int[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		Widths(KeyPool<T> pool, int node, int level) {
+			super(pool, node, level);
+		}
+
+		@Override
+		SubtreeTask<T, int[]> child(boolean left) {
+			return new Widths<T>(this.pool, left ? left(this.node) : right(this.node), this.level + 1);
+		}
+
+		@Override
+		int[] combine(int[] left, int[] right) {
+			int[] widths = new int[1 + Math.max(left.length, right.length)];
+			widths[0] = 1;
+			for (int i = 0; i < left.length; ++i) {
+				widths[i + 1] += left[i];
+			}
+			for (int i = 0; i < right.length; ++i) {
+				widths[i + 1] += right[i];
+			}
+			return widths;
+		}
+
+		@Override
+		int[] sequential() {
+			if (this.node == NIL) {
+				return new int[0];
+			}
+			int[] stack = stack();
+			int[] levels = new int[stack.length];
+			int[] widths = new int[this.pool.height(this.node)];
+			int depth = 0;
+			int height = 0;
+			stack[depth] = this.node;
+			levels[depth++] = 0;
+			while (depth > 0) {
+				int node = stack[--depth];
+				int level = levels[depth];
+				widths = grow(widths, level);
+				widths[level] += 1;
+				height = Math.max(height, level + 1);
+				stack = grow(stack, depth + 1);
+				levels = grow(levels, depth + 1);
+				if (right(node) != NIL) {
+					stack[depth] = right(node);
+					levels[depth++] = level + 1;
+				}
+				if (left(node) != NIL) {
+					stack[depth] = left(node);
+					levels[depth++] = level + 1;
+				}
+			}
+			return widths.length == height ? widths : Arrays.copyOf(widths, height);
+		}
+	}
+
+	/**
+	 * Writes the keys of the single parents of the subtree in in-order to
+	 * {@code out}, starting at {@code offset}. The position of every
+	 * subtree follows from the single parent counts, so the tasks write
+	 * to disjoint ranges and nothing has to be combined.
+	 */
+	static final class SingleParents<T extends Comparable<T>> extends SubtreeTask<T, Void> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Object[] out;
+		private final int offset;
+
+		SingleParents(KeyPool<T> pool, int node, int level, Object[] out, int offset) {
+			super(pool, node, level);
+			this.out = out;
+			this.offset = offset;
+		}
+
+		private boolean single() {
+			return (left(this.node) == NIL) != (right(this.node) == NIL);
+		}
+
+		@Override
+		SubtreeTask<T, Void> child(boolean left) {
+			if (left) {
+				return new SingleParents<T>(this.pool, left(this.node), this.level + 1, this.out, this.offset);
+			}
+			int offset = this.offset + this.pool.singleParents(left(this.node)) + (single() ? 1 : 0);
+			return new SingleParents<T>(this.pool, right(this.node), this.level + 1, this.out, offset);
+		}
+
+		@Override
+		Void combine(Void left, Void right) {
+			if (single()) {
+				this.out[this.offset + this.pool.singleParents(left(this.node))] = this.pool.key(this.node);
+			}
+			return null;
+		}
+
+		@Override
+		Void sequential() {
+			if (this.pool.singleParents(this.node) == 0) {
+				return null;
+			}
+			int[] stack = stack();
+			int depth = 0;
+			int index = this.offset;
+			int node = this.node;
+			while (this.pool.singleParents(node) > 0 || depth > 0) {
+				while (this.pool.singleParents(node) > 0) {
+					stack = grow(stack, depth);
+					stack[depth++] = node;
+					node = left(node);
+				}
+				node = stack[--depth];
+				if ((left(node) == NIL) != (right(node) == NIL)) {
+					this.out[index++] = this.pool.key(node);
+				}
+				node = right(node);
+			}
+			return null;
+		}
+	}
+}
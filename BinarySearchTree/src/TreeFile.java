@@ -0,0 +1,277 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The binary file format of {@code save} and {@code load} of the trees. A
+ * file is a 16 byte header followed by the keys in ascending order:
+ * <pre>
+ * int  magic  "BST1"
+ * byte type   0 empty, 1 int, 2 double, 3 String
+ * byte[3]     0
+ * long count  number of keys
+ * keys        int: 4 bytes, double: 8 bytes, String: int length and UTF-8
+ * </pre>
+ * Numbers are big-endian. The keys are written in in-order, so a tree is
+ * rebuilt from them without comparing a single key. The reader
+ * memory-maps the file one window at a time.
+ * @author Chihyuan Tung
+ *
+ */
+final class TreeFile {
+
+	static final int MAGIC = 0x42535431;
+	static final byte EMPTY = 0;
+	static final byte INT = 1;
+	static final byte DOUBLE = 2;
+	static final byte STRING = 3;
+	static final int HEADER = 16;
+	/** size of one mapped window, a multiple of 8 so no number is cut */
+	private static final int WINDOW = 64 << 20;
+	/** size of the write buffer */
+	private static final int BUFFER = 1 << 20;
+
+	private TreeFile() {
+	}
+
+	/**
+	 * Returns {@code true} if {@code file} starts with the magic number of
+	 * the format.
+	 * @param file the file
+	 * @return whether the file is a saved tree
+	 * @throws IOException if the file cannot be read
+	 */
+	static boolean isTreeFile(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			ByteBuffer magic = ByteBuffer.allocate(4);
+			while (magic.hasRemaining() && channel.read(magic) >= 0) {
+				//keep reading until the 4 bytes are there or the file ends
+			}
+			return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+		}
+	}
+
+	/**
+	 * Writes a file through a direct buffer of {@value #BUFFER} bytes.
+	 */
+	static final class Writer implements Closeable {
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER);
+
+		/**
+		 * Creates or truncates {@code file} and writes the header.
+		 * @param file the file to be written
+		 * @param type the type of the keys
+		 * @param count the number of keys
+		 * @throws IOException if the file cannot be written
+		 */
+		Writer(Path file, byte type, long count) throws IOException {
+			this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.buffer.putInt(MAGIC).put(type).put((byte) 0).put((byte) 0).put((byte) 0).putLong(count);
+		}
+
+		private void reserve(int bytes) throws IOException {
+			if (this.buffer.remaining() < bytes) {
+				flush();
+			}
+		}
+
+		private void flush() throws IOException {
+			this.buffer.flip();
+			while (this.buffer.hasRemaining()) {
+				this.channel.write(this.buffer);
+			}
+			this.buffer.clear();
+		}
+
+		void putInt(int key) throws IOException {
+			reserve(Integer.BYTES);
+			this.buffer.putInt(key);
+		}
+
+		void putDouble(double key) throws IOException {
+			reserve(Double.BYTES);
+			this.buffer.putDouble(key);
+		}
+
+		void putString(String key) throws IOException {
+			byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+			reserve(Integer.BYTES);
+			this.buffer.putInt(bytes.length);
+			if (bytes.length > this.buffer.remaining()) {
+				flush();
+				ByteBuffer wrapped = ByteBuffer.wrap(bytes);
+				while (wrapped.hasRemaining()) {
+					this.channel.write(wrapped);
+				}
+			} else {
+				this.buffer.put(bytes);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+			} finally {
+				this.channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Reads a file written by {@link Writer}.
+	 */
+	static final class Reader implements Closeable {
+		private final FileChannel channel;
+		private final long fileSize;
+		private final byte type;
+		private final int count;
+		/** file position of the next key */
+		private long position = HEADER;
+		/** the mapped window and the file position it starts at */
+		private MappedByteBuffer window;
+		private long windowStart;
+
+		/**
+		 * Opens {@code file} and reads the header.
+		 * @param file the file to be read
+		 * @throws IOException if the file cannot be read or is not a
+		 * saved tree
+		 */
+		Reader(Path file) throws IOException {
+			this.channel = FileChannel.open(file, StandardOpenOption.READ);
+			try {
+				this.fileSize = this.channel.size();
+				if (this.fileSize < HEADER) {
+					throw new IOException(file + " is not a saved tree");
+				}
+				ByteBuffer header = this.channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+				long count = header.getLong(8);
+				this.type = header.get(4);
+				if (header.getInt(0) != MAGIC || this.type < EMPTY || this.type > STRING) {
+					throw new IOException(file + " is not a saved tree");
+				}
+				long width = this.type == INT ? Integer.BYTES : this.type == DOUBLE ? Double.BYTES : Integer.BYTES;
+				if (count < 0 || count > Integer.MAX_VALUE - 8 || (this.type == EMPTY && count != 0)
+						|| (this.type == STRING ? HEADER + width * count > this.fileSize
+								: HEADER + width * count != this.fileSize)) {
+					throw new IOException(file + " is truncated or corrupt");
+				}
+				this.count = (int) count;
+			} catch (IOException e) {
+				this.channel.close();
+				throw e;
+			}
+		}
+
+		byte type() {
+			return this.type;
+		}
+
+		int count() {
+			return this.count;
+		}
+
+		/**
+		 * Makes sure that {@code bytes} bytes from {@link #position} are
+		 * mapped and returns their offset in the window.
+		 */
+		private int map(int bytes) throws IOException {
+			long end = this.windowStart + (this.window == null ? 0 : this.window.capacity());
+			if (this.window == null || this.position + bytes > end) {
+				if (this.position + bytes > this.fileSize) {
+					throw new IOException("the file is truncated");
+				}
+				this.windowStart = this.position;
+				int length = (int) Math.min(Math.max(WINDOW, bytes), this.fileSize - this.position);
+				this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, this.windowStart, length);
+			}
+			return (int) (this.position - this.windowStart);
+		}
+
+		/**
+		 * Reads all the int keys into {@code keys[0, count())}, a window
+		 * at a time with one bulk copy each.
+		 */
+		void readInts(int[] keys) throws IOException {
+			int done = 0;
+			while (done < this.count) {
+				int offset = map(Integer.BYTES);
+				int n = Math.min(this.count - done, (this.window.capacity() - offset) / Integer.BYTES);
+				this.window.position(offset);
+				this.window.asIntBuffer().get(keys, done, n);
+				done += n;
+				this.position += (long) n * Integer.BYTES;
+			}
+		}
+
+		/**
+		 * Reads all the double keys into {@code keys[0, count())}.
+		 */
+		void readDoubles(double[] keys) throws IOException {
+			int done = 0;
+			while (done < this.count) {
+				int offset = map(Double.BYTES);
+				int n = Math.min(this.count - done, (this.window.capacity() - offset) / Double.BYTES);
+				this.window.position(offset);
+				this.window.asDoubleBuffer().get(keys, done, n);
+				done += n;
+				this.position += (long) n * Double.BYTES;
+			}
+		}
+
+		/**
+		 * Reads the next String key.
+		 */
+		String readString() throws IOException {
+			int offset = map(Integer.BYTES);
+			int length = this.window.getInt(offset);
+			if (length < 0) {
+				throw new IOException("the file is corrupt");
+			}
+			this.position += Integer.BYTES;
+			offset = map(length);
+			byte[] bytes = new byte[length];
+			this.window.position(offset);
+			this.window.get(bytes);
+			this.position += length;
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Reads all the keys, boxed, into {@code keys[0, count())}.
+		 */
+		void readObjects(Object[] keys) throws IOException {
+			if (this.type == INT) {
+				int[] ints = new int[this.count];
+				readInts(ints);
+				for (int i = 0; i < this.count; ++i) {
+					keys[i] = ints[i];
+				}
+			} else if (this.type == DOUBLE) {
+				double[] doubles = new double[this.count];
+				readDoubles(doubles);
+				for (int i = 0; i < this.count; ++i) {
+					keys[i] = doubles[i];
+				}
+			} else {
+				for (int i = 0; i < this.count; ++i) {
+					keys[i] = readString();
+				}
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.window = null;
+			this.channel.close();
+		}
+	}
+}
@@ -0,0 +1,29 @@
+/**
+ * A bottom-up aggregate over the nodes of a {@link BinarySearchTree}, see
+ * {@link BinarySearchTree#fold(TreeFold)}. The value of a subtree is
+ * combined from the values of its two children, so independent subtrees
+ * can be folded on different threads. The methods must not have side
+ * effects that depend on the order in which the subtrees are visited.
+ * @author Chihyuan Tung
+ *
+ * @param <T> the key type
+ * @param <R> the result type
+ */
+public interface TreeFold<T, R> {
+
+	/**
+	 * Returns the value of an empty subtree.
+	 * @return the value of a missing child
+	 */
+	R empty();
+
+	/**
+	 * Returns the value of the subtree rooted at a node.
+	 * @param key the key of the node
+	 * @param level the level of the node, 0 for the root
+	 * @param left the value of the left subtree
+	 * @param right the value of the right subtree
+	 * @return the value of the subtree
+	 */
+	R node(T key, int level, R left, R right);
+}
@@ -0,0 +1,235 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts the operations of a {@link BinarySearchTree}, the key comparisons
+ * of its searches, the depth at which they end and the latency of every
+ * call in histograms with power of two buckets. A tree only has metrics
+ * after {@link BinarySearchTree#enableMetrics()}; until then its metrics
+ * field is {@code null} and an operation pays for a single null check.
+ * The counters may be read from any thread, e.g. by a JMX client after
+ * {@link #register(String)}.
+ * @author Chihyuan Tung
+ *
+ */
+public class TreeMetrics implements TreeMetricsMBean {
+
+	/**
+	 * The measured operations.
+	 */
+	public enum Operation {
+		INSERT, DELETE, RETRIEVE, COUSINS, TRAVERSAL
+	}
+
+	/** bucket {@code i} holds latencies below 2^i ns */
+	private static final int LATENCY_BUCKETS = 64;
+	/** the last bucket holds every search as deep or deeper */
+	private static final int DEPTH_BUCKETS = 64;
+
+	private final BinarySearchTree<?> tree;
+	private final LongAdder[] counts = new LongAdder[Operation.values().length];
+	private final AtomicLongArray[] latencies = new AtomicLongArray[Operation.values().length];
+	private final LongAdder comparisons = new LongAdder();
+	private final LongAdder searches = new LongAdder();
+	private final AtomicLongArray depths = new AtomicLongArray(DEPTH_BUCKETS);
+	private ObjectName name;
+
+	/**
+	 * Constructor of the metrics of {@code tree}.
+	 * @param tree the measured tree
+	 */
+	TreeMetrics(BinarySearchTree<?> tree) {
+		this.tree = tree;
+		for (int i = 0; i < this.counts.length; ++i) {
+			this.counts[i] = new LongAdder();
+			this.latencies[i] = new AtomicLongArray(LATENCY_BUCKETS);
+		}
+	}
+
+	/**
+	 * Records a call of {@code op} that started at {@code start}, from
+	 * {@link System#nanoTime()}.
+	 * @param op the operation
+	 * @param start the start of the call
+	 */
+	void record(Operation op, long start) {
+		long nanos = Math.max(0, System.nanoTime() - start);
+		this.counts[op.ordinal()].increment();
+		this.latencies[op.ordinal()].incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+	}
+
+	/**
+	 * Records a search that started at {@code start} and compared the key
+	 * with {@code compared} nodes.
+	 * @param op the operation
+	 * @param start the start of the call
+	 * @param compared the number of comparisons, the depth of the search
+	 */
+	void record(Operation op, long start, int compared) {
+		record(op, start);
+		this.comparisons.add(compared);
+		this.searches.increment();
+		this.depths.incrementAndGet(Math.min(compared, DEPTH_BUCKETS - 1));
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server as
+	 * {@code BinarySearchTree:type=TreeMetrics,name=<name>}.
+	 * @param name the name of the tree
+	 * @return the name of the MBean
+	 * @throws JMException if the name is taken or invalid
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		unregister();
+		ObjectName objectName = new ObjectName("BinarySearchTree:type=TreeMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		this.name = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the MBean registered by {@link #register(String)}, if any.
+	 * @throws JMException if the MBean server fails
+	 */
+	public synchronized void unregister() throws JMException {
+		if (this.name != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(this.name)) {
+				server.unregisterMBean(this.name);
+			}
+			this.name = null;
+		}
+	}
+
+	/**
+	 * Returns the number of calls of {@code op} since the last reset.
+	 * @param op the operation
+	 * @return calls
+	 */
+	public long count(Operation op) {
+		return this.counts[op.ordinal()].sum();
+	}
+
+	@Override
+	public long getInserts() {
+		return count(Operation.INSERT);
+	}
+
+	@Override
+	public long getDeletes() {
+		return count(Operation.DELETE);
+	}
+
+	@Override
+	public long getRetrieves() {
+		return count(Operation.RETRIEVE);
+	}
+
+	@Override
+	public long getCousinQueries() {
+		return count(Operation.COUSINS);
+	}
+
+	@Override
+	public long getTraversals() {
+		return count(Operation.TRAVERSAL);
+	}
+
+	@Override
+	public long getComparisons() {
+		return this.comparisons.sum();
+	}
+
+	@Override
+	public double getComparisonsPerSearch() {
+		long count = this.searches.sum();
+		return count == 0 ? 0 : (double) this.comparisons.sum() / count;
+	}
+
+	@Override
+	public long[] getSearchDepthHistogram() {
+		return toArray(this.depths);
+	}
+
+	@Override
+	public int getHeight() {
+		return this.tree.height();
+	}
+
+	@Override
+	public int getSize() {
+		return this.tree.size();
+	}
+
+	/**
+	 * Returns the latency histogram of {@code op}, see
+	 * {@link #latencyHistogram(String)}.
+	 * @param op the operation
+	 * @return the latency histogram
+	 */
+	public long[] latencyHistogram(Operation op) {
+		return toArray(this.latencies[op.ordinal()]);
+	}
+
+	@Override
+	public long[] latencyHistogram(String operation) {
+		return latencyHistogram(Operation.valueOf(operation.toUpperCase(Locale.ROOT)));
+	}
+
+	/**
+	 * Returns an upper bound of a percentile of the latency of {@code op},
+	 * see {@link #latencyPercentile(String, double)}.
+	 * @param op the operation
+	 * @param percentile between 0 and 100
+	 * @return the latency in ns, 0 if the operation was not called
+	 */
+	public long latencyPercentile(Operation op, double percentile) {
+		long[] histogram = latencyHistogram(op);
+		long total = 0;
+		for (long count : histogram) {
+			total += count;
+		}
+		long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+		long seen = 0;
+		for (int i = 0; i < histogram.length; ++i) {
+			seen += histogram[i];
+			if (seen >= rank && seen > 0) {
+				return i == 63 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public long latencyPercentile(String operation, double percentile) {
+		return latencyPercentile(Operation.valueOf(operation.toUpperCase(Locale.ROOT)), percentile);
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < this.counts.length; ++i) {
+			this.counts[i].reset();
+			for (int j = 0; j < LATENCY_BUCKETS; ++j) {
+				this.latencies[i].set(j, 0);
+			}
+		}
+		this.comparisons.reset();
+		this.searches.reset();
+		for (int i = 0; i < DEPTH_BUCKETS; ++i) {
+			this.depths.set(i, 0);
+		}
+	}
+
+	private static long[] toArray(AtomicLongArray array) {
+		long[] copy = new long[array.length()];
+		for (int i = 0; i < copy.length; ++i) {
+			copy[i] = array.get(i);
+		}
+		return copy;
+	}
+}
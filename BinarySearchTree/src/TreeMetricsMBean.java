@@ -0,0 +1,93 @@
+/**
+ * The management interface of {@link TreeMetrics}, the attributes and
+ * operations that a JMX client such as jconsole shows for a tree.
+ * @author Chihyuan Tung
+ *
+ */
+public interface TreeMetricsMBean {
+
+	/**
+	 * Returns the number of inserts since the last reset.
+	 * @return inserts
+	 */
+	long getInserts();
+
+	/**
+	 * Returns the number of deletes since the last reset.
+	 * @return deletes
+	 */
+	long getDeletes();
+
+	/**
+	 * Returns the number of retrieves since the last reset.
+	 * @return retrieves
+	 */
+	long getRetrieves();
+
+	/**
+	 * Returns the number of cousin queries since the last reset.
+	 * @return cousin queries
+	 */
+	long getCousinQueries();
+
+	/**
+	 * Returns the number of full traversals (inOrder, getSingleParent)
+	 * since the last reset.
+	 * @return traversals
+	 */
+	long getTraversals();
+
+	/**
+	 * Returns the number of key comparisons of all the searches.
+	 * @return comparisons
+	 */
+	long getComparisons();
+
+	/**
+	 * Returns the mean number of key comparisons of an insert, delete,
+	 * retrieve or cousin query.
+	 * @return comparisons per search
+	 */
+	double getComparisonsPerSearch();
+
+	/**
+	 * Returns how many searches ended at each depth, the last entry counts
+	 * every deeper search.
+	 * @return the depth histogram
+	 */
+	long[] getSearchDepthHistogram();
+
+	/**
+	 * Returns the current height of the tree.
+	 * @return height
+	 */
+	int getHeight();
+
+	/**
+	 * Returns the current number of keys of the tree.
+	 * @return size
+	 */
+	int getSize();
+
+	/**
+	 * Returns the latency histogram of an operation. Entry {@code i}
+	 * counts the calls that took less than 2^i ns and at least 2^(i-1) ns.
+	 * @param operation INSERT, DELETE, RETRIEVE, COUSINS or TRAVERSAL
+	 * @return the latency histogram
+	 */
+	long[] latencyHistogram(String operation);
+
+	/**
+	 * Returns an upper bound of the given percentile of the latency of an
+	 * operation, read from its histogram.
+	 * @param operation INSERT, DELETE, RETRIEVE, COUSINS or TRAVERSAL
+	 * @param percentile between 0 and 100
+	 * @return the latency in ns, 0 if the operation was not called
+	 */
+	long latencyPercentile(String operation, double percentile);
+
+	/**
+	 * Sets every counter and histogram back to 0.
+	 */
+	void reset();
+}